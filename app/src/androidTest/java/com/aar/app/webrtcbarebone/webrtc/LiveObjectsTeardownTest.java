@@ -0,0 +1,123 @@
+package com.aar.app.webrtcbarebone.webrtc;
+
+import android.Manifest;
+import android.content.Context;
+import android.os.SystemClock;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.rule.GrantPermissionRule;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.webrtc.DataChannel;
+import org.webrtc.IceCandidate;
+import org.webrtc.MediaStream;
+import org.webrtc.PeerConnection;
+import org.webrtc.RtpReceiver;
+import org.webrtc.SurfaceViewRenderer;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Builds what a two peer call builds and tears it down the way the call screen does, every
+ * native object created on the way has to be disposed again.
+ */
+@RunWith(AndroidJUnit4.class)
+public class LiveObjectsTeardownTest {
+
+    private static final long RELEASE_TIMEOUT_MS = 5_000;
+
+    @Rule
+    public GrantPermissionRule mPermissions =
+            GrantPermissionRule.grant(Manifest.permission.CAMERA, Manifest.permission.RECORD_AUDIO);
+
+    @Test
+    public void teardownDisposesEveryNativeObject() throws Exception {
+        Context context = InstrumentationRegistry.getTargetContext();
+        assertEquals(LiveObjects.describe(), 0, LiveObjects.getTotal());
+        int unbalanced = LiveObjects.getUnbalancedDisposals();
+
+        PeerConnectionFactoryManager factoryManager = PeerConnectionFactoryManager.getInstance().acquire(context);
+        // views are built on the main thread
+        SurfaceViewRenderer[] renderer = new SurfaceViewRenderer[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            renderer[0] = new SurfaceViewRenderer(context);
+            renderer[0].init(factoryManager.getEglBase().getEglBaseContext(), null);
+            LiveObjects.onCreated(LiveObjects.Kind.RENDERER);
+        });
+
+        Camera camera = new Camera(context, Camera.Facing.Front, null);
+        LocalMedia localMedia = new LocalMedia(context, factoryManager.getEglBase(), camera, factoryManager.getFactory());
+        WebRtcPeerConnection first = new WebRtcPeerConnection(localMedia, factoryManager.getFactory(),
+                new NoOpObserver(), Collections.emptyList(), 0);
+        WebRtcPeerConnection second = new WebRtcPeerConnection(localMedia, factoryManager.getFactory(),
+                new NoOpObserver(), Collections.emptyList(), 0);
+        FileTransferChannel fileTransfer = FileTransferChannel.create(first);
+        TelemetryChannel telemetry = second.createTelemetryChannel();
+        camera.startCapture();
+
+        assertEquals(2, LiveObjects.get(LiveObjects.Kind.PEER_CONNECTION));
+        assertEquals(2, LiveObjects.get(LiveObjects.Kind.DATA_CHANNEL));
+        assertEquals(1, LiveObjects.get(LiveObjects.Kind.RENDERER));
+
+        // same order as CallActivity.onDestroy
+        fileTransfer.close();
+        telemetry.close();
+        first.close();
+        second.close();
+        localMedia.dispose();
+        camera.close();
+        factoryManager.release();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            renderer[0].release();
+            LiveObjects.onDisposed(LiveObjects.Kind.RENDERER);
+        });
+
+        // the factory and egl base are disposed on the factory thread
+        long deadline = SystemClock.elapsedRealtime() + RELEASE_TIMEOUT_MS;
+        while (LiveObjects.getTotal() > 0 && SystemClock.elapsedRealtime() < deadline) {
+            SystemClock.sleep(50);
+        }
+        assertEquals(LiveObjects.describe(), 0, LiveObjects.getTotal());
+        assertEquals(unbalanced, LiveObjects.getUnbalancedDisposals());
+    }
+
+    private static class NoOpObserver implements PeerConnection.Observer {
+        @Override
+        public void onSignalingChange(PeerConnection.SignalingState signalingState) { }
+
+        @Override
+        public void onIceConnectionChange(PeerConnection.IceConnectionState iceConnectionState) { }
+
+        @Override
+        public void onIceConnectionReceivingChange(boolean receiving) { }
+
+        @Override
+        public void onIceGatheringChange(PeerConnection.IceGatheringState iceGatheringState) { }
+
+        @Override
+        public void onIceCandidate(IceCandidate iceCandidate) { }
+
+        @Override
+        public void onIceCandidatesRemoved(IceCandidate[] iceCandidates) { }
+
+        @Override
+        public void onAddStream(MediaStream mediaStream) { }
+
+        @Override
+        public void onRemoveStream(MediaStream mediaStream) { }
+
+        @Override
+        public void onDataChannel(DataChannel dataChannel) { }
+
+        @Override
+        public void onRenegotiationNeeded() { }
+
+        @Override
+        public void onAddTrack(RtpReceiver rtpReceiver, MediaStream[] mediaStreams) { }
+    }
+}
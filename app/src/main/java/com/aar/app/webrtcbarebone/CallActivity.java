@@ -1,72 +1,144 @@
 package com.aar.app.webrtcbarebone;
 
 import androidx.appcompat.app.AppCompatActivity;
-import io.socket.client.Ack;
-import io.socket.client.IO;
-import io.socket.client.Socket;
 
 import android.os.Bundle;
 import android.util.Log;
 import android.view.View;
 import android.widget.TextView;
 
+import com.aar.app.webrtcbarebone.signaling.CompactSignalingCodec;
+import com.aar.app.webrtcbarebone.signaling.ReliableSignalingClient;
+import com.aar.app.webrtcbarebone.signaling.SignalingClient;
+import com.aar.app.webrtcbarebone.signaling.SignalingCodec;
+import com.aar.app.webrtcbarebone.signaling.SignalingCodecs;
+import com.aar.app.webrtcbarebone.signaling.SocketIoSignalingClient;
+import com.aar.app.webrtcbarebone.signaling.WebSocketSignalingClient;
+import com.aar.app.webrtcbarebone.webrtc.AudioProfile;
+import com.aar.app.webrtcbarebone.webrtc.BandwidthPolicy;
+import com.aar.app.webrtcbarebone.webrtc.CallSetupTracer;
 import com.aar.app.webrtcbarebone.webrtc.Camera;
+import com.aar.app.webrtcbarebone.webrtc.CaptureFormatController;
+import com.aar.app.webrtcbarebone.webrtc.FileTransferChannel;
+import com.aar.app.webrtcbarebone.webrtc.IceRestartController;
+import com.aar.app.webrtcbarebone.webrtc.LiveObjects;
+import com.aar.app.webrtcbarebone.webrtc.LocalMedia;
+import com.aar.app.webrtcbarebone.webrtc.NetworkMonitor;
+import com.aar.app.webrtcbarebone.webrtc.PeerConnectionFactoryManager;
+import com.aar.app.webrtcbarebone.webrtc.PeerConnectionManager;
+import com.aar.app.webrtcbarebone.webrtc.Simulcast;
+import com.aar.app.webrtcbarebone.webrtc.StatsSampler;
+import com.aar.app.webrtcbarebone.webrtc.TelemetryChannel;
+import com.aar.app.webrtcbarebone.webrtc.VideoCodecPolicy;
 import com.aar.app.webrtcbarebone.webrtc.WebRtcPeerConnection;
+import com.aar.app.webrtcbarebone.webrtc.WebRtcThread;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.webrtc.AudioTrack;
 import org.webrtc.DataChannel;
-import org.webrtc.DefaultVideoDecoderFactory;
-import org.webrtc.DefaultVideoEncoderFactory;
 import org.webrtc.EglBase;
 import org.webrtc.IceCandidate;
 import org.webrtc.MediaConstraints;
 import org.webrtc.MediaStream;
 import org.webrtc.PeerConnection;
 import org.webrtc.PeerConnectionFactory;
+import org.webrtc.RendererCommon;
 import org.webrtc.RtpReceiver;
-import org.webrtc.SdpObserver;
 import org.webrtc.SessionDescription;
 import org.webrtc.SurfaceViewRenderer;
-import org.webrtc.VideoFrame;
-import org.webrtc.VideoSink;
 import org.webrtc.VideoTrack;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class CallActivity extends AppCompatActivity {
 
     public static final String EXTRA_ROOM_NAME = "ROOM_NAME";
     public static final String EXTRA_IS_MAKING_CALL = "CREATE_NEW_ID";
+    // send the local video as simulcast layers, for calls relayed by a forwarding server
+    public static final String EXTRA_SIMULCAST = "SIMULCAST";
+    // negotiate opus with dtx, fec and a low bitrate, for voice over slow or lossy links
+    public static final String EXTRA_LOW_BANDWIDTH_VOICE = "LOW_BANDWIDTH_VOICE";
+    // use the plain WebSocket signaling transport instead of Socket.IO
+    public static final String EXTRA_PLAIN_WEB_SOCKET = "PLAIN_WEB_SOCKET";
 
     private static final String TAG = "CallActivity";
     private static final String WEB_SOCKET_URL = "http://35.187.238.244:3000";
+    // endpoint of the plain WebSocket transport on the same server
+    private static final String PLAIN_WEB_SOCKET_URL = "ws://35.187.238.244:3000/ws";
 
-    private static final String EVENT_CREATE_ID = "/api/create";
-    private static final String EVENT_OFFER_CALL = "/api/offerCall";
-    private static final String EVENT_ANSWER_CALL = "/api/answerCall";
-    private static final String EVENT_RECEIVE_ANSWER_CALL = "/api/receiveAnswerCall";
-    private static final String EVENT_RECEIVE_CALL = "/api/receiveCall";
-    private static final String EVENT_SEND_NEW_ICE = "/api/newIce";
-    private static final String EVENT_RECEIVE_NEW_ICE = "/api/receiveIce";
+    // ice candidates gathered within this window are coalesced into one /api/newIce message,
+    // 0 sends every candidate on its own as soon as it is gathered
+    private static final long ICE_BATCH_WINDOW_MS = 100;
 
-    private String mMyId;
-    private String mCurrPeerId;
-    private Socket mSocket;
+    // ice sessions pre-gathered while waiting for a call, so stun round trips are done before the offer arrives
+    private static final int ICE_CANDIDATE_POOL_SIZE = 1;
+
+    private static final long STATS_INTERVAL_MS = 1000;
+    // one minute of history at the default interval
+    private static final int STATS_HISTORY_SIZE = 60;
+
+    // peer connections, camera and the call state below are only touched on this thread,
+    // signaling and observer callbacks are posted to it and only view updates go to the main thread
+    private final WebRtcThread mWebRtcThread = new WebRtcThread("WebRtc");
 
+    private String mMyId;
+    // highest signaling codec version advertised to peers, messages to a peer that has not
+    // advertised its own yet use the original format
+    private static final int MAX_SIGNALING_VERSION = CompactSignalingCodec.VERSION;
+    // codec negotiated with each peer from the offer or answer it sent
+    private final Map<String, SignalingCodec> mSignalingCodecs = new HashMap<>();
+    private SignalingClient mSignaling;
+
+    private PeerConnectionFactoryManager mFactoryManager;
     private EglBase mEglBase;
-    private WebRtcPeerConnection mPeerConnection;
+    // one connection per remote peer, all sending the same local media
+    private PeerConnectionManager mPeers;
+    private LocalMedia mLocalMedia;
     private Camera mCamera;
+    private final Map<String, FileTransferChannel> mFileTransfers = new HashMap<>();
+    // telemetry channels by peer id, the ones created here for sending and the ones the peers opened
+    private final Map<String, TelemetryChannel> mOutgoingTelemetry = new HashMap<>();
+    private final Map<String, TelemetryChannel> mIncomingTelemetry = new HashMap<>();
+    // ice restart of the calls this side offered, the answering side waits for the offerer's restart
+    private final Map<String, IceRestartController> mIceRestarts = new HashMap<>();
+    private final IceRestartController.Config mIceRestartConfig = new IceRestartController.Config();
+    private NetworkMonitor mNetworkMonitor;
+    private final BandwidthPolicy mBandwidthPolicy = BandwidthPolicy.DEFAULT;
+    // profile of the current network type, applied to every connection
+    private BandwidthPolicy.Profile mBandwidthProfile;
+    private boolean mVideoSuspended = false;
+    // peer whose video is shown in the remote renderer
+    private volatile String mRemoteRendererPeerId;
+    private StatsSampler mStatsSampler;
+    // signaling events all peers share, each peer's tracer starts as a fork of it
+    private final CallSetupTracer mTracer = new CallSetupTracer();
+    // by peer id, recorded from the webrtc, observer and renderer threads
+    private final Map<String, CallSetupTracer> mPeerTracers = new ConcurrentHashMap<>();
+    private CaptureFormatController mCaptureFormatController;
+    private VideoCodecPolicy.EncoderMonitor mEncoderMonitor;
 
     private SurfaceViewRenderer mLocalRenderer;
     private SurfaceViewRenderer mRemoteRenderer;
     private TextView mTextMyId;
     private TextView mTextStatus;
 
+    private final Runnable mIceBatchFlusher = this::flushIceCandidates;
+    // local candidates waiting for the batch window per peer id
+    private final Map<String, List<IceCandidate>> mPendingIceCandidates = new LinkedHashMap<>();
+
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -74,19 +146,76 @@ public class CallActivity extends AppCompatActivity {
         setContentView(R.layout.activity_call);
 
         initViews();
-        initSocket();
+
+        mNetworkMonitor = new NetworkMonitor(this, () -> mWebRtcThread.execute(() -> {
+            for (IceRestartController iceRestart : mIceRestarts.values()) {
+                iceRestart.onNetworkChanged();
+            }
+            updateBandwidthProfile();
+        }));
+        mNetworkMonitor.start();
+
+        initSignaling();
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        if (mSocket != null) {
-            mSocket.disconnect();
+        mNetworkMonitor.stop();
+        if (mSignaling != null) {
+            mSignaling.disconnect();
         }
+
+        // after the tasks already posted and off the ui thread since stopping the camera blocks,
+        // users before what they use: stats and data channels, connections, local media and camera,
+        // the renderers once nothing can add a frame to them, and the factory and egl base last
+        // since the renderers' egl contexts share the egl base's
+        mWebRtcThread.execute(() -> {
+            mWebRtcThread.cancel(mIceBatchFlusher);
+            for (IceRestartController iceRestart : mIceRestarts.values()) {
+                iceRestart.close();
+            }
+            if (mCaptureFormatController != null) {
+                mCaptureFormatController.stop();
+            }
+            if (mStatsSampler != null) {
+                mStatsSampler.release();
+            }
+            for (FileTransferChannel fileTransfer : mFileTransfers.values()) {
+                fileTransfer.close();
+            }
+            for (TelemetryChannel telemetry : mOutgoingTelemetry.values()) {
+                telemetry.close();
+            }
+            for (TelemetryChannel telemetry : mIncomingTelemetry.values()) {
+                telemetry.close();
+            }
+            if (mPeers != null) {
+                mPeers.closeAll();
+            }
+            if (mLocalMedia != null) {
+                VideoTrack localVideoTrack = mLocalMedia.getLocalVideoTrack();
+                if (localVideoTrack != null) localVideoTrack.removeSink(mLocalRenderer);
+                mLocalMedia.dispose();
+            } else if (mCamera != null) {
+                mCamera.close();
+            }
+            runOnUiThread(() -> {
+                // release() blocks until the render thread let go of its egl context
+                mLocalRenderer.release();
+                mRemoteRenderer.release();
+                LiveObjects.onDisposed(LiveObjects.Kind.RENDERER);
+                LiveObjects.onDisposed(LiveObjects.Kind.RENDERER);
+                mFactoryManager.release();
+                Log.d(TAG, "Live native objects after teardown: " + LiveObjects.describe());
+            });
+        });
+        mWebRtcThread.quit();
     }
 
     private void initViews() {
-        mEglBase = EglBase.create();
+        mFactoryManager = PeerConnectionFactoryManager.getInstance().acquire(this);
+        mEglBase = mFactoryManager.getEglBase();
 
         mTextMyId = findViewById(R.id.text_my_id);
         mTextStatus = findViewById(R.id.text_status);
@@ -94,131 +223,300 @@ public class CallActivity extends AppCompatActivity {
         mRemoteRenderer = findViewById(R.id.remote_renderer);
 
         mLocalRenderer.init(mEglBase.getEglBaseContext(), null);
-        mRemoteRenderer.init(mEglBase.getEglBaseContext(), null);
+        LiveObjects.onCreated(LiveObjects.Kind.RENDERER);
+        mRemoteRenderer.init(mEglBase.getEglBaseContext(), new RendererCommon.RendererEvents() {
+            @Override
+            public void onFirstFrameRendered() {
+                String peerId = mRemoteRendererPeerId;
+                if (peerId == null) return;
+                CallSetupTracer tracer = getTracer(peerId);
+                tracer.record(CallSetupTracer.Event.FIRST_REMOTE_FRAME);
+                try {
+                    Log.d(TAG, "Call setup breakdown of " + peerId + ": " + tracer.export());
+                } catch (JSONException e) {
+                    Log.d(TAG, "Error exporting call setup breakdown: " + e);
+                }
+            }
+
+            @Override
+            public void onFrameResolutionChanged(int width, int height, int rotation) { }
+        });
+        LiveObjects.onCreated(LiveObjects.Kind.RENDERER);
     }
 
-    private void initSocket() {
+    private void initSignaling() {
         try {
-            mSocket = IO.socket(WEB_SOCKET_URL);
-            mSocket.on(Socket.EVENT_CONNECT, this::onWsConnect);
-            mSocket.on(Socket.EVENT_DISCONNECT, this::onWsDisconnect);
-            mSocket.on(Socket.EVENT_CONNECT_ERROR, this::onWsConnectError);
-            mSocket.on(Socket.EVENT_ERROR, this::onWsError);
-
-            mSocket.on(EVENT_RECEIVE_CALL, this::onWsReceiveCall);
-            mSocket.on(EVENT_RECEIVE_NEW_ICE, this::onWsReceiveNewIce);
-            mSocket.on(EVENT_RECEIVE_ANSWER_CALL, this::onWsReceiveAnswerCall);
-
-            mTextStatus.setText("connecting...");
-            mSocket.connect();
+            SignalingClient transport;
+            if (getIntent().getBooleanExtra(EXTRA_PLAIN_WEB_SOCKET, false)) {
+                transport = new WebSocketSignalingClient(PLAIN_WEB_SOCKET_URL);
+            } else {
+                transport = new SocketIoSignalingClient(WEB_SOCKET_URL);
+            }
+            mSignaling = new ReliableSignalingClient(transport);
         } catch (URISyntaxException e) {
             Log.d(TAG, "Error initializing web socket: " + e);
+            return;
         }
+        mSignaling.setListener(new SignalingListener());
+
+        mTextStatus.setText("connecting...");
+        recordSessionEvent(CallSetupTracer.Event.SIGNALING_CONNECT_START);
+        mSignaling.connect();
     }
 
-    private void initWebRtc() {
+    /**
+     * Create the local media and the peer connection manager once, connections are created per peer.
+     * Waits for the factory if it is still being built.
+     */
+    private boolean initWebRtc() {
+        mWebRtcThread.checkIsOnThread();
+        if (mPeers != null) return true;
+
+        PeerConnectionFactory factory;
+        try {
+            factory = mFactoryManager.getFactory();
+        } catch (WebRtcPeerConnection.WebRtcPeerConnectionError e) {
+            Log.d(TAG, "Peer connection factory not available: " + e);
+            return false;
+        }
+
         mCamera = new Camera(this, Camera.Facing.Front, null);
 
         List<PeerConnection.IceServer> iceServers = new ArrayList<>();
         iceServers.add(new PeerConnection.IceServer("stun:35.187.238.244:3478"));
 
-        WebRtcPeerConnection.initialize(getApplicationContext());
-        PeerConnectionFactory factory = PeerConnectionFactory.builder()
-                .setVideoDecoderFactory(new DefaultVideoDecoderFactory(mEglBase.getEglBaseContext()))
-                .setVideoEncoderFactory(new DefaultVideoEncoderFactory(mEglBase.getEglBaseContext(), true, true))
-                .createPeerConnectionFactory();
-        mPeerConnection = new WebRtcPeerConnection(this, mEglBase, mCamera, factory, new PeerConnectionObserver(), iceServers);
+        AudioProfile audioProfile = getIntent().getBooleanExtra(EXTRA_LOW_BANDWIDTH_VOICE, false)
+                ? AudioProfile.lowBandwidthVoice() : new AudioProfile();
+        mLocalMedia = new LocalMedia(this, mEglBase, mCamera, factory, audioProfile);
+        mLocalMedia.enableVideo(true);
+        mLocalMedia.enableAudio(true);
+        mLocalMedia.getLocalVideoTrack().addSink(mLocalRenderer);
+
+        mBandwidthProfile = mBandwidthPolicy.getProfile(mNetworkMonitor.getNetworkType());
+
+        mPeers = new PeerConnectionManager(mLocalMedia, factory, iceServers, ICE_CANDIDATE_POOL_SIZE,
+                PeerConnectionObserver::new);
+        mPeers.setConnectionListener(this::onPeerConnectionCreated);
+        return true;
+    }
+
+    private void onPeerConnectionCreated(String peerId, WebRtcPeerConnection peerConnection) {
+        peerConnection.setCallSetupTracer(getTracer(peerId));
+        peerConnection.setVideoCodecPolicy(mFactoryManager.getVideoCodecPolicy());
+        peerConnection.setBandwidthProfile(mBandwidthProfile);
+        if (mVideoSuspended) peerConnection.setVideoSuspended(true);
+
+        FileTransferChannel fileTransfer = FileTransferChannel.create(peerConnection);
+        fileTransfer.setReceiver(new FileReceiver(peerId));
+        FileTransferChannel previous = mFileTransfers.put(peerId, fileTransfer);
+        if (previous != null) previous.close();
+
+        TelemetryChannel previousTelemetry = mOutgoingTelemetry.put(peerId, peerConnection.createTelemetryChannel());
+        if (previousTelemetry != null) previousTelemetry.close();
+        if (getIntent().getBooleanExtra(EXTRA_SIMULCAST, false)) {
+            peerConnection.setSimulcast(Simulcast.DEFAULT);
+        }
+
+        // capture is shared so it is adapted from the stats of the first connection only
+        if (mStatsSampler == null) {
+            mStatsSampler = new StatsSampler(STATS_HISTORY_SIZE);
+            mStatsSampler.start(peerConnection.getPeerConnection(), STATS_INTERVAL_MS);
+
+            mCaptureFormatController = new CaptureFormatController(mCamera, mWebRtcThread);
+            mCaptureFormatController.start(mStatsSampler);
+
+            VideoCodecPolicy codecPolicy = mFactoryManager.getVideoCodecPolicy();
+            if (codecPolicy != null) {
+                mEncoderMonitor = new VideoCodecPolicy.EncoderMonitor(codecPolicy,
+                        failedCodec -> mWebRtcThread.execute(() -> onEncoderFallback(failedCodec)));
+                mEncoderMonitor.setBandwidthProfile(mBandwidthProfile);
+                mStatsSampler.addListener(mEncoderMonitor);
+            }
+
+            mStatsSampler.addListener(new BandwidthPolicy.AudioOnlyMonitor(mBandwidthPolicy, suspended -> {
+                // told right away, the encoder monitor must not see the stopped encoder as failed
+                if (mEncoderMonitor != null) mEncoderMonitor.setVideoSuspended(suspended);
+                mWebRtcThread.execute(() -> onVideoSuspendedChange(suspended));
+            }));
+        }
+    }
+
+    /**
+     * Apply the profile of the network the device is on now to every connection
+     */
+    private void updateBandwidthProfile() {
+        if (mPeers == null) return;
+
+        NetworkMonitor.NetworkType networkType = mNetworkMonitor.getNetworkType();
+        BandwidthPolicy.Profile profile = mBandwidthPolicy.getProfile(networkType);
+        if (profile == mBandwidthProfile) return;
+
+        Log.d(TAG, "Bandwidth profile for " + networkType + ": " + profile.getMaxBps() + " bps max");
+        mBandwidthProfile = profile;
+        if (mEncoderMonitor != null) mEncoderMonitor.setBandwidthProfile(profile);
+        for (String peerId : mPeers.getPeerIds()) {
+            mPeers.get(peerId).setBandwidthProfile(profile);
+        }
+    }
+
+    private void onVideoSuspendedChange(boolean suspended) {
+        mVideoSuspended = suspended;
+        for (String peerId : mPeers.getPeerIds()) {
+            mPeers.get(peerId).setVideoSuspended(suspended);
+        }
+        runOnUiThread(() -> mTextStatus.setText(suspended ? "audio only, low bandwidth" : "connected"));
+    }
 
-        mPeerConnection.enableVideo(true);
-        mPeerConnection.enableAudio(true);
+    /**
+     * The policy no longer prefers the failed codec, offer again to every peer so the
+     * call moves to the next codec
+     */
+    private void onEncoderFallback(String failedCodec) {
+        Log.d(TAG, "Hardware " + failedCodec + " encoder failed, renegotiating");
+        for (String peerId : mPeers.getPeerIds()) {
+            sendNewOffer(peerId, mPeers.get(peerId));
+        }
+    }
 
-        mPeerConnection.getLocalVideoTrack().addSink(mLocalRenderer);
+    /**
+     * Sender of a message, messages from older clients carry no from_id and can only
+     * be routed when there is a single peer
+     */
+    private String getSenderId(JSONObject message) {
+        String senderId = message.optString("from_id", null);
+        if (senderId == null && mPeers != null) {
+            List<String> peerIds = mPeers.getPeerIds();
+            if (peerIds.size() == 1) senderId = peerIds.get(0);
+        }
+        return senderId;
     }
 
-    private void onWsReceiveAnswerCall(Object... args) {
+    private SignalingCodec getSignalingCodec(String peerId) {
+        SignalingCodec codec = mSignalingCodecs.get(peerId);
+        return codec != null ? codec : SignalingCodecs.forNewPeer();
+    }
+
+    private void onWsReceiveAnswerCall(JSONObject message) {
         Log.d(TAG, "receive answer call");
 
-        JSONObject message = (JSONObject) args[0];
         try {
-            String sdp = message.getString("sdp");
-
-            mPeerConnection.setRemoteDescriptionSync(new SessionDescription(SessionDescription.Type.ANSWER, sdp));
+            String senderId = getSenderId(message);
+            WebRtcPeerConnection peerConnection = senderId != null ? mPeers.get(senderId) : null;
+            if (peerConnection == null) {
+                Log.d(TAG, "Answer from unknown peer " + senderId);
+                return;
+            }
+            getTracer(senderId).record(CallSetupTracer.Event.ANSWER_RECEIVED);
+
+            SessionDescription remoteSdp = SignalingCodecs.forMessage(message)
+                    .getSdp(message, SessionDescription.Type.ANSWER);
+            mSignalingCodecs.put(senderId, SignalingCodecs.negotiate(message, MAX_SIGNALING_VERSION));
+
+            peerConnection.setRemoteDescription(
+                    remoteSdp,
+                    new WebRtcPeerConnection.Callback<SessionDescription>() {
+                        @Override
+                        public void onSuccess(SessionDescription result) {
+                            Log.d(TAG, "Remote answer sdp set");
+                        }
+
+                        @Override
+                        public void onError(WebRtcPeerConnection.WebRtcPeerConnectionError error) {
+                            Log.d(TAG, "Error setting remote answer sdp: " + error);
+                        }
+                    });
         } catch (JSONException e) {
             e.printStackTrace();
-        } catch (WebRtcPeerConnection.WebRtcPeerConnectionError e) {
-            e.printStackTrace();
         }
     }
 
-    private void onWsReceiveNewIce(Object... args) {
+    private void onWsReceiveNewIce(JSONObject message) {
 
         try {
-            JSONObject message = (JSONObject) args[0];
-            String sdpMid = message.getString("sdpMid");
-            int sdpMLineIndex = message.getInt("sdpMLineIndex");
-            String sdp = message.getString("sdp");
-
-            IceCandidate ic = new IceCandidate(
-                    sdpMid,
-                    sdpMLineIndex,
-                    sdp
-            );
-            Log.d(TAG, "receive new ice candidate message: " + ic);
-            mPeerConnection.addIceCandidate(ic);
+            String senderId = getSenderId(message);
+            if (senderId == null || mPeers == null) {
+                Log.d(TAG, "Dropping ice candidates of unknown peer");
+                return;
+            }
+
+            JSONArray candidates = message.optJSONArray("candidates");
+            if (candidates == null) {
+                addRemoteIceCandidate(senderId, message);
+            } else {
+                for (int i = 0; i < candidates.length(); i++) {
+                    addRemoteIceCandidate(senderId, candidates.getJSONObject(i));
+                }
+            }
         } catch (JSONException e) {
             Log.d(TAG, "Error while extracting new ice candidate message: " + e);
         }
     }
 
-    private synchronized void onWsReceiveCall(Object... args) {
+    private void addRemoteIceCandidate(String senderId, JSONObject candidate) throws JSONException {
+        IceCandidate ic = SignalingCodecs.forMessage(candidate).getIceCandidate(candidate);
+        Log.d(TAG, "receive new ice candidate message from " + senderId + ": " + ic);
+        mPeers.addIceCandidate(senderId, ic);
+    }
+
+    private void onWsReceiveCall(JSONObject message) {
         Log.d(TAG, "Receive new call");
 
         try {
-            JSONObject message = (JSONObject) args[0];
             String senderId = message.getString("from_id");
-            String sdp = message.getString("sdp");
-            SessionDescription remoteSdp = new SessionDescription(SessionDescription.Type.OFFER, sdp);
+            getTracer(senderId).record(CallSetupTracer.Event.OFFER_RECEIVED);
+            SessionDescription remoteSdp = SignalingCodecs.forMessage(message)
+                    .getSdp(message, SessionDescription.Type.OFFER);
+            mSignalingCodecs.put(senderId,
+                    SignalingCodecs.negotiate(message, MAX_SIGNALING_VERSION));
 
-            initWebRtc();
-            mPeerConnection.setRemoteDescriptionSync(remoteSdp);
+            if (!initWebRtc()) return;
+            // an offer from a peer already connected renegotiates its existing connection,
+            // otherwise this adopts the connection prepared on connect so its pooled candidates are not thrown away
+            WebRtcPeerConnection peerConnection = mPeers.getOrCreate(senderId);
 
             // answer
-            SessionDescription localSdp = mPeerConnection.createAnswerSync(new MediaConstraints());
-            mPeerConnection.setLocalDescriptionSync(localSdp);
-
-            mCurrPeerId = senderId;
-            sendAnswer(senderId, localSdp);
+            peerConnection.makeAnswer(remoteSdp, new MediaConstraints(),
+                    new WebRtcPeerConnection.Callback<SessionDescription>() {
+                        @Override
+                        public void onSuccess(SessionDescription localSdp) {
+                            mWebRtcThread.execute(() -> sendAnswer(senderId, localSdp));
+                        }
+
+                        @Override
+                        public void onError(WebRtcPeerConnection.WebRtcPeerConnectionError error) {
+                            Log.d(TAG, "Error creating answer sdp: " + error);
+                        }
+                    });
         } catch (JSONException e) {
             Log.d(TAG, "Error while extracting offer message: " + e);
-        } catch (WebRtcPeerConnection.WebRtcPeerConnectionError e) {
-            Log.d(TAG, "Error creating answer sdp: " + e);
         }
     }
 
-    private void onWsError(Object... args) {
-        Log.d(TAG, "Socket error: " + args);
+    private void onWsError(String error) {
+        Log.d(TAG, "Socket error: " + error);
         runOnUiThread(() -> mTextStatus.setText("error"));
     }
 
-    private void onWsConnectError(Object... args) {
-        Log.d(TAG, "Socket connect error: " + args);
-        runOnUiThread(() -> mTextStatus.setText("connect error"));
-    }
-
-    private void onWsDisconnect(Object... args) {
-        Log.d(TAG, "Socket disconnect: " + args);
-        runOnUiThread(() -> mTextStatus.setText("disconnect"));
+    private void onWsDisconnect(String reason) {
+        Log.d(TAG, "Socket disconnect: " + reason);
+        runOnUiThread(() -> mTextStatus.setText("reconnecting..."));
     }
 
-    private void onWsConnect(Object... args) {
+    private void onWsConnect() {
+        if (mMyId != null) {
+            // reconnected, the session registers the same id again and sends what is queued
+            runOnUiThread(() -> mTextStatus.setText("reconnected"));
+            return;
+        }
+        recordSessionEvent(CallSetupTracer.Event.SIGNALING_CONNECTED);
         runOnUiThread(() -> mTextStatus.setText("connected"));
 
         createMyId();
         if (isMakingCall()) {
-            mCurrPeerId = getIntent().getStringExtra(EXTRA_ROOM_NAME);
-            makeCall(mCurrPeerId);
-        } else {
-            initWebRtc();
+            makeCall(getIntent().getStringExtra(EXTRA_ROOM_NAME));
+        } else if (initWebRtc()) {
+            // pre-connect: start gathering into the candidate pool while waiting for the caller
+            mPeers.prepare();
         }
     }
 
@@ -227,40 +525,57 @@ public class CallActivity extends AppCompatActivity {
 
         mMyId = String.valueOf(new Random(System.currentTimeMillis()).nextInt(Short.MAX_VALUE));
 
-        try {
-            JSONObject message = new JSONObject();
-            message.put("id", mMyId);
-            mSocket.emit(EVENT_CREATE_ID, message, (Ack) args1 -> {
-                runOnUiThread(() -> mTextMyId.setText("Id: " + mMyId));
-                Log.d(TAG, "create new user id successful: " + mMyId);
-            });
-        } catch (JSONException e) {
-            runOnUiThread(() -> mTextMyId.setText("Create Id Failed"));
-            Log.d(TAG, "Failed to create JSON message: " + e);
-        }
+        recordSessionEvent(CallSetupTracer.Event.REGISTER_SENT);
+        mSignaling.register(mMyId, () -> {
+            recordSessionEvent(CallSetupTracer.Event.REGISTER_ACKED);
+            runOnUiThread(() -> mTextMyId.setText("Id: " + mMyId));
+            Log.d(TAG, "create new user id successful: " + mMyId);
+        });
     }
 
-    private void makeCall(String userId) {
-        initWebRtc();
+    /**
+     * @param userIds id of the user to call, or comma separated ids to call several users in a mesh
+     */
+    private void makeCall(String userIds) {
+        if (!initWebRtc()) return;
 
-        //
-        try {
-            SessionDescription mySdp = mPeerConnection.createOfferSync(new MediaConstraints());
-            mPeerConnection.setLocalDescriptionSync(mySdp);
-            sendOffer(userId, mySdp);
-        } catch (WebRtcPeerConnection.WebRtcPeerConnectionError e) {
-            Log.d(TAG, "Error while creating/setting local sdp: " + e);
+        for (String id : userIds.split(",")) {
+            String userId = id.trim();
+            if (userId.isEmpty()) continue;
+
+            WebRtcPeerConnection peerConnection = mPeers.getOrCreate(userId);
+            mIceRestarts.put(userId, new IceRestartController(peerConnection, mIceRestartConfig,
+                    offer -> sendOffer(userId, offer), mWebRtcThread.getLooper()));
+            sendNewOffer(userId, peerConnection);
         }
     }
 
+    private void sendNewOffer(String userId, WebRtcPeerConnection peerConnection) {
+        if (peerConnection == null) return;
+
+        peerConnection.makeOffer(new MediaConstraints(), new WebRtcPeerConnection.Callback<SessionDescription>() {
+            @Override
+            public void onSuccess(SessionDescription mySdp) {
+                mWebRtcThread.execute(() -> sendOffer(userId, mySdp));
+            }
+
+            @Override
+            public void onError(WebRtcPeerConnection.WebRtcPeerConnectionError error) {
+                Log.d(TAG, "Error while creating/setting local sdp for " + userId + ": " + error);
+            }
+        });
+    }
+
     private void sendOffer(String userId, SessionDescription sdp) {
         try {
             JSONObject message = new JSONObject();
             message.put("from_id", mMyId);
             message.put("to_id", userId);
-            message.put("sdp", sdp.description);
+            getSignalingCodec(userId).putSdp(message, sdp);
+            SignalingCodecs.putMaxVersion(message, MAX_SIGNALING_VERSION);
 
-            mSocket.emit(EVENT_OFFER_CALL, message, (Ack) args -> Log.d(TAG, "Call offer sent"));
+            getTracer(userId).record(CallSetupTracer.Event.OFFER_SENT);
+            mSignaling.sendOffer(message, () -> Log.d(TAG, "Call offer sent"));
         } catch (JSONException e) {
             Log.d(TAG, "Error while creating offer message: " + e);
         }
@@ -271,11 +586,11 @@ public class CallActivity extends AppCompatActivity {
             JSONObject message = new JSONObject();
             message.put("from_id", mMyId);
             message.put("to_id", userId);
-            message.put("sdp", sdp.description);
+            getSignalingCodec(userId).putSdp(message, sdp);
+            SignalingCodecs.putMaxVersion(message, MAX_SIGNALING_VERSION);
 
-            mSocket.emit(EVENT_ANSWER_CALL, message, (Ack) args -> {
-                Log.d(TAG, "Call answer sent");
-            });
+            getTracer(userId).record(CallSetupTracer.Event.ANSWER_SENT);
+            mSignaling.sendAnswer(message, () -> Log.d(TAG, "Call answer sent"));
         } catch (JSONException e) {
             Log.d(TAG, "Error while creating answer message: " + e);
         }
@@ -283,30 +598,185 @@ public class CallActivity extends AppCompatActivity {
 
     private void sendIceCandidate(String userId, IceCandidate iceCandidate) {
         try {
-            JSONObject message = new JSONObject();
+            JSONObject message = toIceCandidateJson(userId, iceCandidate);
+            message.put("from_id", mMyId);
             message.put("to_id", userId);
-            message.put("sdpMid", iceCandidate.sdpMid);
-            message.put("sdpMLineIndex", iceCandidate.sdpMLineIndex);
-            message.put("sdp", iceCandidate.sdp);
 
-            mSocket.emit(EVENT_SEND_NEW_ICE, message, (Ack) args -> Log.d(TAG, "New ice candidate sent to " + userId));
+            mSignaling.sendIceCandidates(message, () -> Log.d(TAG, "New ice candidate sent to " + userId));
         } catch (JSONException e) {
             Log.d(TAG, "Error constructing new ice candidate message: " + e);
         }
     }
 
+    private void queueIceCandidate(String userId, IceCandidate iceCandidate) {
+        if (mPendingIceCandidates.isEmpty()) {
+            mWebRtcThread.executeDelayed(mIceBatchFlusher, ICE_BATCH_WINDOW_MS);
+        }
+        List<IceCandidate> candidates = mPendingIceCandidates.get(userId);
+        if (candidates == null) {
+            candidates = new ArrayList<>();
+            mPendingIceCandidates.put(userId, candidates);
+        }
+        candidates.add(iceCandidate);
+    }
+
+    private void flushIceCandidates() {
+        mWebRtcThread.cancel(mIceBatchFlusher);
+
+        for (Map.Entry<String, List<IceCandidate>> entry : mPendingIceCandidates.entrySet()) {
+            sendIceCandidates(entry.getKey(), entry.getValue());
+        }
+        mPendingIceCandidates.clear();
+    }
+
+    private void sendIceCandidates(String userId, List<IceCandidate> candidates) {
+        try {
+            JSONArray batch = new JSONArray();
+            for (IceCandidate candidate : candidates) {
+                batch.put(toIceCandidateJson(userId, candidate));
+            }
+
+            JSONObject message = new JSONObject();
+            message.put("from_id", mMyId);
+            message.put("to_id", userId);
+            message.put("candidates", batch);
+
+            mSignaling.sendIceCandidates(message,
+                    () -> Log.d(TAG, candidates.size() + " ice candidates sent to " + userId));
+        } catch (JSONException e) {
+            Log.d(TAG, "Error constructing ice candidates batch message: " + e);
+        }
+    }
+
+    private JSONObject toIceCandidateJson(String userId, IceCandidate iceCandidate) throws JSONException {
+        JSONObject message = new JSONObject();
+        getSignalingCodec(userId).putIceCandidate(message, iceCandidate);
+        return message;
+    }
+
+    /**
+     * Setup tracer of one peer, starting with the signaling events recorded before the peer was known
+     */
+    private CallSetupTracer getTracer(String peerId) {
+        CallSetupTracer tracer = mPeerTracers.get(peerId);
+        if (tracer == null) {
+            CallSetupTracer fork = mTracer.fork();
+            tracer = mPeerTracers.putIfAbsent(peerId, fork);
+            if (tracer == null) tracer = fork;
+        }
+        return tracer;
+    }
+
+    private void recordSessionEvent(CallSetupTracer.Event event) {
+        mTracer.record(event);
+        for (CallSetupTracer tracer : mPeerTracers.values()) {
+            tracer.record(event);
+        }
+    }
+
+    private boolean claimRemoteRenderer(String peerId) {
+        if (mRemoteRendererPeerId == null) mRemoteRendererPeerId = peerId;
+        return peerId.equals(mRemoteRendererPeerId);
+    }
+
     private boolean isMakingCall() {
         return getIntent().getBooleanExtra(EXTRA_IS_MAKING_CALL, false);
     }
 
     public void onSwitchCamClick(View view) {
-        if (mCamera != null) {
-            mCamera.switchCamera();
+        mWebRtcThread.execute(() -> {
+            if (mCamera != null) {
+                mCamera.switchCamera();
+            }
+        });
+    }
+
+    private class SignalingListener implements SignalingClient.Listener {
+
+        @Override
+        public void onConnected() {
+            mWebRtcThread.execute(CallActivity.this::onWsConnect);
+        }
+
+        @Override
+        public void onDisconnected(String reason) {
+            onWsDisconnect(reason);
+        }
+
+        @Override
+        public void onError(String error) {
+            onWsError(error);
+        }
+
+        @Override
+        public void onOffer(JSONObject message) {
+            mWebRtcThread.execute(() -> onWsReceiveCall(message));
+        }
+
+        @Override
+        public void onAnswer(JSONObject message) {
+            mWebRtcThread.execute(() -> onWsReceiveAnswerCall(message));
+        }
+
+        @Override
+        public void onIceCandidates(JSONObject message) {
+            mWebRtcThread.execute(() -> onWsReceiveNewIce(message));
         }
     }
 
+    /**
+     * Saves files sent by a peer into the cache directory
+     */
+    private class FileReceiver implements FileTransferChannel.Receiver {
+
+        private final String mPeerId;
+
+        FileReceiver(String peerId) {
+            mPeerId = peerId;
+        }
+
+        @Override
+        public WritableByteChannel openSink(FileTransferChannel.Transfer transfer) throws IOException {
+            return new FileOutputStream(receivedFile(transfer)).getChannel();
+        }
+
+        @Override
+        public void onProgress(FileTransferChannel.Transfer transfer) {
+            Log.d(TAG, "Receiving from " + mPeerId + ": " + transfer
+                    + " at " + (long) transfer.getBytesPerSecond() + " B/s");
+        }
+
+        @Override
+        public void onComplete(FileTransferChannel.Transfer transfer, boolean verified) {
+            Log.d(TAG, "Received from " + mPeerId + ": " + transfer + ", verified: " + verified);
+            if (!verified) {
+                receivedFile(transfer).delete();
+            }
+        }
+
+        @Override
+        public void onError(FileTransferChannel.Transfer transfer, Exception error) {
+            Log.d(TAG, "Error receiving " + transfer + " from " + mPeerId + ": " + error);
+            receivedFile(transfer).delete();
+        }
+
+        private File receivedFile(FileTransferChannel.Transfer transfer) {
+            // only the last path segment, a peer must not pick where the file goes
+            return new File(getCacheDir(), new File(transfer.name).getName());
+        }
+    }
+
+    /**
+     * Called on libwebrtc's signaling thread, everything touching call state is posted to the webrtc thread
+     */
     private class PeerConnectionObserver implements PeerConnection.Observer {
 
+        private final String mPeerId;
+
+        PeerConnectionObserver(String peerId) {
+            mPeerId = peerId;
+        }
+
         @Override
         public void onSignalingChange(PeerConnection.SignalingState signalingState) {
             Log.d(TAG, "onSignalingChange: " + signalingState);
@@ -314,7 +784,20 @@ public class CallActivity extends AppCompatActivity {
 
         @Override
         public void onIceConnectionChange(PeerConnection.IceConnectionState newState) {
-            Log.d(TAG, "onIceConnectionChange: " + newState);
+            Log.d(TAG, "onIceConnectionChange " + mPeerId + ": " + newState);
+
+            mWebRtcThread.execute(() -> {
+                IceRestartController iceRestart = mIceRestarts.get(mPeerId);
+                if (iceRestart != null) {
+                    iceRestart.onIceConnectionChange(newState);
+                }
+            });
+
+            if (newState == PeerConnection.IceConnectionState.CHECKING) {
+                getTracer(mPeerId).record(CallSetupTracer.Event.ICE_CHECKING);
+            } else if (newState == PeerConnection.IceConnectionState.CONNECTED) {
+                getTracer(mPeerId).record(CallSetupTracer.Event.ICE_CONNECTED);
+            }
         }
 
         @Override
@@ -325,16 +808,27 @@ public class CallActivity extends AppCompatActivity {
         @Override
         public void onIceGatheringChange(PeerConnection.IceGatheringState iceGatheringState) {
             Log.d(TAG, "onIceGatheringChange: " + iceGatheringState);
+
+            if (iceGatheringState == PeerConnection.IceGatheringState.GATHERING) {
+                getTracer(mPeerId).record(CallSetupTracer.Event.ICE_GATHERING_START);
+            } else if (iceGatheringState == PeerConnection.IceGatheringState.COMPLETE) {
+                getTracer(mPeerId).record(CallSetupTracer.Event.ICE_GATHERING_COMPLETE);
+                mWebRtcThread.execute(mIceBatchFlusher);
+            }
         }
 
         @Override
         public void onIceCandidate(IceCandidate iceCandidate) {
             Log.d(TAG, "onIceCandidate: " + iceCandidate);
 
-            if (mCurrPeerId != null) {
-                Log.d(TAG, "Sending new ice candidate to " + mCurrPeerId);
-                sendIceCandidate(mCurrPeerId, iceCandidate);
-            }
+            Log.d(TAG, "Sending new ice candidate to " + mPeerId);
+            mWebRtcThread.execute(() -> {
+                if (ICE_BATCH_WINDOW_MS > 0) {
+                    queueIceCandidate(mPeerId, iceCandidate);
+                } else {
+                    sendIceCandidate(mPeerId, iceCandidate);
+                }
+            });
         }
 
         @Override
@@ -345,15 +839,19 @@ public class CallActivity extends AppCompatActivity {
         @Override
         public void onAddStream(MediaStream mediaStream) {
             Log.d(TAG, "onAddStream: " + mediaStream);
-            for (AudioTrack at : mediaStream.audioTracks) {
-                at.setEnabled(true);
-            }
-
-            if (mediaStream.videoTracks != null && mediaStream.audioTracks.size() == 1) {
-                VideoTrack vt = mediaStream.videoTracks.get(0);
-                vt.setEnabled(true);
-                vt.addSink(mRemoteRenderer);
-            }
+            mWebRtcThread.execute(() -> {
+                for (AudioTrack at : mediaStream.audioTracks) {
+                    at.setEnabled(true);
+                }
+
+                // an audio only stream must not claim the renderer from a peer sending video
+                if (mediaStream.videoTracks != null && !mediaStream.videoTracks.isEmpty()
+                        && claimRemoteRenderer(mPeerId)) {
+                    VideoTrack vt = mediaStream.videoTracks.get(0);
+                    vt.setEnabled(true);
+                    vt.addSink(mRemoteRenderer);
+                }
+            });
         }
 
         @Override
@@ -364,6 +862,16 @@ public class CallActivity extends AppCompatActivity {
         @Override
         public void onDataChannel(DataChannel dataChannel) {
             Log.d(TAG, "onDataChannel: " + dataChannel);
+
+            if (TelemetryChannel.isTelemetryChannel(dataChannel)) {
+                // observer registered right away so no message is missed before the task runs, nothing
+                // consumes telemetry yet so there is no listener (it would be called every tick)
+                TelemetryChannel telemetry = new TelemetryChannel(dataChannel);
+                mWebRtcThread.execute(() -> {
+                    TelemetryChannel previous = mIncomingTelemetry.put(mPeerId, telemetry);
+                    if (previous != null) previous.close();
+                });
+            }
         }
 
         @Override
@@ -7,12 +7,17 @@ import android.os.Bundle;
 import android.view.View;
 import android.widget.EditText;
 
+import com.aar.app.webrtcbarebone.webrtc.PeerConnectionFactoryManager;
+
 public class MainActivity extends AppCompatActivity {
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
+
+        // load native libraries and build the factory while the user is still picking an action
+        PeerConnectionFactoryManager.getInstance().prewarm(getApplicationContext());
     }
 
     public void onWaitClick(View view) {
@@ -0,0 +1,206 @@
+package com.aar.app.webrtcbarebone.signaling;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.webrtc.IceCandidate;
+import org.webrtc.SessionDescription;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compact wire format.
+ *
+ * Sdp: lines that only repeat information found elsewhere in the sdp are stripped, line endings are
+ * sent as "\n" and the text is optionally deflated with a preset dictionary of common sdp boilerplate.
+ * The deflated payload is put into the message as byte[] which Socket.IO sends as a binary attachment.
+ *
+ * Ice candidate: one letter field names and the constant "candidate:" prefix is dropped.
+ */
+public class CompactSignalingCodec implements SignalingCodec {
+
+    public static final int VERSION = 2;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String CANDIDATE_PREFIX = "candidate:";
+
+    // most frequent substrings go last, deflate encodes closer matches with shorter distances
+    private static final byte[] SDP_DICTIONARY = (
+            "a=rtpmap:96 VP8/90000\na=rtpmap:97 rtx/90000\na=rtpmap:98 VP9/90000\na=rtpmap:100 H264/90000\n"
+                    + "a=rtpmap:102 red/90000\na=rtpmap:127 ulpfec/90000\na=rtpmap:111 opus/48000/2\n"
+                    + "a=rtpmap:103 ISAC/16000\na=rtpmap:104 ISAC/32000\na=rtpmap:9 G722/8000\n"
+                    + "a=rtpmap:0 PCMU/8000\na=rtpmap:8 PCMA/8000\na=rtpmap:106 CN/32000\na=rtpmap:105 CN/16000\n"
+                    + "a=rtpmap:13 CN/8000\na=rtpmap:110 telephone-event/48000\na=rtpmap:126 telephone-event/8000\n"
+                    + "a=fmtp:111 minptime=10;useinbandfec=1\n"
+                    + "a=fmtp:100 level-asymmetry-allowed=1;packetization-mode=1;profile-level-id=42e01f\n"
+                    + "a=extmap:2 http://www.webrtc.org/experiments/rtp-hdrext/abs-send-time\n"
+                    + "a=extmap:3 http://www.ietf.org/id/draft-holmer-rmcat-transport-wide-cc-extensions-01\n"
+                    + "a=extmap:4 urn:ietf:params:rtp-hdrext:sdes:mid\n"
+                    + "a=extmap:14 urn:ietf:params:rtp-hdrext:toffset\n"
+                    + "a=extmap:13 urn:3gpp:video-orientation\n"
+                    + "a=extmap:12 http://www.webrtc.org/experiments/rtp-hdrext/playout-delay\n"
+                    + "a=extmap:11 http://www.webrtc.org/experiments/rtp-hdrext/video-content-type\n"
+                    + "a=extmap:7 http://www.webrtc.org/experiments/rtp-hdrext/video-timing\n"
+                    + "a=extmap:1 urn:ietf:params:rtp-hdrext:ssrc-audio-level\n"
+                    + "v=0\no=- 2 IN IP4 127.0.0.1\ns=-\nt=0 0\na=group:BUNDLE audio video\n"
+                    + "a=msid-semantic: WMS ARDAMS\nm=audio 9 UDP/TLS/RTP/SAVPF 111 103 104 9 102 0 8 106 105 13 110 112 113 126\n"
+                    + "m=video 9 UDP/TLS/RTP/SAVPF 96 97 98 99 100 101 127\nc=IN IP4 0.0.0.0\n"
+                    + "a=rtcp:9 IN IP4 0.0.0.0\na=ice-options:trickle renomination\na=fingerprint:sha-256 \n"
+                    + "a=setup:actpass\na=setup:active\na=mid:audio\na=mid:video\na=sendrecv\na=rtcp-mux\n"
+                    + "a=rtcp-rsize\na=ice-ufrag:\na=ice-pwd:\na=ssrc-group:FID \n"
+                    + "a=ssrc: cname:\na=ssrc: msid:ARDAMS ARDAMSa0\na=ssrc: msid:ARDAMS ARDAMSv0\n"
+                    + "a=rtcp-fb:96 goog-remb\na=rtcp-fb:96 transport-cc\na=rtcp-fb:96 ccm fir\n"
+                    + "a=rtcp-fb:96 nack\na=rtcp-fb:96 nack pli\na=fmtp:97 apt=96\na=rtcp-fb:111 transport-cc\n"
+            ).getBytes(UTF_8);
+
+    private final boolean mDeflate;
+
+    /**
+     * @param deflate compress the sdp text, worth it on slow links where the few hundred
+     *                microseconds of cpu are far cheaper than the saved bytes
+     */
+    public CompactSignalingCodec(boolean deflate) {
+        mDeflate = deflate;
+    }
+
+    @Override
+    public int getVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public void putSdp(JSONObject message, SessionDescription sdp) throws JSONException {
+        String compact = compactSdp(sdp.description);
+
+        message.put(FIELD_VERSION, VERSION);
+        if (mDeflate) {
+            message.put("z", deflate(compact.getBytes(UTF_8)));
+        } else {
+            message.put("t", compact);
+        }
+    }
+
+    @Override
+    public SessionDescription getSdp(JSONObject message, SessionDescription.Type type) throws JSONException {
+        String compact;
+        Object deflated = message.opt("z");
+        if (deflated instanceof byte[]) {
+            compact = new String(inflate((byte[]) deflated), UTF_8);
+        } else {
+            compact = message.getString("t");
+        }
+        return new SessionDescription(type, expandSdp(compact));
+    }
+
+    @Override
+    public void putIceCandidate(JSONObject message, IceCandidate iceCandidate) throws JSONException {
+        String candidate = iceCandidate.sdp;
+        if (candidate.startsWith(CANDIDATE_PREFIX)) {
+            candidate = candidate.substring(CANDIDATE_PREFIX.length());
+        }
+
+        message.put(FIELD_VERSION, VERSION);
+        message.put("m", iceCandidate.sdpMid);
+        message.put("i", iceCandidate.sdpMLineIndex);
+        message.put("c", candidate);
+    }
+
+    @Override
+    public IceCandidate getIceCandidate(JSONObject message) throws JSONException {
+        return new IceCandidate(
+                message.getString("m"),
+                message.getInt("i"),
+                CANDIDATE_PREFIX + message.getString("c")
+        );
+    }
+
+    /**
+     * Drop the legacy "a=ssrc:N mslabel:" and "a=ssrc:N label:" lines, both repeat what
+     * "a=ssrc:N msid:" already says, and normalize line endings to "\n"
+     */
+    static String compactSdp(String sdp) {
+        StringBuilder builder = new StringBuilder(sdp.length());
+        int start = 0;
+        int length = sdp.length();
+        while (start < length) {
+            int end = sdp.indexOf('\n', start);
+            if (end < 0) end = length;
+            int lineEnd = end > start && sdp.charAt(end - 1) == '\r' ? end - 1 : end;
+
+            if (!isRedundantLine(sdp, start, lineEnd)) {
+                builder.append(sdp, start, lineEnd).append('\n');
+            }
+            start = end + 1;
+        }
+        return builder.toString();
+    }
+
+    static String expandSdp(String compact) {
+        StringBuilder builder = new StringBuilder(compact.length() + compact.length() / 16);
+        int start = 0;
+        int length = compact.length();
+        while (start < length) {
+            int end = compact.indexOf('\n', start);
+            if (end < 0) end = length;
+            builder.append(compact, start, end).append("\r\n");
+            start = end + 1;
+        }
+        return builder.toString();
+    }
+
+    private static boolean isRedundantLine(String sdp, int start, int end) {
+        if (!sdp.startsWith("a=ssrc:", start)) return false;
+
+        int space = sdp.indexOf(' ', start);
+        if (space < 0 || space >= end) return false;
+        return sdp.startsWith("mslabel:", space + 1) || sdp.startsWith("label:", space + 1);
+    }
+
+    private static byte[] deflate(byte[] input) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setDictionary(SDP_DICTIONARY);
+            deflater.setInput(input);
+            deflater.finish();
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream(input.length / 2);
+            byte[] buffer = new byte[1024];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                output.write(buffer, 0, count);
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] input) throws JSONException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(input);
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream(input.length * 4);
+            byte[] buffer = new byte[1024];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0) {
+                    if (inflater.needsDictionary()) {
+                        inflater.setDictionary(SDP_DICTIONARY);
+                    } else if (inflater.needsInput()) {
+                        throw new JSONException("Truncated deflated sdp");
+                    }
+                }
+                output.write(buffer, 0, count);
+            }
+            return output.toByteArray();
+        } catch (DataFormatException e) {
+            throw new JSONException("Invalid deflated sdp: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+}
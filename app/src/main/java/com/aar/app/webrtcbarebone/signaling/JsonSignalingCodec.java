@@ -0,0 +1,48 @@
+package com.aar.app.webrtcbarebone.signaling;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.webrtc.IceCandidate;
+import org.webrtc.SessionDescription;
+
+/**
+ * Original wire format, full sdp text and verbose candidate fields. Messages without a version
+ * field are decoded with this codec.
+ */
+public class JsonSignalingCodec implements SignalingCodec {
+
+    public static final int VERSION = 1;
+
+    @Override
+    public int getVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public void putSdp(JSONObject message, SessionDescription sdp) throws JSONException {
+        message.put(FIELD_VERSION, VERSION);
+        message.put("sdp", sdp.description);
+    }
+
+    @Override
+    public SessionDescription getSdp(JSONObject message, SessionDescription.Type type) throws JSONException {
+        return new SessionDescription(type, message.getString("sdp"));
+    }
+
+    @Override
+    public void putIceCandidate(JSONObject message, IceCandidate iceCandidate) throws JSONException {
+        message.put(FIELD_VERSION, VERSION);
+        message.put("sdpMid", iceCandidate.sdpMid);
+        message.put("sdpMLineIndex", iceCandidate.sdpMLineIndex);
+        message.put("sdp", iceCandidate.sdp);
+    }
+
+    @Override
+    public IceCandidate getIceCandidate(JSONObject message) throws JSONException {
+        return new IceCandidate(
+                message.getString("sdpMid"),
+                message.getInt("sdpMLineIndex"),
+                message.getString("sdp")
+        );
+    }
+}
@@ -0,0 +1,80 @@
+package com.aar.app.webrtcbarebone.signaling;
+
+import org.json.JSONObject;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Client of a {@link LoopbackSignalingServer}, created with {@link LoopbackSignalingServer#newClient()}
+ */
+public class LoopbackSignalingClient implements SignalingClient {
+
+    private final LoopbackSignalingServer mServer;
+    private volatile Listener mListener;
+    private volatile boolean mConnected = false;
+
+    LoopbackSignalingClient(LoopbackSignalingServer server) {
+        mServer = server;
+    }
+
+    @Override
+    public void setListener(@NonNull Listener listener) {
+        mListener = listener;
+    }
+
+    @Override
+    public void connect() {
+        mServer.post(() -> {
+            mConnected = true;
+            mListener.onConnected();
+        });
+    }
+
+    @Override
+    public void disconnect() {
+        mServer.unregister(this);
+        mServer.post(() -> {
+            if (!mConnected) return;
+            mConnected = false;
+            mListener.onDisconnected("client disconnect");
+        });
+    }
+
+    @Override
+    public void register(@NonNull String id, @Nullable Ack ack) {
+        mServer.register(id, this);
+        if (ack != null) mServer.post(ack::onAck);
+    }
+
+    @Override
+    public void sendOffer(@NonNull JSONObject message, @Nullable Ack ack) {
+        mServer.route(EVENT_RECEIVE_OFFER, message, ack);
+    }
+
+    @Override
+    public void sendAnswer(@NonNull JSONObject message, @Nullable Ack ack) {
+        mServer.route(EVENT_RECEIVE_ANSWER, message, ack);
+    }
+
+    @Override
+    public void sendIceCandidates(@NonNull JSONObject message, @Nullable Ack ack) {
+        mServer.route(EVENT_RECEIVE_ICE, message, ack);
+    }
+
+    void deliver(String event, JSONObject message) {
+        if (!mConnected) return;
+
+        switch (event) {
+            case EVENT_RECEIVE_OFFER:
+                mListener.onOffer(message);
+                break;
+            case EVENT_RECEIVE_ANSWER:
+                mListener.onAnswer(message);
+                break;
+            case EVENT_RECEIVE_ICE:
+                mListener.onIceCandidates(message);
+                break;
+        }
+    }
+}
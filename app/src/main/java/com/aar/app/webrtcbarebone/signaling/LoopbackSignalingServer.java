@@ -0,0 +1,59 @@
+package com.aar.app.webrtcbarebone.signaling;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import androidx.annotation.NonNull;
+
+/**
+ * In-process stand-in for the signaling server routing messages between {@link LoopbackSignalingClient}s
+ * by id. Delivery happens in order on one server thread, like messages arriving from a socket, so
+ * the negotiation flow can be run and measured without a network.
+ */
+public class LoopbackSignalingServer {
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final Map<String, LoopbackSignalingClient> mClients = new ConcurrentHashMap<>();
+
+    public LoopbackSignalingClient newClient() {
+        return new LoopbackSignalingClient(this);
+    }
+
+    public void shutdown() {
+        mExecutor.shutdown();
+    }
+
+    void post(Runnable task) {
+        mExecutor.execute(task);
+    }
+
+    void register(String id, LoopbackSignalingClient client) {
+        mClients.put(id, client);
+    }
+
+    void unregister(LoopbackSignalingClient client) {
+        mClients.values().remove(client);
+    }
+
+    /**
+     * Deliver a copy to the client registered with the message's to_id, as a socket would.
+     * Messages to unknown ids are dropped like the real server does.
+     */
+    void route(@NonNull String event, @NonNull JSONObject message, SignalingClient.Ack ack) {
+        post(() -> {
+            LoopbackSignalingClient client = mClients.get(message.optString("to_id"));
+            if (client != null) {
+                try {
+                    client.deliver(event, new JSONObject(message, JSONObject.getNames(message)));
+                } catch (JSONException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            if (ack != null) ack.onAck();
+        });
+    }
+}
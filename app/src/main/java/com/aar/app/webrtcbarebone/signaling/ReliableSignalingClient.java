@@ -0,0 +1,304 @@
+package com.aar.app.webrtcbarebone.signaling;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Signaling session over another {@link SignalingClient} that survives connection drops.
+ *
+ * A lost connection is reopened after a jittered exponential backoff and the registered id is
+ * registered again, so the peers keep addressing us by the same id. Offers, answers and candidates
+ * go through an outbox in the order they were sent, each tagged with {@link #FIELD_SESSION} and an
+ * increasing {@link #FIELD_SEQ}. A message stays in the outbox until the server acks it and is sent
+ * again after a reconnect. Since the ack may be what got lost, the receiving session drops messages
+ * whose seq it has already seen from that sender.
+ *
+ * {@link Listener#onConnected()} and {@link Listener#onDisconnected(String)} are called for every
+ * reconnect and drop, all listener callbacks and acks come on the session thread.
+ * {@link #disconnect()} ends the session.
+ */
+public class ReliableSignalingClient implements SignalingClient {
+
+    static final String FIELD_SESSION = "session";
+    static final String FIELD_SEQ = "seq";
+
+    private static final long DEFAULT_INITIAL_BACKOFF_MS = 500;
+    private static final long DEFAULT_MAX_BACKOFF_MS = 30_000;
+
+    private static class Outbound {
+        final String event;
+        final JSONObject message;
+        final Ack ack;
+
+        Outbound(String event, JSONObject message, Ack ack) {
+            this.event = event;
+            this.message = message;
+            this.ack = ack;
+        }
+    }
+
+    private static class LastReceived {
+        final String session;
+        final long seq;
+
+        LastReceived(String session, long seq) {
+            this.session = session;
+            this.seq = seq;
+        }
+    }
+
+    private final SignalingClient mTransport;
+    private final long mInitialBackoffMs;
+    private final long mMaxBackoffMs;
+    private final String mSessionId;
+    private final Random mRandom = new Random();
+    private final ScheduledExecutorService mExecutor = Executors.newSingleThreadScheduledExecutor();
+    private volatile Listener mListener;
+
+    // only touched on the session thread
+    private final ArrayDeque<Outbound> mOutbox = new ArrayDeque<>();
+    private final Map<String, LastReceived> mLastReceived = new HashMap<>();
+    private long mNextSeq = 1;
+    private String mId;
+    private Ack mRegisterAck;
+    private boolean mConnected = false;
+    private boolean mClosed = false;
+    private int mAttempts = 0;
+    private ScheduledFuture<?> mReconnect;
+
+    public ReliableSignalingClient(@NonNull SignalingClient transport) {
+        this(transport, DEFAULT_INITIAL_BACKOFF_MS, DEFAULT_MAX_BACKOFF_MS);
+    }
+
+    public ReliableSignalingClient(@NonNull SignalingClient transport, long initialBackoffMs, long maxBackoffMs) {
+        mTransport = transport;
+        mInitialBackoffMs = initialBackoffMs;
+        mMaxBackoffMs = maxBackoffMs;
+        mSessionId = Long.toHexString(mRandom.nextLong());
+        mTransport.setListener(new TransportListener());
+    }
+
+    @Override
+    public void setListener(@NonNull Listener listener) {
+        mListener = listener;
+    }
+
+    @Override
+    public void connect() {
+        post(mTransport::connect);
+    }
+
+    @Override
+    public void disconnect() {
+        post(() -> {
+            mClosed = true;
+            mConnected = false;
+            if (mReconnect != null) mReconnect.cancel(false);
+            mOutbox.clear();
+            mTransport.disconnect();
+            mExecutor.shutdown();
+        });
+    }
+
+    /**
+     * The id is registered again after every reconnect, the ack is only called for the first
+     * registration
+     */
+    @Override
+    public void register(@NonNull String id, @Nullable Ack ack) {
+        post(() -> {
+            mId = id;
+            mRegisterAck = ack;
+            if (mConnected) registerId();
+        });
+    }
+
+    /**
+     * The message gets the session and seq fields added
+     */
+    @Override
+    public void sendOffer(@NonNull JSONObject message, @Nullable Ack ack) {
+        enqueue(EVENT_OFFER, message, ack);
+    }
+
+    @Override
+    public void sendAnswer(@NonNull JSONObject message, @Nullable Ack ack) {
+        enqueue(EVENT_ANSWER, message, ack);
+    }
+
+    @Override
+    public void sendIceCandidates(@NonNull JSONObject message, @Nullable Ack ack) {
+        enqueue(EVENT_ICE, message, ack);
+    }
+
+    private void enqueue(String event, JSONObject message, Ack ack) {
+        post(() -> {
+            try {
+                message.put(FIELD_SESSION, mSessionId);
+                message.put(FIELD_SEQ, mNextSeq++);
+            } catch (JSONException e) {
+                throw new IllegalArgumentException(e);
+            }
+
+            Outbound outbound = new Outbound(event, message, ack);
+            mOutbox.add(outbound);
+            if (mConnected) send(outbound);
+        });
+    }
+
+    private void send(Outbound outbound) {
+        Ack ack = () -> post(() -> {
+            // a message sent again after a reconnect can be acked twice
+            if (mOutbox.remove(outbound) && outbound.ack != null) outbound.ack.onAck();
+        });
+        switch (outbound.event) {
+            case EVENT_OFFER:
+                mTransport.sendOffer(outbound.message, ack);
+                break;
+            case EVENT_ANSWER:
+                mTransport.sendAnswer(outbound.message, ack);
+                break;
+            case EVENT_ICE:
+                mTransport.sendIceCandidates(outbound.message, ack);
+                break;
+        }
+    }
+
+    private void registerId() {
+        Ack ack = mRegisterAck;
+        mRegisterAck = null;
+        mTransport.register(mId, ack == null ? null : () -> post(ack::onAck));
+    }
+
+    private void onTransportConnected() {
+        if (mClosed) return;
+
+        mConnected = true;
+        mAttempts = 0;
+        if (mReconnect != null) {
+            mReconnect.cancel(false);
+            mReconnect = null;
+        }
+        if (mId != null) registerId();
+        // copied since an ack of a message sent before the drop can still come in between
+        for (Outbound outbound : new ArrayList<>(mOutbox)) send(outbound);
+        mListener.onConnected();
+    }
+
+    private void onTransportDisconnected(String reason) {
+        if (mClosed) return;
+
+        boolean wasConnected = mConnected;
+        mConnected = false;
+        scheduleReconnect();
+        if (wasConnected) mListener.onDisconnected(reason);
+    }
+
+    private void onTransportError(String error) {
+        if (mClosed) return;
+
+        // a failed connect attempt only reports an error on some transports
+        if (!mConnected) scheduleReconnect();
+        mListener.onError(error);
+    }
+
+    private void scheduleReconnect() {
+        if (mReconnect != null) return;
+
+        long delay = getBackoffMs(mAttempts++);
+        mReconnect = mExecutor.schedule(() -> {
+            mReconnect = null;
+            if (!mClosed && !mConnected) {
+                mTransport.disconnect();
+                mTransport.connect();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Somewhere between half and all of the exponential backoff, so clients dropped by the same
+     * server restart do not all come back at once
+     */
+    long getBackoffMs(int attempt) {
+        long backoff = mInitialBackoffMs << Math.min(attempt, 20);
+        backoff = Math.min(backoff, mMaxBackoffMs);
+        return backoff / 2 + (long) (mRandom.nextDouble() * (backoff / 2));
+    }
+
+    /**
+     * @return false for a message from the sender's session that was already delivered
+     */
+    private boolean isNew(JSONObject message) {
+        String session = message.optString(FIELD_SESSION, null);
+        long seq = message.optLong(FIELD_SEQ, -1);
+        if (session == null || seq < 0) return true;
+
+        String sender = message.optString("from_id");
+        LastReceived last = mLastReceived.get(sender);
+        if (last != null && last.session.equals(session) && seq <= last.seq) return false;
+
+        mLastReceived.put(sender, new LastReceived(session, seq));
+        return true;
+    }
+
+    private void post(Runnable task) {
+        try {
+            mExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // session ended
+        }
+    }
+
+    private class TransportListener implements Listener {
+
+        @Override
+        public void onConnected() {
+            post(ReliableSignalingClient.this::onTransportConnected);
+        }
+
+        @Override
+        public void onDisconnected(String reason) {
+            post(() -> onTransportDisconnected(reason));
+        }
+
+        @Override
+        public void onError(String error) {
+            post(() -> onTransportError(error));
+        }
+
+        @Override
+        public void onOffer(JSONObject message) {
+            post(() -> {
+                if (!mClosed && isNew(message)) mListener.onOffer(message);
+            });
+        }
+
+        @Override
+        public void onAnswer(JSONObject message) {
+            post(() -> {
+                if (!mClosed && isNew(message)) mListener.onAnswer(message);
+            });
+        }
+
+        @Override
+        public void onIceCandidates(JSONObject message) {
+            post(() -> {
+                if (!mClosed && isNew(message)) mListener.onIceCandidates(message);
+            });
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.aar.app.webrtcbarebone.signaling;
+
+import org.json.JSONObject;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Transport between peers and the signaling server. Messages are addressed with "to_id" and carry
+ * the sender in "from_id", their content is produced by a {@link SignalingCodec}.
+ *
+ * Listener callbacks come on a transport thread.
+ */
+public interface SignalingClient {
+
+    // event names of the signaling server
+    String EVENT_REGISTER = "/api/create";
+    String EVENT_OFFER = "/api/offerCall";
+    String EVENT_ANSWER = "/api/answerCall";
+    String EVENT_ICE = "/api/newIce";
+    String EVENT_RECEIVE_OFFER = "/api/receiveCall";
+    String EVENT_RECEIVE_ANSWER = "/api/receiveAnswerCall";
+    String EVENT_RECEIVE_ICE = "/api/receiveIce";
+
+    interface Listener {
+        void onConnected();
+
+        void onDisconnected(String reason);
+
+        void onError(String error);
+
+        void onOffer(JSONObject message);
+
+        void onAnswer(JSONObject message);
+
+        void onIceCandidates(JSONObject message);
+    }
+
+    /**
+     * Called once the server has accepted a message
+     */
+    interface Ack {
+        void onAck();
+    }
+
+    void setListener(@NonNull Listener listener);
+
+    void connect();
+
+    void disconnect();
+
+    void register(@NonNull String id, @Nullable Ack ack);
+
+    void sendOffer(@NonNull JSONObject message, @Nullable Ack ack);
+
+    void sendAnswer(@NonNull JSONObject message, @Nullable Ack ack);
+
+    void sendIceCandidates(@NonNull JSONObject message, @Nullable Ack ack);
+}
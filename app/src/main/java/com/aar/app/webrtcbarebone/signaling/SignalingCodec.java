@@ -0,0 +1,28 @@
+package com.aar.app.webrtcbarebone.signaling;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.webrtc.IceCandidate;
+import org.webrtc.SessionDescription;
+
+/**
+ * Encodes sdp and ice candidates into signaling messages and back. Every encoded message carries
+ * the codec version in {@link #FIELD_VERSION} so the receiver can pick the matching codec with
+ * {@link SignalingCodecs#forMessage(JSONObject)}. Offers and answers also carry the highest version
+ * their sender can decode in {@link #FIELD_MAX_VERSION}, see {@link SignalingCodecs#negotiate}.
+ */
+public interface SignalingCodec {
+
+    String FIELD_VERSION = "v";
+    String FIELD_MAX_VERSION = "vmax";
+
+    int getVersion();
+
+    void putSdp(JSONObject message, SessionDescription sdp) throws JSONException;
+
+    SessionDescription getSdp(JSONObject message, SessionDescription.Type type) throws JSONException;
+
+    void putIceCandidate(JSONObject message, IceCandidate iceCandidate) throws JSONException;
+
+    IceCandidate getIceCandidate(JSONObject message) throws JSONException;
+}
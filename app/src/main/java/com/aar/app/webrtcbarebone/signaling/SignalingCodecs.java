@@ -0,0 +1,59 @@
+package com.aar.app.webrtcbarebone.signaling;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+public final class SignalingCodecs {
+
+    public static final int MAX_SUPPORTED_VERSION = CompactSignalingCodec.VERSION;
+
+    private static final SignalingCodec JSON_CODEC = new JsonSignalingCodec();
+    private static final SignalingCodec COMPACT_CODEC = new CompactSignalingCodec(true);
+
+    private SignalingCodecs() {
+    }
+
+    /**
+     * Codec of the messages to a peer that has not told us what it supports yet, the original format
+     * since every peer can decode it
+     */
+    public static SignalingCodec forNewPeer() {
+        return JSON_CODEC;
+    }
+
+    public static SignalingCodec forVersion(int version) throws JSONException {
+        switch (version) {
+            case JsonSignalingCodec.VERSION:
+                return JSON_CODEC;
+            case CompactSignalingCodec.VERSION:
+                return COMPACT_CODEC;
+            default:
+                throw new JSONException("Unsupported signaling codec version: " + version);
+        }
+    }
+
+    /**
+     * Codec a received message was encoded with, messages from peers without codec support have no
+     * version field and use the original format
+     */
+    public static SignalingCodec forMessage(JSONObject message) throws JSONException {
+        return forVersion(message.optInt(SignalingCodec.FIELD_VERSION, JsonSignalingCodec.VERSION));
+    }
+
+    /**
+     * Advertise the highest version this side can decode, so the peer can switch up to it
+     */
+    public static void putMaxVersion(JSONObject message, int localMaxVersion) throws JSONException {
+        message.put(SignalingCodec.FIELD_MAX_VERSION, Math.min(localMaxVersion, MAX_SUPPORTED_VERSION));
+    }
+
+    /**
+     * Highest codec both sides understand, used for the messages to the peer that sent the given
+     * offer or answer. A peer that advertised nothing supports what it encoded the message with.
+     */
+    public static SignalingCodec negotiate(JSONObject message, int localMaxVersion) throws JSONException {
+        int remoteVersion = message.optInt(SignalingCodec.FIELD_VERSION, JsonSignalingCodec.VERSION);
+        int remoteMaxVersion = message.optInt(SignalingCodec.FIELD_MAX_VERSION, remoteVersion);
+        return forVersion(Math.min(Math.min(remoteMaxVersion, localMaxVersion), MAX_SUPPORTED_VERSION));
+    }
+}
@@ -0,0 +1,90 @@
+package com.aar.app.webrtcbarebone.signaling;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.net.URISyntaxException;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import io.socket.client.IO;
+import io.socket.client.Socket;
+
+/**
+ * Socket.IO transport, byte[] fields of a message are sent as binary attachments.
+ *
+ * Socket.IO's own reconnection is off, a dropped socket stays down until {@link #connect()} is called
+ * again (see {@link ReliableSignalingClient}).
+ */
+public class SocketIoSignalingClient implements SignalingClient {
+
+    private final Socket mSocket;
+    private volatile Listener mListener;
+
+    public SocketIoSignalingClient(@NonNull String url) throws URISyntaxException {
+        IO.Options options = new IO.Options();
+        options.reconnection = false;
+        mSocket = IO.socket(url, options);
+        mSocket.on(Socket.EVENT_CONNECT, args -> mListener.onConnected());
+        mSocket.on(Socket.EVENT_DISCONNECT, args -> mListener.onDisconnected(describe(args)));
+        mSocket.on(Socket.EVENT_CONNECT_ERROR, args -> mListener.onError("connect error: " + describe(args)));
+        mSocket.on(Socket.EVENT_ERROR, args -> mListener.onError(describe(args)));
+
+        mSocket.on(EVENT_RECEIVE_OFFER, args -> mListener.onOffer((JSONObject) args[0]));
+        mSocket.on(EVENT_RECEIVE_ANSWER, args -> mListener.onAnswer((JSONObject) args[0]));
+        mSocket.on(EVENT_RECEIVE_ICE, args -> mListener.onIceCandidates((JSONObject) args[0]));
+    }
+
+    @Override
+    public void setListener(@NonNull Listener listener) {
+        mListener = listener;
+    }
+
+    @Override
+    public void connect() {
+        mSocket.connect();
+    }
+
+    @Override
+    public void disconnect() {
+        mSocket.disconnect();
+    }
+
+    @Override
+    public void register(@NonNull String id, @Nullable Ack ack) {
+        JSONObject message = new JSONObject();
+        try {
+            message.put("id", id);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException(e);
+        }
+        emit(EVENT_REGISTER, message, ack);
+    }
+
+    @Override
+    public void sendOffer(@NonNull JSONObject message, @Nullable Ack ack) {
+        emit(EVENT_OFFER, message, ack);
+    }
+
+    @Override
+    public void sendAnswer(@NonNull JSONObject message, @Nullable Ack ack) {
+        emit(EVENT_ANSWER, message, ack);
+    }
+
+    @Override
+    public void sendIceCandidates(@NonNull JSONObject message, @Nullable Ack ack) {
+        emit(EVENT_ICE, message, ack);
+    }
+
+    private void emit(String event, JSONObject message, Ack ack) {
+        if (ack == null) {
+            mSocket.emit(event, message);
+        } else {
+            mSocket.emit(event, message, (io.socket.client.Ack) args -> ack.onAck());
+        }
+    }
+
+    private static String describe(Object[] args) {
+        return args.length > 0 ? String.valueOf(args[0]) : "";
+    }
+}
@@ -0,0 +1,220 @@
+package com.aar.app.webrtcbarebone.signaling;
+
+import android.util.Base64;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+
+/**
+ * Plain WebSocket transport, connects with a single upgrade request instead of Socket.IO's
+ * polling handshake followed by an upgrade.
+ *
+ * Every frame is a json text frame
+ * <pre>
+ *     {"event": "/api/offerCall", "data": {...}, "ack": 3}
+ * </pre>
+ * where "ack" is present when the sender wants an acknowledgement, answered by the server with
+ * {"ack": 3}. byte[] fields of the data are sent base64 encoded and listed in {@link #FIELD_BINARY}.
+ */
+public class WebSocketSignalingClient implements SignalingClient {
+    private static final String TAG = "WebSocketSignaling";
+
+    static final String FIELD_BINARY = "$b";
+    private static final int NORMAL_CLOSURE = 1000;
+
+    private final OkHttpClient mClient;
+    private final String mUrl;
+    private volatile Listener mListener;
+    private volatile WebSocket mWebSocket;
+
+    private final AtomicInteger mNextAckId = new AtomicInteger();
+    private final Map<Integer, Ack> mPendingAcks = new ConcurrentHashMap<>();
+
+    public WebSocketSignalingClient(@NonNull String url) {
+        this(new OkHttpClient(), url);
+    }
+
+    public WebSocketSignalingClient(@NonNull OkHttpClient client, @NonNull String url) {
+        mClient = client;
+        mUrl = url;
+    }
+
+    @Override
+    public void setListener(@NonNull Listener listener) {
+        mListener = listener;
+    }
+
+    @Override
+    public synchronized void connect() {
+        if (mWebSocket != null) return;
+        mWebSocket = mClient.newWebSocket(new Request.Builder().url(mUrl).build(), new SocketListener());
+    }
+
+    @Override
+    public synchronized void disconnect() {
+        if (mWebSocket != null) {
+            mWebSocket.close(NORMAL_CLOSURE, null);
+            mWebSocket = null;
+        }
+        mPendingAcks.clear();
+    }
+
+    @Override
+    public void register(@NonNull String id, @Nullable Ack ack) {
+        JSONObject message = new JSONObject();
+        try {
+            message.put("id", id);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException(e);
+        }
+        send(EVENT_REGISTER, message, ack);
+    }
+
+    @Override
+    public void sendOffer(@NonNull JSONObject message, @Nullable Ack ack) {
+        send(EVENT_OFFER, message, ack);
+    }
+
+    @Override
+    public void sendAnswer(@NonNull JSONObject message, @Nullable Ack ack) {
+        send(EVENT_ANSWER, message, ack);
+    }
+
+    @Override
+    public void sendIceCandidates(@NonNull JSONObject message, @Nullable Ack ack) {
+        send(EVENT_ICE, message, ack);
+    }
+
+    private void send(String event, JSONObject message, Ack ack) {
+        WebSocket webSocket = mWebSocket;
+        if (webSocket == null) {
+            Log.d(TAG, "Not connected, dropping " + event);
+            return;
+        }
+
+        try {
+            JSONObject frame = new JSONObject();
+            frame.put("event", event);
+            frame.put("data", encodeBinaryFields(message));
+            if (ack != null) {
+                int ackId = mNextAckId.incrementAndGet();
+                mPendingAcks.put(ackId, ack);
+                frame.put("ack", ackId);
+            }
+            webSocket.send(frame.toString());
+        } catch (JSONException e) {
+            Log.d(TAG, "Error creating " + event + " frame: " + e);
+        }
+    }
+
+    private void onFrame(String text) throws JSONException {
+        JSONObject frame = new JSONObject(text);
+        if (!frame.has("event")) {
+            Ack ack = mPendingAcks.remove(frame.optInt("ack", -1));
+            if (ack != null) ack.onAck();
+            return;
+        }
+
+        JSONObject data = decodeBinaryFields(frame.getJSONObject("data"));
+        switch (frame.getString("event")) {
+            case EVENT_RECEIVE_OFFER:
+                mListener.onOffer(data);
+                break;
+            case EVENT_RECEIVE_ANSWER:
+                mListener.onAnswer(data);
+                break;
+            case EVENT_RECEIVE_ICE:
+                mListener.onIceCandidates(data);
+                break;
+            default:
+                Log.d(TAG, "Unknown event " + frame.getString("event"));
+        }
+    }
+
+    static JSONObject encodeBinaryFields(JSONObject message) throws JSONException {
+        JSONObject encoded = null;
+        JSONArray binaryFields = null;
+        for (Iterator<String> keys = message.keys(); keys.hasNext(); ) {
+            String key = keys.next();
+            Object value = message.get(key);
+            if (!(value instanceof byte[])) continue;
+
+            if (encoded == null) {
+                encoded = new JSONObject(message, JSONObject.getNames(message));
+                binaryFields = new JSONArray();
+                encoded.put(FIELD_BINARY, binaryFields);
+            }
+            encoded.put(key, Base64.encodeToString((byte[]) value, Base64.NO_WRAP));
+            binaryFields.put(key);
+        }
+        return encoded != null ? encoded : message;
+    }
+
+    static JSONObject decodeBinaryFields(JSONObject message) throws JSONException {
+        JSONArray binaryFields = (JSONArray) message.remove(FIELD_BINARY);
+        if (binaryFields == null) return message;
+
+        for (int i = 0; i < binaryFields.length(); i++) {
+            String key = binaryFields.getString(i);
+            message.put(key, Base64.decode(message.getString(key), Base64.NO_WRAP));
+        }
+        return message;
+    }
+
+    private class SocketListener extends WebSocketListener {
+
+        @Override
+        public void onOpen(WebSocket webSocket, Response response) {
+            mListener.onConnected();
+        }
+
+        @Override
+        public void onMessage(WebSocket webSocket, String text) {
+            try {
+                onFrame(text);
+            } catch (JSONException e) {
+                Log.d(TAG, "Error reading frame: " + e);
+            }
+        }
+
+        @Override
+        public void onClosing(WebSocket webSocket, int code, String reason) {
+            webSocket.close(NORMAL_CLOSURE, null);
+        }
+
+        @Override
+        public void onClosed(WebSocket webSocket, int code, String reason) {
+            clear(webSocket);
+            mListener.onDisconnected(code + " " + reason);
+        }
+
+        @Override
+        public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+            clear(webSocket);
+            mListener.onError(String.valueOf(t));
+            mListener.onDisconnected(String.valueOf(t));
+        }
+
+        private void clear(WebSocket webSocket) {
+            synchronized (WebSocketSignalingClient.this) {
+                if (mWebSocket == webSocket) mWebSocket = null;
+            }
+            mPendingAcks.clear();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.aar.app.webrtcbarebone.webrtc;
+
+import org.webrtc.MediaConstraints;
+import org.webrtc.SessionDescription;
+import org.webrtc.voiceengine.WebRtcAudioUtils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Audio capture processing and opus send settings of the local media.
+ *
+ * The processing switches become constraints of the audio source. The hardware switches choose
+ * between the platform echo canceler/noise suppressor and libwebrtc's software ones, they are
+ * process wide and read when recording starts.
+ *
+ * Opus parameters describe what the receiver wants. {@link #applyLocal} writes the ones the profile
+ * turns on into the local description, asking the remote side to send that way, and leaves the rest
+ * as libwebrtc wrote them. {@link #applyRemote} only tightens the limits of what we send (bitrate cap,
+ * packet duration) and keeps whatever else the remote side asked for, e.g. its usedtx=1.
+ */
+public class AudioProfile {
+
+    public boolean echoCancellation = true;
+    public boolean noiseSuppression = true;
+    public boolean autoGainControl = true;
+    public boolean highpassFilter = true;
+    // false uses libwebrtc's software implementation even when the device has one
+    public boolean hardwareEchoCanceler = true;
+    public boolean hardwareNoiseSuppressor = true;
+
+    // discontinuous transmission, a packet every 400 ms during silence instead of every ptime,
+    // false leaves it to libwebrtc which does not ask for it
+    public boolean dtx = false;
+    // in-band forward error correction, recovers single lost packets at some bitrate cost,
+    // false leaves it to libwebrtc which asks for it
+    public boolean inbandFec = false;
+    // 0 leaves the bitrate to libwebrtc (32 kbps for mono voice)
+    public int maxAverageBitrateBps = 0;
+    // 0 leaves the packet duration to libwebrtc (20 ms)
+    public int ptimeMs = 0;
+
+    public static AudioProfile lowBandwidthVoice() {
+        AudioProfile profile = new AudioProfile();
+        profile.dtx = true;
+        profile.inbandFec = true;
+        profile.maxAverageBitrateBps = 20_000;
+        profile.ptimeMs = 40;
+        return profile;
+    }
+
+    public MediaConstraints createConstraints() {
+        MediaConstraints constraints = new MediaConstraints();
+        constraints.mandatory.add(constraint("googEchoCancellation", echoCancellation));
+        constraints.mandatory.add(constraint("googNoiseSuppression", noiseSuppression));
+        constraints.mandatory.add(constraint("googAutoGainControl", autoGainControl));
+        constraints.mandatory.add(constraint("googHighpassFilter", highpassFilter));
+        return constraints;
+    }
+
+    /**
+     * Choose the hardware or software effects, must be called before the audio source is created
+     */
+    public void applyAudioEffects() {
+        WebRtcAudioUtils.setWebRtcBasedAcousticEchoCanceler(!hardwareEchoCanceler);
+        WebRtcAudioUtils.setWebRtcBasedNoiseSuppressor(!hardwareNoiseSuppressor);
+    }
+
+    /**
+     * Local description asking the remote side for the opus settings of this profile
+     */
+    public SessionDescription applyLocal(@NonNull SessionDescription sdp) {
+        Map<String, String> parameters = getOpusParameters();
+        if (parameters.isEmpty() && ptimeMs <= 0) return sdp;
+        return new SessionDescription(sdp.type, applyOpusParameters(sdp.description, parameters, ptimeMs));
+    }
+
+    /**
+     * Remote description with our bitrate cap and packet duration applied where they are tighter
+     * than what the remote side asked for, so they limit what we send
+     */
+    public SessionDescription applyRemote(@NonNull SessionDescription sdp) {
+        if (maxAverageBitrateBps <= 0 && ptimeMs <= 0) return sdp;
+        return new SessionDescription(sdp.type, limitOpusSend(sdp.description, maxAverageBitrateBps, ptimeMs));
+    }
+
+    /**
+     * Only the parameters the profile turns on
+     */
+    Map<String, String> getOpusParameters() {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        if (dtx) parameters.put("usedtx", "1");
+        if (inbandFec) parameters.put("useinbandfec", "1");
+        if (maxAverageBitrateBps > 0) parameters.put("maxaveragebitrate", String.valueOf(maxAverageBitrateBps));
+        return parameters;
+    }
+
+    /**
+     * Merge the parameters into the fmtp line of opus in the audio section, adding the line when
+     * there is none, and set its a=ptime when ptimeMs is greater than 0. Other parameters keep their
+     * values and order.
+     */
+    static String applyOpusParameters(String sdp, Map<String, String> parameters, int ptimeMs) {
+        Sdp parsed = Sdp.parse(sdp);
+        Sdp.Media audio = parsed.findMedia("audio");
+        String payloadType = audio == null ? null : audio.findPayloadType("opus");
+        if (payloadType == null) return sdp;
+
+        Map<String, String> merged = audio.getFmtp(payloadType);
+        merged.putAll(parameters);
+        audio.setFmtp(payloadType, merged);
+        if (ptimeMs > 0) audio.setAttribute("ptime", String.valueOf(ptimeMs));
+        return parsed.toString();
+    }
+
+    /**
+     * Lower the maxaveragebitrate of opus to maxAverageBitrateBps and raise a=ptime to ptimeMs, each
+     * only when greater than 0 and tighter than what the description has
+     */
+    static String limitOpusSend(String sdp, int maxAverageBitrateBps, int ptimeMs) {
+        Sdp parsed = Sdp.parse(sdp);
+        Sdp.Media audio = parsed.findMedia("audio");
+        String payloadType = audio == null ? null : audio.findPayloadType("opus");
+        if (payloadType == null) return sdp;
+
+        if (maxAverageBitrateBps > 0) {
+            Map<String, String> fmtp = audio.getFmtp(payloadType);
+            long asked = parseOr(fmtp.get("maxaveragebitrate"), Long.MAX_VALUE);
+            if (maxAverageBitrateBps < asked) {
+                fmtp.put("maxaveragebitrate", String.valueOf(maxAverageBitrateBps));
+                audio.setFmtp(payloadType, fmtp);
+            }
+        }
+        if (ptimeMs > 0 && ptimeMs > parseOr(audio.getAttribute("ptime"), 0)) {
+            audio.setAttribute("ptime", String.valueOf(ptimeMs));
+        }
+        return parsed.toString();
+    }
+
+    private static long parseOr(String value, long fallback) {
+        if (value == null) return fallback;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private static MediaConstraints.KeyValuePair constraint(String key, boolean value) {
+        return new MediaConstraints.KeyValuePair(key, String.valueOf(value));
+    }
+}
@@ -0,0 +1,186 @@
+package com.aar.app.webrtcbarebone.webrtc;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Send bitrate limits per network type, so a call uses a predictable amount of bandwidth instead of
+ * ramping up until loss pushes it back down.
+ *
+ * A {@link Profile} holds min/start/max bitrates for audio and video. The start and max sums and the
+ * audio min go to the bandwidth estimator of the connection and the max of each kind caps the
+ * encodings of its sender, see
+ * {@link WebRtcPeerConnection#setBandwidthProfile(Profile)}. When the estimate stays below
+ * {@link #getAudioOnlyBelowBps()} the {@link AudioOnlyMonitor} suspends the video so the audio keeps
+ * going.
+ */
+public class BandwidthPolicy {
+    private static final String TAG = "BandwidthPolicy";
+
+    public static class Limits {
+        public final int minBps;
+        public final int startBps;
+        public final int maxBps;
+
+        public Limits(int minBps, int startBps, int maxBps) {
+            if (minBps > startBps || startBps > maxBps) {
+                throw new IllegalArgumentException("Limits need min <= start <= max, got "
+                        + minBps + "/" + startBps + "/" + maxBps);
+            }
+            this.minBps = minBps;
+            this.startBps = startBps;
+            this.maxBps = maxBps;
+        }
+    }
+
+    public static class Profile {
+        public final Limits audio;
+        public final Limits video;
+
+        public Profile(@NonNull Limits audio, @NonNull Limits video) {
+            this.audio = audio;
+            this.video = video;
+        }
+
+        /**
+         * Floor of the bandwidth estimator, the audio min alone. libwebrtc never reports less
+         * available send bandwidth than the floor, with the video min in it the estimate could not
+         * drop to where the video is suspended or the encoder pauses.
+         */
+        public int getMinBps() {
+            return audio.minBps;
+        }
+
+        public int getStartBps() {
+            return audio.startBps + video.startBps;
+        }
+
+        public int getMaxBps() {
+            return audio.maxBps + video.maxBps;
+        }
+    }
+
+    public static final BandwidthPolicy DEFAULT = new BandwidthPolicy(
+            new Profile(new Limits(16_000, 32_000, 64_000), new Limits(150_000, 800_000, 2_500_000)),
+            new Profile(new Limits(16_000, 24_000, 32_000), new Limits(100_000, 300_000, 800_000)),
+            new Profile(new Limits(12_000, 16_000, 24_000), new Limits(50_000, 100_000, 250_000)),
+            80_000,
+            160_000);
+
+    private final Profile mWifi;
+    private final Profile mCellular;
+    private final Profile mRoaming;
+    private final int mAudioOnlyBelowBps;
+    private final int mResumeVideoAboveBps;
+
+    /**
+     * @param audioOnlyBelowBps   estimated send bandwidth under which video is suspended
+     * @param resumeVideoAboveBps estimate over which it is resumed, above audioOnlyBelowBps so it does not flap
+     */
+    public BandwidthPolicy(@NonNull Profile wifi, @NonNull Profile cellular, @NonNull Profile roaming,
+                           int audioOnlyBelowBps, int resumeVideoAboveBps) {
+        if (resumeVideoAboveBps < audioOnlyBelowBps) {
+            throw new IllegalArgumentException("Resume threshold " + resumeVideoAboveBps
+                    + " below audio only threshold " + audioOnlyBelowBps);
+        }
+        for (Profile profile : new Profile[] {wifi, cellular, roaming}) {
+            if (profile.getMinBps() >= audioOnlyBelowBps) {
+                throw new IllegalArgumentException("Estimator floor " + profile.getMinBps()
+                        + " not below audio only threshold " + audioOnlyBelowBps);
+            }
+        }
+        mWifi = wifi;
+        mCellular = cellular;
+        mRoaming = roaming;
+        mAudioOnlyBelowBps = audioOnlyBelowBps;
+        mResumeVideoAboveBps = resumeVideoAboveBps;
+    }
+
+    /**
+     * An unknown network gets the cellular profile, it is safer to underuse wifi than to overuse a metered link
+     */
+    public Profile getProfile(@NonNull NetworkMonitor.NetworkType networkType) {
+        switch (networkType) {
+            case WIFI:
+                return mWifi;
+            case ROAMING:
+                return mRoaming;
+            default:
+                return mCellular;
+        }
+    }
+
+    public int getAudioOnlyBelowBps() {
+        return mAudioOnlyBelowBps;
+    }
+
+    public int getResumeVideoAboveBps() {
+        return mResumeVideoAboveBps;
+    }
+
+    /**
+     * Suspends the video when the available send bandwidth stays below the audio only threshold and
+     * resumes it when it is back above the resume threshold.
+     *
+     * With the video off the estimate has little traffic to grow on, so the video is also resumed
+     * as a probe every {@link #PROBE_SAMPLES} samples, a link that is still too slow suspends it
+     * again shortly after.
+     */
+    public static class AudioOnlyMonitor implements StatsSampler.Listener {
+
+        static final int SUSPEND_SAMPLES = 3;
+        static final int RESUME_SAMPLES = 3;
+        static final int PROBE_SAMPLES = 20;
+
+        public interface Listener {
+            void onVideoSuspendedChange(boolean suspended);
+        }
+
+        private final BandwidthPolicy mPolicy;
+        private final Listener mListener;
+        private boolean mSuspended = false;
+        private int mLowSamples = 0;
+        private int mHighSamples = 0;
+        private int mSuspendedSamples = 0;
+
+        public AudioOnlyMonitor(@NonNull BandwidthPolicy policy, @NonNull Listener listener) {
+            mPolicy = policy;
+            mListener = listener;
+        }
+
+        @Override
+        public void onSample(StatsSampler sampler) {
+            onAvailableSendBandwidth(sampler.getLatest(StatsSampler.Metric.AVAILABLE_SEND_BPS));
+        }
+
+        synchronized void onAvailableSendBandwidth(long availableSendBps) {
+            if (availableSendBps < 0) return;
+
+            if (!mSuspended) {
+                mLowSamples = availableSendBps < mPolicy.mAudioOnlyBelowBps ? mLowSamples + 1 : 0;
+                if (mLowSamples >= SUSPEND_SAMPLES) setSuspended(true, availableSendBps);
+                return;
+            }
+
+            mSuspendedSamples++;
+            mHighSamples = availableSendBps > mPolicy.mResumeVideoAboveBps ? mHighSamples + 1 : 0;
+            if (mHighSamples >= RESUME_SAMPLES || mSuspendedSamples >= PROBE_SAMPLES) {
+                setSuspended(false, availableSendBps);
+            }
+        }
+
+        public synchronized boolean isSuspended() {
+            return mSuspended;
+        }
+
+        private void setSuspended(boolean suspended, long availableSendBps) {
+            Log.d(TAG, (suspended ? "Suspending" : "Resuming") + " video at " + availableSendBps + " bps available");
+            mSuspended = suspended;
+            mLowSamples = 0;
+            mHighSamples = 0;
+            mSuspendedSamples = 0;
+            mListener.onVideoSuspendedChange(suspended);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.aar.app.webrtcbarebone.webrtc;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Records call setup phases into preallocated arrays with a monotonic clock. Recording is a single
+ * atomic increment and two array stores so it can be called from any thread on the setup path,
+ * events past the capacity are dropped. The event store is an ordered write after the timestamp,
+ * so a reader that sees an event also sees its timestamp.
+ *
+ * One tracer covers one connection, a mesh call {@link #fork()}s the tracer holding the signaling
+ * events per remote peer so the phases of different peers are not mixed up.
+ */
+public class CallSetupTracer {
+
+    public enum Event {
+        SIGNALING_CONNECT_START,
+        SIGNALING_CONNECTED,
+        REGISTER_SENT,
+        REGISTER_ACKED,
+        CREATE_SDP_START,
+        CREATE_SDP_DONE,
+        SET_LOCAL_SDP_START,
+        SET_LOCAL_SDP_DONE,
+        SET_REMOTE_SDP_START,
+        SET_REMOTE_SDP_DONE,
+        OFFER_SENT,
+        OFFER_RECEIVED,
+        ANSWER_SENT,
+        ANSWER_RECEIVED,
+        ICE_GATHERING_START,
+        ICE_GATHERING_COMPLETE,
+        ICE_CHECKING,
+        ICE_CONNECTED,
+        FIRST_REMOTE_FRAME
+    }
+
+    private static final Event[] EVENTS = Event.values();
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private final AtomicIntegerArray mEvents;
+    private final long[] mTimestampsNs;
+    private final AtomicInteger mCount = new AtomicInteger();
+
+    public CallSetupTracer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public CallSetupTracer(int capacity) {
+        mEvents = new AtomicIntegerArray(capacity);
+        mTimestampsNs = new long[capacity];
+    }
+
+    public void record(@NonNull Event event) {
+        long now = System.nanoTime();
+        int index = mCount.getAndIncrement();
+        if (index >= mEvents.length()) return;
+
+        mTimestampsNs[index] = now;
+        // event is written last, a slot still holding 0 is being filled and is skipped by readers
+        mEvents.lazySet(index, event.ordinal() + 1);
+    }
+
+    /**
+     * New tracer starting with the events recorded so far
+     */
+    public CallSetupTracer fork() {
+        CallSetupTracer fork = new CallSetupTracer(mEvents.length());
+        int count = Math.min(mCount.get(), mEvents.length());
+        for (int i = 0; i < count; i++) {
+            int event = mEvents.get(i);
+            if (event == 0) continue;
+            int index = fork.mCount.getAndIncrement();
+            fork.mTimestampsNs[index] = mTimestampsNs[i];
+            fork.mEvents.lazySet(index, event);
+        }
+        return fork;
+    }
+
+    public void reset() {
+        mCount.set(0);
+        for (int i = 0; i < mEvents.length(); i++) mEvents.set(i, 0);
+    }
+
+    /**
+     * @return milliseconds between the first occurrence of from and the first occurrence of to
+     * recorded after it, -1 when either is missing
+     */
+    public double getDurationMs(@NonNull Event from, @NonNull Event to) {
+        int count = Math.min(mCount.get(), mEvents.length());
+        long fromNs = -1;
+        for (int i = 0; i < count; i++) {
+            int event = mEvents.get(i) - 1;
+            if (fromNs < 0) {
+                if (event == from.ordinal()) fromNs = mTimestampsNs[i];
+            } else if (event == to.ordinal()) {
+                return (mTimestampsNs[i] - fromNs) / 1_000_000.0;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Per call breakdown of the setup phases in milliseconds, -1 for phases that did not happen
+     * (e.g. the callee has no offer round trip)
+     */
+    public JSONObject export() throws JSONException {
+        JSONObject breakdown = new JSONObject();
+        breakdown.put("signalingConnectMs", getDurationMs(Event.SIGNALING_CONNECT_START, Event.SIGNALING_CONNECTED));
+        breakdown.put("signalingRttMs", getDurationMs(Event.REGISTER_SENT, Event.REGISTER_ACKED));
+        breakdown.put("sdpCreateMs", getDurationMs(Event.CREATE_SDP_START, Event.CREATE_SDP_DONE));
+        breakdown.put("sdpSetLocalMs", getDurationMs(Event.SET_LOCAL_SDP_START, Event.SET_LOCAL_SDP_DONE));
+        breakdown.put("sdpSetRemoteMs", getDurationMs(Event.SET_REMOTE_SDP_START, Event.SET_REMOTE_SDP_DONE));
+        breakdown.put("offerAnswerRttMs", getDurationMs(Event.OFFER_SENT, Event.ANSWER_RECEIVED));
+        breakdown.put("answerMs", getDurationMs(Event.OFFER_RECEIVED, Event.ANSWER_SENT));
+        breakdown.put("iceGatheringMs", getDurationMs(Event.ICE_GATHERING_START, Event.ICE_GATHERING_COMPLETE));
+        breakdown.put("iceConnectMs", getDurationMs(Event.ICE_CHECKING, Event.ICE_CONNECTED));
+        breakdown.put("firstFrameMs", getFirstFrameMs());
+
+        int count = Math.min(mCount.get(), mEvents.length());
+        long startNs = -1;
+        JSONObject timeline = new JSONObject();
+        for (int i = 0; i < count; i++) {
+            int event = mEvents.get(i) - 1;
+            if (event < 0) continue;
+            if (startNs < 0) startNs = mTimestampsNs[i];
+            String name = EVENTS[event].name();
+            if (!timeline.has(name)) timeline.put(name, (mTimestampsNs[i] - startNs) / 1_000_000.0);
+        }
+        breakdown.put("timeline", timeline);
+        return breakdown;
+    }
+
+    /**
+     * Offer to first remote frame, from the offer sent by the caller or received by the callee.
+     * Time spent connecting to signaling and waiting for the other peer to show up is left out.
+     */
+    double getFirstFrameMs() {
+        double sinceOffer = getDurationMs(Event.OFFER_SENT, Event.FIRST_REMOTE_FRAME);
+        return sinceOffer >= 0 ? sinceOffer : getDurationMs(Event.OFFER_RECEIVED, Event.FIRST_REMOTE_FRAME);
+    }
+}
@@ -11,6 +11,9 @@ import org.webrtc.CameraVideoCapturer;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+/**
+ * Camera capturer of the local video. Not thread safe, a call only uses it on its {@link WebRtcThread}.
+ */
 public class Camera {
     private static final String TAG = "WebRTCCamera";
 
@@ -49,6 +52,8 @@ public class Camera {
 
         if (mCameraVideoCapturer == null) {
             mCurrentFacing = Facing.None;
+        } else {
+            LiveObjects.onCreated(LiveObjects.Kind.CAMERA_CAPTURER);
         }
     }
 
@@ -80,13 +85,24 @@ public class Camera {
         }
     }
 
+    /**
+     * Stop capturing and dispose the capturer, blocks until the camera is released so it should not
+     * be called on the ui thread. Calling it again does nothing.
+     */
     public void close() {
         if (mCameraVideoCapturer != null) {
+            stopCapture();
             mCameraVideoCapturer.dispose();
-            mCapturing = false;
+            mCameraVideoCapturer = null;
+            mCurrentFacing = Facing.None;
+            LiveObjects.onDisposed(LiveObjects.Kind.CAMERA_CAPTURER);
         }
     }
 
+    public boolean isClosed() {
+        return mCameraVideoCapturer == null;
+    }
+
     public void switchCamera() {
         if (mCameraVideoCapturer == null || mCameraCount < 2) {
             Log.d(TAG, "Can't switch camera, capturer: " + mCameraVideoCapturer + "camcount: " + mCameraCount);
@@ -0,0 +1,156 @@
+package com.aar.app.webrtcbarebone.webrtc;
+
+import android.util.Log;
+
+import java.util.concurrent.Executor;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Steps the camera capture format up and down a ladder based on the send side stats delivered by a
+ * {@link StatsSampler}: available send bandwidth, cpu limited resolution, encoder usage and dropped frames.
+ *
+ * Going down needs {@link #STEP_DOWN_SAMPLES} consecutive bad samples, going up needs
+ * {@link #STEP_UP_SAMPLES} consecutive good ones with headroom over the next level so the format
+ * does not flap around a threshold.
+ *
+ * Samples come on libwebrtc's signaling thread while the camera belongs to the call's
+ * {@link WebRtcThread}, so format changes are posted to the camera executor given to the constructor.
+ */
+public class CaptureFormatController implements StatsSampler.Listener {
+    private static final String TAG = "CaptureFormatCtrl";
+
+    private static final int STEP_DOWN_SAMPLES = 2;
+    private static final int STEP_UP_SAMPLES = 5;
+    // bandwidth has to exceed the next level's requirement by this factor before stepping up
+    private static final double STEP_UP_HEADROOM = 1.3;
+    private static final int OVERUSE_ENCODE_USAGE_PERCENT = 85;
+    private static final int UNDERUSE_ENCODE_USAGE_PERCENT = 60;
+    private static final double OVERUSE_FRAME_DROP_RATIO = 0.2;
+    private static final double UNDERUSE_FRAME_DROP_RATIO = 0.05;
+
+    public static final Format[] DEFAULT_LADDER = {
+            new Format(640, 360, 15, 250_000),
+            // 16:9 like the other levels, the camera picks its closest supported size
+            new Format(854, 480, Camera.DEFAULT_VIDEO_FRAME_RATE, 600_000),
+            new Format(Camera.HD_720_VIDEO_WIDTH, Camera.HD_720_VIDEO_HEIGHT, Camera.DEFAULT_VIDEO_FRAME_RATE, 1_200_000)
+    };
+
+    public static class Format {
+        public final int width;
+        public final int height;
+        public final int frameRate;
+        // send bandwidth this format needs to be encoded without the encoder downscaling it
+        public final int minBitrateBps;
+
+        public Format(int width, int height, int frameRate, int minBitrateBps) {
+            this.width = width;
+            this.height = height;
+            this.frameRate = frameRate;
+            this.minBitrateBps = minBitrateBps;
+        }
+
+        @Override
+        public String toString() {
+            return width + "x" + height + "@" + frameRate;
+        }
+    }
+
+    private final Camera mCamera;
+    private final Executor mCameraExecutor;
+    private final Format[] mLadder;
+    private StatsSampler mStatsSampler;
+
+    private volatile int mLevel;
+    private int mBadSamples = 0;
+    private int mGoodSamples = 0;
+
+    public CaptureFormatController(@NonNull Camera camera, @NonNull Executor cameraExecutor) {
+        this(camera, cameraExecutor, DEFAULT_LADDER, DEFAULT_LADDER.length - 1);
+    }
+
+    /**
+     * @param cameraExecutor thread the camera is confined to
+     * @param initialLevel   ladder index the camera is currently capturing at
+     */
+    public CaptureFormatController(@NonNull Camera camera, @NonNull Executor cameraExecutor,
+                                   @NonNull Format[] ladder, int initialLevel) {
+        mCamera = camera;
+        mCameraExecutor = cameraExecutor;
+        mLadder = ladder;
+        mLevel = initialLevel;
+    }
+
+    public synchronized void start(@NonNull StatsSampler statsSampler) {
+        if (mStatsSampler != null) return;
+
+        mStatsSampler = statsSampler;
+        statsSampler.addListener(this);
+    }
+
+    public synchronized void stop() {
+        if (mStatsSampler != null) {
+            mStatsSampler.removeListener(this);
+            mStatsSampler = null;
+        }
+    }
+
+    public Format getCurrentFormat() {
+        return mLadder[mLevel];
+    }
+
+    @Override
+    public void onSample(StatsSampler sampler) {
+        long frameRateInput = sampler.getLatest(StatsSampler.Metric.FRAME_RATE_INPUT);
+        long frameRateSent = sampler.getLatest(StatsSampler.Metric.FRAME_RATE_SENT);
+        double frameDropRatio = frameRateInput > 0 && frameRateSent != StatsSampler.MISSING
+                ? Math.max(0, frameRateInput - frameRateSent) / (double) frameRateInput
+                : 0;
+
+        adapt(sampler.getLatest(StatsSampler.Metric.AVAILABLE_SEND_BPS),
+                sampler.getLatest(StatsSampler.Metric.CPU_LIMITED) == 1,
+                (int) sampler.getLatest(StatsSampler.Metric.ENCODE_USAGE_PERCENT),
+                frameDropRatio);
+    }
+
+    synchronized void adapt(long availableSendBps, boolean cpuLimited,
+                            int encodeUsagePercent, double frameDropRatio) {
+        if (availableSendBps < 0) return;
+
+        Format current = mLadder[mLevel];
+        boolean overused = availableSendBps < current.minBitrateBps
+                || cpuLimited
+                || encodeUsagePercent > OVERUSE_ENCODE_USAGE_PERCENT
+                || frameDropRatio > OVERUSE_FRAME_DROP_RATIO;
+        boolean headroom = mLevel + 1 < mLadder.length
+                && availableSendBps > mLadder[mLevel + 1].minBitrateBps * STEP_UP_HEADROOM
+                && encodeUsagePercent < UNDERUSE_ENCODE_USAGE_PERCENT
+                && frameDropRatio < UNDERUSE_FRAME_DROP_RATIO;
+
+        mBadSamples = overused ? mBadSamples + 1 : 0;
+        mGoodSamples = headroom ? mGoodSamples + 1 : 0;
+
+        if (mBadSamples >= STEP_DOWN_SAMPLES && mLevel > 0) {
+            setLevel(mLevel - 1);
+        } else if (mGoodSamples >= STEP_UP_SAMPLES) {
+            setLevel(mLevel + 1);
+        }
+    }
+
+    private void setLevel(int level) {
+        mLevel = level;
+        mBadSamples = 0;
+        mGoodSamples = 0;
+
+        Format format = mLadder[level];
+        mCameraExecutor.execute(() -> {
+            // the call may have ended while the change was queued
+            if (mCamera.isClosed()) {
+                Log.d(TAG, "Camera closed, dropping capture format " + format);
+                return;
+            }
+            Log.d(TAG, "Change capture format to " + format);
+            mCamera.changeCaptureFormat(format.width, format.height, format.frameRate);
+        });
+    }
+}
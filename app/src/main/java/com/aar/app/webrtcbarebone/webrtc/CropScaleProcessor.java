@@ -0,0 +1,45 @@
+package com.aar.app.webrtcbarebone.webrtc;
+
+import org.webrtc.VideoFrame;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Center crops frames to the target aspect ratio and scales them down to the target size. Texture
+ * frames stay on the gpu, cropAndScale only changes their transform matrix.
+ */
+public class CropScaleProcessor implements FrameProcessor {
+
+    private final int mTargetWidth;
+    private final int mTargetHeight;
+
+    /**
+     * @param targetWidth width of an upright frame, swapped with height for rotated frames
+     */
+    public CropScaleProcessor(int targetWidth, int targetHeight) {
+        mTargetWidth = targetWidth;
+        mTargetHeight = targetHeight;
+    }
+
+    @Override
+    public VideoFrame process(@NonNull VideoFrame frame, @NonNull FramePipeline pipeline) {
+        VideoFrame.Buffer buffer = frame.getBuffer();
+        int width = buffer.getWidth();
+        int height = buffer.getHeight();
+        boolean rotated = frame.getRotation() % 180 != 0;
+        int targetWidth = rotated ? mTargetHeight : mTargetWidth;
+        int targetHeight = rotated ? mTargetWidth : mTargetHeight;
+        if (width <= targetWidth && height <= targetHeight) return frame;
+
+        // largest centered crop with the target aspect ratio
+        int cropWidth = Math.min(width, height * targetWidth / targetHeight);
+        int cropHeight = Math.min(height, width * targetHeight / targetWidth);
+        int scaleWidth = Math.min(targetWidth, cropWidth) & ~1;
+        int scaleHeight = Math.min(targetHeight, cropHeight) & ~1;
+
+        VideoFrame.Buffer scaled = pipeline.cropAndScale(buffer,
+                (width - cropWidth) / 2, (height - cropHeight) / 2, cropWidth, cropHeight,
+                scaleWidth, scaleHeight);
+        return new VideoFrame(scaled, frame.getRotation(), frame.getTimestampNs());
+    }
+}
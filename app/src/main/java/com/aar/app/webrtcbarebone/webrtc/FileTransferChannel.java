@@ -0,0 +1,644 @@
+package com.aar.app.webrtcbarebone.webrtc;
+
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.webrtc.DataChannel;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Bulk transfer of files and streams over a reliable, ordered data channel.
+ *
+ * A transfer is a "start" text message, the content as binary messages of at most {@link #CHUNK_SIZE}
+ * bytes and an "end" message carrying the sha-256 of the content, the receiver answers with an "ack"
+ * telling whether its own digest matched. Transfers are sent one after the other.
+ *
+ * Sending runs on a dedicated thread reading into one reusable direct buffer, it stops once
+ * {@link DataChannel#bufferedAmount()} reaches {@link #HIGH_WATERMARK} and resumes from
+ * onBufferedAmountChange when it drops to {@link #LOW_WATERMARK}, so at most about a megabyte is
+ * queued in the native sctp buffer and nothing is queued on the heap.
+ *
+ * Received chunks are copied out of the native buffer in the message callback and written to the
+ * sink on the same thread, so a slow sink never holds up libwebrtc's network thread. The receiver
+ * returns "credit" messages for the chunks it has written and the sender keeps at most
+ * {@link #WINDOW_CHUNKS} chunks without credit, so the copies waiting for a slow sink are bounded
+ * to one window and reuse the same buffers.
+ */
+public class FileTransferChannel implements DataChannel.Observer {
+    private static final String TAG = "FileTransferChannel";
+
+    public static final String LABEL = "file";
+    // negotiated out of band so both sides open it without waiting for onDataChannel
+    private static final int CHANNEL_ID = 1;
+
+    // largest message every sctp implementation takes without message size negotiation
+    static final int CHUNK_SIZE = 16 * 1024;
+    static final long HIGH_WATERMARK = 1024 * 1024;
+    static final long LOW_WATERMARK = 256 * 1024;
+    private static final long PROGRESS_INTERVAL_NS = 250_000_000L;
+    private static final long CLOSE_TIMEOUT_MS = 1_000;
+    // poll interval of a source that has nothing to read yet
+    private static final long READ_RETRY_MS = 10;
+    // chunks sent and not yet written by the receiver, a megabyte
+    static final int WINDOW_CHUNKS = 64;
+    // written chunks the receiver confirms at once, and at the end of every transfer
+    static final int CREDIT_CHUNKS = 16;
+
+    private static final String TYPE_START = "start";
+    private static final String TYPE_END = "end";
+    private static final String TYPE_ACK = "ack";
+    private static final String TYPE_CREDIT = "credit";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Called on the transfer thread
+     */
+    public interface Listener {
+        /**
+         * Called at most every 250ms per transfer
+         */
+        void onProgress(Transfer transfer);
+
+        /**
+         * @param verified whether the receiver's digest matched the sender's
+         */
+        void onComplete(Transfer transfer, boolean verified);
+
+        /**
+         * For an incoming transfer the sink has already been closed and the content written so far
+         * is incomplete, it should be discarded
+         */
+        void onError(Transfer transfer, Exception error);
+    }
+
+    public interface Receiver extends Listener {
+        /**
+         * @return where the content of an incoming transfer is written to, closed when the transfer ends
+         */
+        WritableByteChannel openSink(Transfer transfer) throws IOException;
+    }
+
+    public static class Transfer {
+        public final int id;
+        public final String name;
+        // -1 when unknown
+        public final long size;
+        private final long mStartNs = System.nanoTime();
+        private volatile long mBytes = 0;
+        private long mLastProgressNs = mStartNs;
+
+        Transfer(int id, String name, long size) {
+            this.id = id;
+            this.name = name;
+            this.size = size;
+        }
+
+        public long getBytesTransferred() {
+            return mBytes;
+        }
+
+        public double getBytesPerSecond() {
+            long elapsedNs = System.nanoTime() - mStartNs;
+            return elapsedNs > 0 ? mBytes * 1e9 / elapsedNs : 0;
+        }
+
+        /**
+         * Account transferred bytes, returns true when progress is due
+         */
+        boolean advance(long bytes) {
+            mBytes += bytes;
+            long now = System.nanoTime();
+            if (now - mLastProgressNs < PROGRESS_INTERVAL_NS) return false;
+            mLastProgressNs = now;
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "Transfer{" + id + " " + name + " " + mBytes + "/" + size + "}";
+        }
+    }
+
+    private static class Outgoing {
+        final Transfer transfer;
+        final ReadableByteChannel source;
+        final Listener listener;
+        final MessageDigest digest = newDigest();
+
+        Outgoing(Transfer transfer, ReadableByteChannel source, Listener listener) {
+            this.transfer = transfer;
+            this.source = source;
+            this.listener = listener;
+        }
+    }
+
+    private static class Incoming {
+        final Transfer transfer;
+        final WritableByteChannel sink;
+        final MessageDigest digest = newDigest();
+
+        Incoming(Transfer transfer, WritableByteChannel sink) {
+            this.transfer = transfer;
+            this.sink = sink;
+        }
+    }
+
+    private final DataChannel mDataChannel;
+    private final ScheduledExecutorService mExecutor = Executors.newSingleThreadScheduledExecutor();
+    private final AtomicInteger mNextId = new AtomicInteger();
+    // set before the executor is shut down, nothing is posted to it afterwards
+    private volatile boolean mClosed = false;
+
+    // sender state, only touched on mExecutor
+    private final ByteBuffer mChunk = ByteBuffer.allocateDirect(CHUNK_SIZE);
+    private final Queue<Outgoing> mQueue = new ArrayDeque<>();
+    private Outgoing mCurrent;
+    private volatile boolean mPaused = false;
+    // sent transfers waiting for the receiver's ack
+    private final Map<Integer, Outgoing> mAwaitingAck = new HashMap<>();
+    private boolean mReadRetryScheduled = false;
+    private int mUncreditedChunks = 0;
+
+    // receiver state, only touched on mExecutor
+    private volatile Receiver mReceiver;
+    private Incoming mIncoming;
+    private int mPendingCredit = 0;
+    // copies of received chunks waiting to be reused, with the number allocated, guarded by mFreeChunks
+    private final Queue<ByteBuffer> mFreeChunks = new ArrayDeque<>();
+    private int mAllocatedChunks = 0;
+
+    public FileTransferChannel(@NonNull DataChannel dataChannel) {
+        mDataChannel = dataChannel;
+        LiveObjects.onCreated(LiveObjects.Kind.DATA_CHANNEL);
+        mDataChannel.registerObserver(this);
+    }
+
+    /**
+     * Create the channel on a connection, both sides have to do this before negotiating
+     */
+    public static FileTransferChannel create(@NonNull WebRtcPeerConnection peerConnection) {
+        DataChannel.Init init = new DataChannel.Init();
+        init.ordered = true;
+        init.negotiated = true;
+        init.id = CHANNEL_ID;
+        return new FileTransferChannel(peerConnection.createDataChannel(LABEL, init));
+    }
+
+    public void setReceiver(Receiver receiver) {
+        mReceiver = receiver;
+    }
+
+    public Transfer send(@NonNull File file, @NonNull Listener listener) throws IOException {
+        return send(new FileInputStream(file).getChannel(), file.getName(), file.length(), listener);
+    }
+
+    /**
+     * Queue a transfer, the source is read on the transfer thread and closed when done. On a closed
+     * channel the listener gets an error right away.
+     *
+     * @param size content length or -1 when unknown, only used for progress reporting
+     */
+    public Transfer send(@NonNull ReadableByteChannel source, @NonNull String name, long size,
+                         @NonNull Listener listener) {
+        Transfer transfer = new Transfer(mNextId.incrementAndGet(), name, size);
+        boolean queued = execute(() -> {
+            mQueue.add(new Outgoing(transfer, source, listener));
+            pump();
+        });
+        if (!queued) {
+            closeQuietly(source);
+            listener.onError(transfer, new IOException("Channel closed"));
+        }
+        return transfer;
+    }
+
+    /**
+     * Fail the pending transfers and dispose the data channel, returns once it is disposed so the
+     * peer connection can be disposed right after. Calling it again does nothing.
+     */
+    public void close() {
+        synchronized (this) {
+            if (mClosed) return;
+            mClosed = true;
+        }
+
+        mDataChannel.unregisterObserver();
+        // runs after every task posted before mClosed was set
+        mExecutor.execute(() -> {
+            failAll(new IOException("Channel closed"));
+            failIncoming(new IOException("Channel closed"));
+            mDataChannel.close();
+            mDataChannel.dispose();
+            LiveObjects.onDisposed(LiveObjects.Kind.DATA_CHANNEL);
+        });
+        mExecutor.shutdown();
+        try {
+            if (!mExecutor.awaitTermination(CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                Log.d(TAG, "Timed out waiting for the channel to be disposed");
+            }
+        } catch (InterruptedException e) {
+            Log.d(TAG, "Interrupted waiting for the channel to be disposed: " + e);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Run a task on the transfer thread
+     *
+     * @return false when the channel has been closed and the task was dropped
+     */
+    private boolean execute(Runnable task) {
+        if (mClosed) return false;
+        try {
+            mExecutor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            // closed between the check and the execute
+            Log.d(TAG, "Channel closed, dropping task: " + e);
+            return false;
+        }
+    }
+
+    /**
+     * Send chunks until the native buffer is above the high watermark or there is nothing left
+     */
+    private void pump() {
+        // a delayed retry can still run after the channel has been disposed
+        if (mPaused || mClosed) return;
+
+        while (mDataChannel.state() == DataChannel.State.OPEN) {
+            if (mCurrent == null) {
+                mCurrent = mQueue.poll();
+                if (mCurrent == null) return;
+                if (!sendControl(TYPE_START, mCurrent.transfer, null)) return;
+            }
+
+            // onCredit pumps again
+            if (mUncreditedChunks >= WINDOW_CHUNKS) return;
+
+            if (mDataChannel.bufferedAmount() >= HIGH_WATERMARK) {
+                mPaused = true;
+                // the buffer may have drained before mPaused was visible to the callback
+                if (mDataChannel.bufferedAmount() > LOW_WATERMARK) return;
+                mPaused = false;
+            }
+
+            Outgoing outgoing = mCurrent;
+            try {
+                mChunk.clear();
+                int read = outgoing.source.read(mChunk);
+                if (read < 0) {
+                    finish(outgoing);
+                    continue;
+                }
+                if (read == 0) {
+                    // a non blocking source with nothing available yet, poll again instead of spinning
+                    scheduleReadRetry();
+                    return;
+                }
+
+                mChunk.flip();
+                outgoing.digest.update(mChunk);
+                mChunk.rewind();
+                // the chunk is copied out before send returns, so the buffer can be reused right away
+                if (!mDataChannel.send(new DataChannel.Buffer(mChunk, true))) {
+                    throw new IOException("Data channel send failed, state " + mDataChannel.state());
+                }
+                mUncreditedChunks++;
+                if (outgoing.transfer.advance(read)) {
+                    outgoing.listener.onProgress(outgoing.transfer);
+                }
+            } catch (IOException e) {
+                mCurrent = null;
+                closeQuietly(outgoing.source);
+                outgoing.listener.onError(outgoing.transfer, e);
+            }
+        }
+    }
+
+    private void scheduleReadRetry() {
+        if (mReadRetryScheduled || mClosed) return;
+        mReadRetryScheduled = true;
+        try {
+            mExecutor.schedule(() -> {
+                mReadRetryScheduled = false;
+                pump();
+            }, READ_RETRY_MS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            Log.d(TAG, "Channel closed, not retrying the read: " + e);
+        }
+    }
+
+    private void finish(Outgoing outgoing) {
+        mCurrent = null;
+        closeQuietly(outgoing.source);
+        if (sendControl(TYPE_END, outgoing.transfer, toHex(outgoing.digest.digest()))) {
+            mAwaitingAck.put(outgoing.transfer.id, outgoing);
+        }
+    }
+
+    /**
+     * @return false when the message could not be sent, in which case every transfer has been failed
+     */
+    private boolean sendControl(String type, Transfer transfer, String sha256) {
+        try {
+            JSONObject message = new JSONObject();
+            message.put("type", type);
+            message.put("id", transfer.id);
+            if (TYPE_START.equals(type)) {
+                message.put("name", transfer.name);
+                message.put("size", transfer.size);
+            } else if (sha256 != null) {
+                message.put("sha256", sha256);
+            }
+
+            ByteBuffer data = ByteBuffer.wrap(message.toString().getBytes(UTF_8));
+            if (mDataChannel.send(new DataChannel.Buffer(data, false))) return true;
+            failAll(new IOException("Data channel send failed, state " + mDataChannel.state()));
+        } catch (JSONException e) {
+            Log.d(TAG, "Error creating control message: " + e);
+        }
+        return false;
+    }
+
+    private void failAll(Exception error) {
+        if (mCurrent != null) mQueue.add(mCurrent);
+        mCurrent = null;
+        mQueue.addAll(mAwaitingAck.values());
+        mAwaitingAck.clear();
+
+        Outgoing outgoing;
+        while ((outgoing = mQueue.poll()) != null) {
+            closeQuietly(outgoing.source);
+            outgoing.listener.onError(outgoing.transfer, error);
+        }
+    }
+
+    @Override
+    public void onBufferedAmountChange(long previousAmount) {
+        if (mPaused && mDataChannel.bufferedAmount() <= LOW_WATERMARK) {
+            mPaused = false;
+            execute(this::pump);
+        }
+    }
+
+    @Override
+    public void onStateChange() {
+        DataChannel.State state = mDataChannel.state();
+        Log.d(TAG, "Data channel state: " + state);
+
+        if (state == DataChannel.State.OPEN) {
+            execute(this::pump);
+        } else if (state == DataChannel.State.CLOSED) {
+            execute(() -> {
+                failAll(new IOException("Data channel closed"));
+                failIncoming(new IOException("Data channel closed"));
+            });
+        }
+    }
+
+    /**
+     * Called on libwebrtc's network thread, the data is only valid during the call so it is copied
+     * before the transfer thread writes it
+     */
+    @Override
+    public void onMessage(DataChannel.Buffer buffer) {
+        if (buffer.binary) {
+            ByteBuffer chunk = copyChunk(buffer.data);
+            if (chunk == null) {
+                execute(() -> {
+                    failIncoming(new IOException("Sender exceeded the receive window"));
+                    credit();
+                });
+            } else if (!execute(() -> onChunk(chunk))) {
+                recycleChunk(chunk);
+            }
+            return;
+        }
+
+        byte[] bytes = new byte[buffer.data.remaining()];
+        buffer.data.get(bytes);
+        try {
+            JSONObject message = new JSONObject(new String(bytes, UTF_8));
+            switch (message.getString("type")) {
+                case TYPE_START:
+                    Transfer transfer = new Transfer(message.getInt("id"), message.getString("name"), message.getLong("size"));
+                    execute(() -> onStart(transfer));
+                    break;
+                case TYPE_END:
+                    int endId = message.getInt("id");
+                    String sha256 = message.getString("sha256");
+                    execute(() -> onEnd(endId, sha256));
+                    break;
+                case TYPE_ACK:
+                    int ackId = message.getInt("id");
+                    boolean verified = message.getBoolean("verified");
+                    execute(() -> onAck(ackId, verified));
+                    break;
+                case TYPE_CREDIT:
+                    int chunks = message.getInt("chunks");
+                    execute(() -> onCredit(chunks));
+                    break;
+            }
+        } catch (JSONException e) {
+            Log.d(TAG, "Error reading control message: " + e);
+        }
+    }
+
+    private void onStart(Transfer transfer) {
+        // the sender gave up on the previous transfer without ending it, drop it before opening the next sink
+        failIncoming(new IOException("Interrupted by " + transfer));
+
+        Receiver receiver = mReceiver;
+        if (receiver == null) {
+            Log.d(TAG, "No receiver, dropping " + transfer);
+            return;
+        }
+
+        try {
+            mIncoming = new Incoming(transfer, receiver.openSink(transfer));
+        } catch (IOException e) {
+            Log.d(TAG, "Error opening sink for " + transfer + ": " + e);
+            receiver.onError(transfer, e);
+        }
+    }
+
+    private void onChunk(ByteBuffer data) {
+        Incoming incoming = mIncoming;
+        if (incoming == null) {
+            recycleChunk(data);
+            credit();
+            return;
+        }
+
+        int length = data.remaining();
+        try {
+            incoming.digest.update(data.duplicate());
+            while (data.hasRemaining()) {
+                incoming.sink.write(data);
+            }
+        } catch (IOException e) {
+            failIncoming(e);
+            return;
+        } finally {
+            recycleChunk(data);
+            credit();
+        }
+
+        Receiver receiver = mReceiver;
+        if (incoming.transfer.advance(length) && receiver != null) {
+            receiver.onProgress(incoming.transfer);
+        }
+    }
+
+    private void onEnd(int id, String sha256) {
+        // the chunks below CREDIT_CHUNKS would otherwise count against the next transfer
+        sendCredit();
+
+        Incoming incoming = mIncoming;
+        if (incoming == null || incoming.transfer.id != id) return;
+        mIncoming = null;
+
+        closeQuietly(incoming.sink);
+        boolean verified = toHex(incoming.digest.digest()).equals(sha256);
+        Receiver receiver = mReceiver;
+        if (receiver != null) receiver.onComplete(incoming.transfer, verified);
+
+        try {
+            JSONObject ack = new JSONObject();
+            ack.put("type", TYPE_ACK);
+            ack.put("id", id);
+            ack.put("verified", verified);
+            mDataChannel.send(new DataChannel.Buffer(ByteBuffer.wrap(ack.toString().getBytes(UTF_8)), false));
+        } catch (JSONException e) {
+            Log.d(TAG, "Error creating ack message: " + e);
+        }
+    }
+
+    /**
+     * Close the sink of the unfinished incoming transfer and tell the receiver to discard it
+     */
+    private void failIncoming(Exception error) {
+        Incoming incoming = mIncoming;
+        if (incoming == null) return;
+        mIncoming = null;
+
+        closeQuietly(incoming.sink);
+        notifyError(incoming.transfer, error);
+    }
+
+    /**
+     * Account a received chunk as written, the credit is sent every {@link #CREDIT_CHUNKS} chunks
+     */
+    private void credit() {
+        if (++mPendingCredit >= CREDIT_CHUNKS) sendCredit();
+    }
+
+    private void sendCredit() {
+        if (mPendingCredit == 0) return;
+
+        try {
+            JSONObject credit = new JSONObject();
+            credit.put("type", TYPE_CREDIT);
+            credit.put("chunks", mPendingCredit);
+            if (!mDataChannel.send(new DataChannel.Buffer(ByteBuffer.wrap(credit.toString().getBytes(UTF_8)), false))) {
+                Log.d(TAG, "Failed to send credit, state " + mDataChannel.state());
+            }
+            mPendingCredit = 0;
+        } catch (JSONException e) {
+            Log.d(TAG, "Error creating credit message: " + e);
+        }
+    }
+
+    private void onCredit(int chunks) {
+        mUncreditedChunks = Math.max(0, mUncreditedChunks - chunks);
+        pump();
+    }
+
+    /**
+     * @return copy of the message, null when it is larger than a chunk or a whole window of copies
+     * is already waiting, which a sender following the protocol never causes
+     */
+    private ByteBuffer copyChunk(ByteBuffer data) {
+        if (data.remaining() > CHUNK_SIZE) return null;
+
+        ByteBuffer chunk;
+        synchronized (mFreeChunks) {
+            chunk = mFreeChunks.poll();
+            if (chunk == null) {
+                if (mAllocatedChunks >= WINDOW_CHUNKS) return null;
+                mAllocatedChunks++;
+            }
+        }
+        if (chunk == null) chunk = ByteBuffer.allocateDirect(CHUNK_SIZE);
+        chunk.clear();
+        chunk.put(data);
+        chunk.flip();
+        return chunk;
+    }
+
+    private void recycleChunk(ByteBuffer chunk) {
+        synchronized (mFreeChunks) {
+            mFreeChunks.add(chunk);
+        }
+    }
+
+    private void onAck(int id, boolean verified) {
+        Outgoing outgoing = mAwaitingAck.remove(id);
+        if (outgoing != null) {
+            outgoing.listener.onComplete(outgoing.transfer, verified);
+        }
+    }
+
+    private void notifyError(Transfer transfer, Exception error) {
+        Receiver receiver = mReceiver;
+        if (receiver != null) receiver.onError(transfer, error);
+    }
+
+    private static void closeQuietly(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            Log.d(TAG, "Error closing channel: " + e);
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = Character.forDigit((bytes[i] >> 4) & 0xf, 16);
+            hex[i * 2 + 1] = Character.forDigit(bytes[i] & 0xf, 16);
+        }
+        return new String(hex);
+    }
+}
@@ -0,0 +1,165 @@
+package com.aar.app.webrtcbarebone.webrtc;
+
+import android.util.Log;
+
+import org.webrtc.CapturerObserver;
+import org.webrtc.JavaI420Buffer;
+import org.webrtc.VideoFrame;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Sits between the capturer and the video source and runs every captured frame through a chain of
+ * {@link FrameProcessor}s before it reaches the encoder. Without processors frames pass straight through.
+ *
+ * Processors should keep texture frames on the gpu ({@link VideoFrame.Buffer#cropAndScale} is free for
+ * them). On the cpu {@link #cropAndScale} scales with libyuv, and processors that need writable pixels
+ * copy into a buffer of {@link #getBufferPool()} so a stage does not allocate a frame sized buffer per frame.
+ * Conversions, cpu crop/scales, drops and pool hits and misses are counted.
+ */
+public class FramePipeline implements CapturerObserver {
+    private static final String TAG = "FramePipeline";
+
+    private final CapturerObserver mDownstream;
+    private final List<FrameProcessor> mProcessors = new CopyOnWriteArrayList<>();
+    private final I420BufferPool mBufferPool = new I420BufferPool();
+
+    // written on the capture thread only
+    private volatile long mFramesProcessed = 0;
+    private volatile long mFramesDropped = 0;
+    private volatile long mI420Conversions = 0;
+    private volatile long mCpuCropScales = 0;
+
+    public FramePipeline(@NonNull CapturerObserver downstream) {
+        mDownstream = downstream;
+    }
+
+    public void addProcessor(@NonNull FrameProcessor processor) {
+        mProcessors.add(processor);
+    }
+
+    public void removeProcessor(@NonNull FrameProcessor processor) {
+        mProcessors.remove(processor);
+    }
+
+    public I420BufferPool getBufferPool() {
+        return mBufferPool;
+    }
+
+    /**
+     * I420 view of a buffer, the buffer itself when it already is one. Texture buffers are read back
+     * from the gpu into a buffer libwebrtc allocates, which is counted as a conversion, so crop and
+     * scale them first. The returned buffer has to be released.
+     */
+    public VideoFrame.I420Buffer toI420(@NonNull VideoFrame.Buffer buffer) {
+        if (buffer instanceof VideoFrame.TextureBuffer) mI420Conversions++;
+        return buffer.toI420();
+    }
+
+    /**
+     * Crop and scale that stays on the gpu for texture buffers. Other buffers are cropped without
+     * copying and scaled on the cpu by libyuv into a buffer it allocates, which is counted.
+     */
+    public VideoFrame.Buffer cropAndScale(@NonNull VideoFrame.Buffer buffer,
+                                          int cropX, int cropY, int cropWidth, int cropHeight,
+                                          int scaleWidth, int scaleHeight) {
+        if (buffer instanceof VideoFrame.TextureBuffer) {
+            return buffer.cropAndScale(cropX, cropY, cropWidth, cropHeight, scaleWidth, scaleHeight);
+        }
+
+        mCpuCropScales++;
+        if (cropWidth != scaleWidth || cropHeight != scaleHeight) {
+            // libyuv scales with neon and box filters below half size, which a java bilinear scaler cannot match
+            return buffer.cropAndScale(cropX, cropY, cropWidth, cropHeight, scaleWidth, scaleHeight);
+        }
+
+        VideoFrame.I420Buffer i420 = toI420(buffer);
+        // the crop shares the pixels of the source and keeps it until its own last release
+        return JavaI420Buffer.wrap(cropWidth, cropHeight,
+                offset(i420.getDataY(), cropY * i420.getStrideY() + cropX), i420.getStrideY(),
+                offset(i420.getDataU(), cropY / 2 * i420.getStrideU() + cropX / 2), i420.getStrideU(),
+                offset(i420.getDataV(), cropY / 2 * i420.getStrideV() + cropX / 2), i420.getStrideV(),
+                i420::release);
+    }
+
+    public long getFramesProcessed() {
+        return mFramesProcessed;
+    }
+
+    public long getFramesDropped() {
+        return mFramesDropped;
+    }
+
+    public long getI420Conversions() {
+        return mI420Conversions;
+    }
+
+    public long getCpuCropScales() {
+        return mCpuCropScales;
+    }
+
+    /**
+     * Buffers taken from the pool that were reused instead of allocated
+     */
+    public long getPoolHits() {
+        return mBufferPool.getReuseCount();
+    }
+
+    /**
+     * Buffers the pool had to allocate, stays flat once the pool is warm
+     */
+    public long getPoolMisses() {
+        return mBufferPool.getAllocationCount();
+    }
+
+    @Override
+    public void onCapturerStarted(boolean success) {
+        mDownstream.onCapturerStarted(success);
+    }
+
+    @Override
+    public void onCapturerStopped() {
+        mDownstream.onCapturerStopped();
+    }
+
+    @Override
+    public void onFrameCaptured(VideoFrame captured) {
+        if (mProcessors.isEmpty()) {
+            mDownstream.onFrameCaptured(captured);
+            return;
+        }
+
+        // the captured frame belongs to the capturer, frames produced by processors belong to us
+        VideoFrame frame = captured;
+        for (FrameProcessor processor : mProcessors) {
+            VideoFrame processed;
+            try {
+                processed = processor.process(frame, this);
+            } catch (RuntimeException e) {
+                Log.d(TAG, "Frame processor failed, dropping frame: " + e);
+                processed = null;
+            }
+
+            if (processed != frame && frame != captured) frame.release();
+            if (processed == null) {
+                mFramesDropped++;
+                return;
+            }
+            frame = processed;
+        }
+
+        mFramesProcessed++;
+        mDownstream.onFrameCaptured(frame);
+        if (frame != captured) frame.release();
+    }
+
+    private static ByteBuffer offset(ByteBuffer plane, int offset) {
+        ByteBuffer duplicate = plane.duplicate();
+        duplicate.position(duplicate.position() + offset);
+        return duplicate.slice();
+    }
+}
@@ -0,0 +1,17 @@
+package com.aar.app.webrtcbarebone.webrtc;
+
+import org.webrtc.VideoFrame;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Stage of a {@link FramePipeline}, called on the capture thread for every local frame
+ */
+public interface FrameProcessor {
+
+    /**
+     * @return the frame itself when it passes unchanged, a new frame which the pipeline then owns
+     * and releases, or null to drop the frame. The input frame must not be released.
+     */
+    VideoFrame process(@NonNull VideoFrame frame, @NonNull FramePipeline pipeline);
+}
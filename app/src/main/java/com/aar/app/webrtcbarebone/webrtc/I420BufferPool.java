@@ -0,0 +1,132 @@
+package com.aar.app.webrtcbarebone.webrtc;
+
+import org.webrtc.JavaI420Buffer;
+import org.webrtc.VideoFrame;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Pool of I420 frame buffers of one resolution backed by direct memory. A buffer goes back to the
+ * pool when its last reference is released (usually by the encoder), so a steady stream of frames
+ * reuses a handful of allocations instead of allocating one per frame. Changing the resolution
+ * drops the pooled buffers. {@link #copy} writes into a pooled buffer directly.
+ */
+public class I420BufferPool {
+
+    private static final int DEFAULT_MAX_SIZE = 4;
+
+    private class Entry {
+        final ByteBuffer dataY;
+        final ByteBuffer dataU;
+        final ByteBuffer dataV;
+        final int width;
+        final int height;
+        final Runnable releaseCallback = () -> recycle(this);
+
+        Entry(int width, int height) {
+            this.width = width;
+            this.height = height;
+            int chromaWidth = (width + 1) / 2;
+            int chromaHeight = (height + 1) / 2;
+            int sizeY = width * height;
+            int sizeUv = chromaWidth * chromaHeight;
+
+            ByteBuffer data = ByteBuffer.allocateDirect(sizeY + 2 * sizeUv);
+            dataY = slice(data, 0, sizeY);
+            dataU = slice(data, sizeY, sizeUv);
+            dataV = slice(data, sizeY + sizeUv, sizeUv);
+        }
+    }
+
+    private final int mMaxSize;
+    private final ArrayDeque<Entry> mFree = new ArrayDeque<>();
+    private int mWidth;
+    private int mHeight;
+    private long mAllocations = 0;
+    private long mReuses = 0;
+
+    public I420BufferPool() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize number of free buffers kept, frames in flight beyond that are allocated and dropped
+     */
+    public I420BufferPool(int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * @return buffer with undefined content, released back to the pool by its last release()
+     */
+    public VideoFrame.I420Buffer acquire(int width, int height) {
+        Entry entry;
+        synchronized (this) {
+            if (width != mWidth || height != mHeight) {
+                mFree.clear();
+                mWidth = width;
+                mHeight = height;
+            }
+            entry = mFree.poll();
+            if (entry != null) {
+                mReuses++;
+            } else {
+                mAllocations++;
+            }
+        }
+        if (entry == null) entry = new Entry(width, height);
+
+        int chromaStride = (width + 1) / 2;
+        return JavaI420Buffer.wrap(width, height,
+                entry.dataY, width,
+                entry.dataU, chromaStride,
+                entry.dataV, chromaStride,
+                entry.releaseCallback);
+    }
+
+    /**
+     * Writable copy of the given buffer in a pooled buffer
+     */
+    public VideoFrame.I420Buffer copy(VideoFrame.I420Buffer source) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        VideoFrame.I420Buffer copy = acquire(width, height);
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        copyPlane(source.getDataY(), source.getStrideY(), copy.getDataY(), copy.getStrideY(), width, height);
+        copyPlane(source.getDataU(), source.getStrideU(), copy.getDataU(), copy.getStrideU(), chromaWidth, chromaHeight);
+        copyPlane(source.getDataV(), source.getStrideV(), copy.getDataV(), copy.getStrideV(), chromaWidth, chromaHeight);
+        return copy;
+    }
+
+    public synchronized long getAllocationCount() {
+        return mAllocations;
+    }
+
+    public synchronized long getReuseCount() {
+        return mReuses;
+    }
+
+    private synchronized void recycle(Entry entry) {
+        if (entry.width == mWidth && entry.height == mHeight && mFree.size() < mMaxSize) {
+            mFree.push(entry);
+        }
+    }
+
+    private static void copyPlane(ByteBuffer src, int srcStride, ByteBuffer dst, int dstStride, int width, int height) {
+        ByteBuffer row = src.duplicate();
+        for (int y = 0; y < height; y++) {
+            row.limit(y * srcStride + width).position(y * srcStride);
+            dst.position(y * dstStride);
+            dst.put(row);
+        }
+        dst.rewind();
+    }
+
+    private static ByteBuffer slice(ByteBuffer data, int offset, int length) {
+        ByteBuffer duplicate = data.duplicate();
+        duplicate.position(offset).limit(offset + length);
+        return duplicate.slice();
+    }
+}
@@ -0,0 +1,164 @@
+package com.aar.app.webrtcbarebone.webrtc;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import org.webrtc.MediaConstraints;
+import org.webrtc.PeerConnection;
+import org.webrtc.SessionDescription;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Recovers a call after a network change by restarting ice on the existing connection, media tracks,
+ * renderers and negotiated codecs stay as they are.
+ *
+ * A restart offer is made when the connection has been DISCONNECTED for
+ * {@link Config#disconnectedGraceMs}, right away when it is FAILED or the network changed. An attempt
+ * that has not reconnected within {@link Config#attemptTimeoutMs} is retried after an exponential
+ * backoff, up to {@link Config#maxAttempts}.
+ *
+ * Only the side that made the original offer restarts: both sides offering at once would leave both
+ * in have-local-offer, and this libwebrtc version cannot roll an offer back.
+ */
+public class IceRestartController {
+    private static final String TAG = "IceRestartController";
+
+    public static class Config {
+        // disconnected often heals by itself when only a few packets were lost
+        public long disconnectedGraceMs = 2_000;
+        public long attemptTimeoutMs = 5_000;
+        public long initialBackoffMs = 1_000;
+        public long maxBackoffMs = 16_000;
+        public int maxAttempts = 6;
+    }
+
+    public interface Signaler {
+        /**
+         * Send the restart offer to the remote peer, its answer goes through
+         * {@link WebRtcPeerConnection#setRemoteDescription} as usual
+         */
+        void sendOffer(SessionDescription offer);
+    }
+
+    private final WebRtcPeerConnection mPeerConnection;
+    private final Config mConfig;
+    private final Signaler mSignaler;
+    private final Handler mHandler;
+    private final Runnable mRestarter = this::restart;
+
+    // only touched on the handler thread
+    private boolean mConnected = false;
+    private boolean mRecovering = false;
+    private int mAttempts = 0;
+    private boolean mClosed = false;
+
+    public IceRestartController(@NonNull WebRtcPeerConnection peerConnection,
+                                @NonNull Config config,
+                                @NonNull Signaler signaler) {
+        this(peerConnection, config, signaler, Looper.getMainLooper());
+    }
+
+    /**
+     * @param looper thread the restarts are made and the signaler is called on
+     */
+    public IceRestartController(@NonNull WebRtcPeerConnection peerConnection,
+                                @NonNull Config config,
+                                @NonNull Signaler signaler,
+                                @NonNull Looper looper) {
+        mPeerConnection = peerConnection;
+        mConfig = config;
+        mSignaler = signaler;
+        mHandler = new Handler(looper);
+    }
+
+    public void onIceConnectionChange(PeerConnection.IceConnectionState state) {
+        mHandler.post(() -> {
+            if (mClosed) return;
+
+            switch (state) {
+                case CONNECTED:
+                case COMPLETED:
+                    if (mRecovering) Log.d(TAG, "Recovered after " + mAttempts + " restart attempts");
+                    mConnected = true;
+                    mRecovering = false;
+                    mAttempts = 0;
+                    mHandler.removeCallbacks(mRestarter);
+                    break;
+                case DISCONNECTED:
+                    if (mConnected && !mRecovering) {
+                        mRecovering = true;
+                        mHandler.postDelayed(mRestarter, mConfig.disconnectedGraceMs);
+                    }
+                    break;
+                case FAILED:
+                    if (mConnected && mAttempts == 0) {
+                        mRecovering = true;
+                        mHandler.removeCallbacks(mRestarter);
+                        restart();
+                    }
+                    break;
+            }
+        });
+    }
+
+    /**
+     * The candidate pair in use is likely gone, restart without waiting for ice to notice
+     */
+    public void onNetworkChanged() {
+        mHandler.post(() -> {
+            if (mClosed || !mConnected || mAttempts > 0) return;
+
+            mRecovering = true;
+            mHandler.removeCallbacks(mRestarter);
+            restart();
+        });
+    }
+
+    public void close() {
+        mHandler.post(() -> {
+            mClosed = true;
+            mHandler.removeCallbacks(mRestarter);
+        });
+    }
+
+    private void restart() {
+        if (mClosed) return;
+        if (mAttempts >= mConfig.maxAttempts) {
+            Log.d(TAG, "Giving up ice restart after " + mAttempts + " attempts");
+            // a later network change starts over
+            mRecovering = false;
+            mAttempts = 0;
+            return;
+        }
+
+        mAttempts++;
+        Log.d(TAG, "Ice restart attempt " + mAttempts);
+
+        MediaConstraints constraints = new MediaConstraints();
+        constraints.mandatory.add(new MediaConstraints.KeyValuePair("IceRestart", "true"));
+        mPeerConnection.makeOffer(constraints, new WebRtcPeerConnection.Callback<SessionDescription>() {
+            @Override
+            public void onSuccess(SessionDescription offer) {
+                // called on the sdp observer thread, the signaler is promised the handler thread
+                mHandler.post(() -> {
+                    if (!mClosed) mSignaler.sendOffer(offer);
+                });
+            }
+
+            @Override
+            public void onError(WebRtcPeerConnection.WebRtcPeerConnectionError error) {
+                Log.d(TAG, "Error creating ice restart offer: " + error);
+            }
+        });
+
+        // retried unless CONNECTED/COMPLETED removes it first
+        mHandler.postDelayed(mRestarter, mConfig.attemptTimeoutMs + getBackoffMs(mAttempts));
+    }
+
+    private long getBackoffMs(int attempt) {
+        long backoff = mConfig.initialBackoffMs << Math.min(attempt - 1, 16);
+        return Math.min(backoff, mConfig.maxBackoffMs);
+    }
+}
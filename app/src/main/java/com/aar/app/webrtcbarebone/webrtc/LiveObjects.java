@@ -0,0 +1,88 @@
+package com.aar.app.webrtcbarebone.webrtc;
+
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process wide counts of the native objects this package creates and has not disposed yet.
+ *
+ * Every object is counted when created and uncounted when disposed, so after a call has been torn
+ * down all counts are back to where they were before it, a count that keeps growing from call to
+ * call is a leak. Tests assert on {@link #get(Kind)} and {@link #getTotal()}.
+ *
+ * A dispose without a matching create is a counting bug, it is logged and counted in
+ * {@link #getUnbalancedDisposals()} but never thrown since it happens during teardown.
+ */
+public final class LiveObjects {
+    private static final String TAG = "LiveObjects";
+
+    public enum Kind {
+        FACTORY,
+        EGL_BASE,
+        PEER_CONNECTION,
+        MEDIA_STREAM,
+        AUDIO_SOURCE,
+        VIDEO_SOURCE,
+        SURFACE_TEXTURE_HELPER,
+        CAMERA_CAPTURER,
+        DATA_CHANNEL,
+        RENDERER
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+    private static final AtomicInteger[] sCounts = new AtomicInteger[KINDS.length];
+    private static final AtomicInteger sUnbalancedDisposals = new AtomicInteger();
+
+    static {
+        for (int i = 0; i < sCounts.length; i++) sCounts[i] = new AtomicInteger();
+    }
+
+    private LiveObjects() { }
+
+    /**
+     * Public for the objects created outside this package, e.g. the renderers of the call screen
+     */
+    public static void onCreated(Kind kind) {
+        sCounts[kind.ordinal()].incrementAndGet();
+    }
+
+    public static void onDisposed(Kind kind) {
+        if (sCounts[kind.ordinal()].decrementAndGet() < 0) {
+            sCounts[kind.ordinal()].incrementAndGet();
+            sUnbalancedDisposals.incrementAndGet();
+            Log.d(TAG, "Error counting: " + kind + " disposed more often than created");
+        }
+    }
+
+    public static int get(Kind kind) {
+        return sCounts[kind.ordinal()].get();
+    }
+
+    public static int getTotal() {
+        int total = 0;
+        for (AtomicInteger count : sCounts) total += count.get();
+        return total;
+    }
+
+    /**
+     * Disposals that had no matching create and were ignored, 0 unless the counting is wrong
+     */
+    public static int getUnbalancedDisposals() {
+        return sUnbalancedDisposals.get();
+    }
+
+    /**
+     * Non zero counts, e.g. "PEER_CONNECTION=1 CAMERA_CAPTURER=1", empty when nothing is alive
+     */
+    public static String describe() {
+        StringBuilder description = new StringBuilder();
+        for (Kind kind : KINDS) {
+            int count = get(kind);
+            if (count == 0) continue;
+            if (description.length() > 0) description.append(' ');
+            description.append(kind).append('=').append(count);
+        }
+        return description.toString();
+    }
+}
@@ -0,0 +1,168 @@
+package com.aar.app.webrtcbarebone.webrtc;
+
+import android.content.Context;
+
+import org.webrtc.AudioSource;
+import org.webrtc.AudioTrack;
+import org.webrtc.CameraVideoCapturer;
+import org.webrtc.EglBase;
+import org.webrtc.MediaStream;
+import org.webrtc.PeerConnectionFactory;
+import org.webrtc.SurfaceTextureHelper;
+import org.webrtc.VideoSource;
+import org.webrtc.VideoTrack;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Local camera capturer, audio/video sources and tracks. One instance can be shared by any
+ * number of {@link WebRtcPeerConnection}s so the camera is opened and captured only once.
+ *
+ * Owns the camera it is given, {@link #dispose()} closes it.
+ */
+public class LocalMedia {
+
+    private Camera mCamera;
+    private final AudioProfile mAudioProfile;
+    private SurfaceTextureHelper mSurfaceTextureHelper;
+    private VideoSource mLocalVideoSource;
+    private FramePipeline mFramePipeline;
+    private VideoTrack mLocalVideoTrack;
+    private AudioSource mLocalAudioSource;
+    private AudioTrack mLocalAudioTrack;
+    private MediaStream mMediaStream;
+
+    public LocalMedia(
+            @NonNull Context context,
+            @NonNull EglBase eglBase,
+            @NonNull Camera camera,
+            @NonNull PeerConnectionFactory factory) {
+        this(context, eglBase, camera, factory, new AudioProfile());
+    }
+
+    public LocalMedia(
+            @NonNull Context context,
+            @NonNull EglBase eglBase,
+            @NonNull Camera camera,
+            @NonNull PeerConnectionFactory factory,
+            @NonNull AudioProfile audioProfile) {
+        mCamera = camera;
+        mAudioProfile = audioProfile;
+
+        initAudio(factory);
+        initVideo(context, eglBase, camera, factory);
+
+        mMediaStream = factory.createLocalMediaStream("ARDAMS");
+        LiveObjects.onCreated(LiveObjects.Kind.MEDIA_STREAM);
+        mMediaStream.addTrack(mLocalAudioTrack);
+        if (mLocalVideoTrack != null) mMediaStream.addTrack(mLocalVideoTrack);
+    }
+
+    private void initAudio(PeerConnectionFactory factory) {
+        mAudioProfile.applyAudioEffects();
+        mLocalAudioSource = factory.createAudioSource(mAudioProfile.createConstraints());
+        LiveObjects.onCreated(LiveObjects.Kind.AUDIO_SOURCE);
+        mLocalAudioTrack = factory.createAudioTrack("ARDAMSa0", mLocalAudioSource);
+        mLocalAudioTrack.setEnabled(false);
+    }
+
+    private void initVideo(Context context, EglBase eglBase, Camera camera, PeerConnectionFactory factory) {
+        CameraVideoCapturer capturer = camera.getCameraVideoCapturer();
+        if (capturer != null) {
+            mLocalVideoSource = factory.createVideoSource(capturer.isScreencast());
+            LiveObjects.onCreated(LiveObjects.Kind.VIDEO_SOURCE);
+            mFramePipeline = new FramePipeline(mLocalVideoSource.getCapturerObserver());
+            mSurfaceTextureHelper = SurfaceTextureHelper.create("Cap0", eglBase.getEglBaseContext());
+            if (mSurfaceTextureHelper != null) {
+                LiveObjects.onCreated(LiveObjects.Kind.SURFACE_TEXTURE_HELPER);
+            }
+            capturer.initialize(mSurfaceTextureHelper, context, mFramePipeline);
+            mLocalVideoTrack = factory.createVideoTrack("ARDAMSv0", mLocalVideoSource);
+            mLocalVideoTrack.setEnabled(false);
+        }
+    }
+
+    public MediaStream getMediaStream() {
+        return mMediaStream;
+    }
+
+    public VideoTrack getLocalVideoTrack() {
+        return mLocalVideoTrack;
+    }
+
+    public AudioTrack getLocalAudioTrack() {
+        return mLocalAudioTrack;
+    }
+
+    /**
+     * Processing stage between the camera and the encoder, null when there is no camera
+     */
+    public FramePipeline getFramePipeline() {
+        return mFramePipeline;
+    }
+
+    /**
+     * Opus settings the connections sending this media negotiate
+     */
+    public AudioProfile getAudioProfile() {
+        return mAudioProfile;
+    }
+
+    public Camera getCamera() {
+        return mCamera;
+    }
+
+    public void flipCamera() {
+        mCamera.switchCamera();
+    }
+
+    public void enableAudio(boolean enable) {
+        mLocalAudioTrack.setEnabled(enable);
+    }
+
+    /**
+     * Dispose the tracks, sources and camera in the order libwebrtc needs: tracks before their
+     * sources, the capturer stopped before the video source and the texture helper it draws into.
+     * Every connection using this media must have been disposed first. Blocks while the camera
+     * stops, calling it again does nothing.
+     */
+    public void dispose() {
+        if (mMediaStream == null) return;
+
+        // disposes the tracks it holds
+        mMediaStream.dispose();
+        mMediaStream = null;
+        mLocalAudioTrack = null;
+        mLocalVideoTrack = null;
+        LiveObjects.onDisposed(LiveObjects.Kind.MEDIA_STREAM);
+
+        mLocalAudioSource.dispose();
+        mLocalAudioSource = null;
+        LiveObjects.onDisposed(LiveObjects.Kind.AUDIO_SOURCE);
+
+        mCamera.close();
+
+        if (mLocalVideoSource != null) {
+            mLocalVideoSource.dispose();
+            mLocalVideoSource = null;
+            LiveObjects.onDisposed(LiveObjects.Kind.VIDEO_SOURCE);
+        }
+        if (mSurfaceTextureHelper != null) {
+            mSurfaceTextureHelper.dispose();
+            mSurfaceTextureHelper = null;
+            LiveObjects.onDisposed(LiveObjects.Kind.SURFACE_TEXTURE_HELPER);
+        }
+    }
+
+    public void enableVideo(boolean enable) {
+        if (mLocalVideoTrack != null) {
+            mLocalVideoTrack.setEnabled(enable);
+        }
+
+        if (enable) {
+            mCamera.startCapture();
+        } else {
+            mCamera.stopCapture();
+        }
+    }
+}
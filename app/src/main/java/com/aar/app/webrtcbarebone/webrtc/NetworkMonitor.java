@@ -0,0 +1,104 @@
+package com.aar.app.webrtcbarebone.webrtc;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.net.NetworkRequest;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Reports when the device moves to another network (e.g. wifi to lte), which invalidates the
+ * candidate pair an established call is using. Needs api 21, on older devices nothing is reported
+ * and recovery relies on the ice connection state alone.
+ */
+public class NetworkMonitor {
+    private static final String TAG = "NetworkMonitor";
+
+    public enum NetworkType {
+        // wifi and ethernet
+        WIFI,
+        CELLULAR,
+        // cellular outside the home network
+        ROAMING,
+        UNKNOWN
+    }
+
+    public interface Listener {
+        void onNetworkChanged();
+    }
+
+    private final ConnectivityManager mConnectivityManager;
+    private final Listener mListener;
+    private ConnectivityManager.NetworkCallback mCallback;
+    // network most recently reported available, the one the call moves to
+    private volatile Network mCurrentNetwork;
+
+    public NetworkMonitor(@NonNull Context context, @NonNull Listener listener) {
+        mConnectivityManager = (ConnectivityManager) context.getApplicationContext()
+                .getSystemService(Context.CONNECTIVITY_SERVICE);
+        mListener = listener;
+    }
+
+    public synchronized void start() {
+        if (mCallback != null || Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) return;
+
+        mCallback = new ConnectivityManager.NetworkCallback() {
+            private Network mCurrent;
+
+            @Override
+            public void onAvailable(Network network) {
+                // registering reports the network already in use, that is not a change
+                boolean changed = mCurrent != null && !mCurrent.equals(network);
+                mCurrent = network;
+                mCurrentNetwork = network;
+                if (changed) {
+                    Log.d(TAG, "Network changed to " + network);
+                    mListener.onNetworkChanged();
+                }
+            }
+
+            @Override
+            public void onLost(Network network) {
+                Log.d(TAG, "Network lost " + network);
+            }
+        };
+        NetworkRequest request = new NetworkRequest.Builder()
+                .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                .build();
+        mConnectivityManager.registerNetworkCallback(request, mCallback);
+    }
+
+    /**
+     * Type of the network the device moved to last, or of the active network when no change
+     * has been seen
+     */
+    public NetworkType getNetworkType() {
+        Network network = mCurrentNetwork;
+        NetworkInfo info = network != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+                ? mConnectivityManager.getNetworkInfo(network)
+                : mConnectivityManager.getActiveNetworkInfo();
+        if (info == null) return NetworkType.UNKNOWN;
+
+        switch (info.getType()) {
+            case ConnectivityManager.TYPE_WIFI:
+            case ConnectivityManager.TYPE_ETHERNET:
+                return NetworkType.WIFI;
+            case ConnectivityManager.TYPE_MOBILE:
+                return info.isRoaming() ? NetworkType.ROAMING : NetworkType.CELLULAR;
+            default:
+                return NetworkType.UNKNOWN;
+        }
+    }
+
+    public synchronized void stop() {
+        if (mCallback != null) {
+            mConnectivityManager.unregisterNetworkCallback(mCallback);
+            mCallback = null;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.aar.app.webrtcbarebone.webrtc;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.webrtc.DefaultVideoDecoderFactory;
+import org.webrtc.DefaultVideoEncoderFactory;
+import org.webrtc.EglBase;
+import org.webrtc.PeerConnectionFactory;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Process wide owner of the {@link PeerConnectionFactory} and {@link EglBase}.
+ *
+ * Native library loading and factory construction run on a background thread as soon as
+ * {@link #prewarm(Context)} or {@link #acquire(Context)} is called, every user holds a reference
+ * through acquire/release and both objects are disposed when the last reference is released.
+ */
+public class PeerConnectionFactoryManager {
+    private static final String TAG = "PcFactoryManager";
+
+    private static final long FACTORY_TIMEOUT_MS = 10_000;
+
+    private static PeerConnectionFactoryManager sInstance;
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private boolean mNativeInitialized = false;
+    private int mRefCount = 0;
+    private EglBase mEglBase;
+    private SettableFuture<PeerConnectionFactory> mFactoryFuture;
+    // probed once per process next to the first factory, written before the factory future is set
+    private volatile VideoCodecPolicy mVideoCodecPolicy;
+
+    public static synchronized PeerConnectionFactoryManager getInstance() {
+        if (sInstance == null) {
+            sInstance = new PeerConnectionFactoryManager();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Start loading native libraries and building the factory in the background without
+     * taking a reference, typically called before the call screen is shown
+     */
+    public synchronized void prewarm(@NonNull Context context) {
+        if (mFactoryFuture != null) return;
+
+        Context applicationContext = context.getApplicationContext();
+        EglBase eglBase = getOrCreateEglBase();
+        SettableFuture<PeerConnectionFactory> future = new SettableFuture<>();
+        mFactoryFuture = future;
+
+        mExecutor.execute(() -> {
+            try {
+                if (!mNativeInitialized) {
+                    WebRtcPeerConnection.initialize(applicationContext);
+                    mNativeInitialized = true;
+                }
+                if (mVideoCodecPolicy == null) {
+                    mVideoCodecPolicy = VideoCodecPolicy.probe(eglBase.getEglBaseContext());
+                }
+                future.set(PeerConnectionFactory.builder()
+                        .setVideoDecoderFactory(new DefaultVideoDecoderFactory(eglBase.getEglBaseContext()))
+                        .setVideoEncoderFactory(new DefaultVideoEncoderFactory(eglBase.getEglBaseContext(), true, true))
+                        .createPeerConnectionFactory());
+                LiveObjects.onCreated(LiveObjects.Kind.FACTORY);
+                Log.d(TAG, "Peer connection factory ready");
+            } catch (RuntimeException e) {
+                Log.d(TAG, "Error creating peer connection factory: " + e);
+                future.setError(e);
+            }
+        });
+    }
+
+    public synchronized PeerConnectionFactoryManager acquire(@NonNull Context context) {
+        mRefCount++;
+        prewarm(context);
+        return this;
+    }
+
+    public void release() {
+        SettableFuture<PeerConnectionFactory> factoryFuture;
+        EglBase eglBase;
+        synchronized (this) {
+            if (mRefCount == 0) return;
+            if (--mRefCount > 0) return;
+
+            factoryFuture = mFactoryFuture;
+            eglBase = mEglBase;
+            mFactoryFuture = null;
+            mEglBase = null;
+        }
+
+        Log.d(TAG, "Last reference released, disposing factory and egl base");
+        mExecutor.execute(() -> {
+            try {
+                factoryFuture.get().dispose();
+                LiveObjects.onDisposed(LiveObjects.Kind.FACTORY);
+            } catch (ExecutionException | InterruptedException e) {
+                Log.d(TAG, "Factory was never created: " + e);
+            }
+            eglBase.release();
+            LiveObjects.onDisposed(LiveObjects.Kind.EGL_BASE);
+            Log.d(TAG, "Live native objects after release: " + LiveObjects.describe());
+        });
+    }
+
+    public synchronized EglBase getEglBase() {
+        return getOrCreateEglBase();
+    }
+
+    /**
+     * Blocks until the background construction has finished, which is usually already the case
+     * by the time a call is set up
+     */
+    public PeerConnectionFactory getFactory() throws WebRtcPeerConnection.WebRtcPeerConnectionError {
+        SettableFuture<PeerConnectionFactory> future;
+        synchronized (this) {
+            future = mFactoryFuture;
+        }
+        if (future == null) {
+            throw new WebRtcPeerConnection.WebRtcPeerConnectionError("Factory manager is not acquired");
+        }
+
+        try {
+            return future.get(FACTORY_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            throw new WebRtcPeerConnection.WebRtcPeerConnectionError(e);
+        }
+    }
+
+    /**
+     * Codec policy of the device, available once {@link #getFactory()} has returned
+     */
+    public VideoCodecPolicy getVideoCodecPolicy() {
+        return mVideoCodecPolicy;
+    }
+
+    private EglBase getOrCreateEglBase() {
+        if (mEglBase == null) {
+            mEglBase = EglBase.create();
+            LiveObjects.onCreated(LiveObjects.Kind.EGL_BASE);
+        }
+        return mEglBase;
+    }
+}
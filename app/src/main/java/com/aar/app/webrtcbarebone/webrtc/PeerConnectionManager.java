@@ -0,0 +1,262 @@
+package com.aar.app.webrtcbarebone.webrtc;
+
+import android.util.Log;
+
+import org.webrtc.DataChannel;
+import org.webrtc.IceCandidate;
+import org.webrtc.MediaStream;
+import org.webrtc.PeerConnection;
+import org.webrtc.PeerConnectionFactory;
+import org.webrtc.RtpReceiver;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Holds one {@link WebRtcPeerConnection} per remote peer id for mesh calls. All connections share
+ * the factory and the {@link LocalMedia}, so the camera and the audio/video sources exist once
+ * however many peers are connected.
+ *
+ * Remote ice candidates for a peer without a connection yet are kept per peer and handed over
+ * when its connection is created, after that the connection queues them itself until its remote
+ * description is set.
+ */
+public class PeerConnectionManager {
+    private static final String TAG = "PeerConnectionManager";
+
+    public interface ObserverFactory {
+        PeerConnection.Observer create(String peerId);
+    }
+
+    /**
+     * Called for every connection created, before it is used for negotiation
+     */
+    public interface ConnectionListener {
+        void onPeerConnectionCreated(String peerId, WebRtcPeerConnection peerConnection);
+    }
+
+    private final LocalMedia mLocalMedia;
+    private final PeerConnectionFactory mFactory;
+    private final List<PeerConnection.IceServer> mIceServers;
+    private final int mIceCandidatePoolSize;
+    private final ObserverFactory mObserverFactory;
+    private ConnectionListener mConnectionListener;
+
+    private final Map<String, WebRtcPeerConnection> mPeers = new LinkedHashMap<>();
+    private final Map<String, List<IceCandidate>> mEarlyIceCandidates = new HashMap<>();
+    // connection created ahead of time for the next peer, see prepare()
+    private WebRtcPeerConnection mPrepared;
+    private DeferredObserver mPreparedObserver;
+
+    public PeerConnectionManager(
+            @NonNull LocalMedia localMedia,
+            @NonNull PeerConnectionFactory factory,
+            @NonNull List<PeerConnection.IceServer> iceServers,
+            int iceCandidatePoolSize,
+            @NonNull ObserverFactory observerFactory) {
+        mLocalMedia = localMedia;
+        mFactory = factory;
+        mIceServers = new ArrayList<>(iceServers);
+        mIceCandidatePoolSize = iceCandidatePoolSize;
+        mObserverFactory = observerFactory;
+    }
+
+    public synchronized void setConnectionListener(@Nullable ConnectionListener listener) {
+        mConnectionListener = listener;
+    }
+
+    public LocalMedia getLocalMedia() {
+        return mLocalMedia;
+    }
+
+    /**
+     * Create a connection before the peer is known so it starts gathering into its candidate pool,
+     * the next {@link #getOrCreate(String)} for a new peer adopts it. Observer callbacks made before
+     * that are replayed to the peer's observer in order.
+     */
+    public synchronized void prepare() {
+        if (mPrepared != null) return;
+
+        mPreparedObserver = new DeferredObserver();
+        mPrepared = new WebRtcPeerConnection(mLocalMedia, mFactory, mPreparedObserver, mIceServers, mIceCandidatePoolSize);
+    }
+
+    @Nullable
+    public synchronized WebRtcPeerConnection get(String peerId) {
+        return mPeers.get(peerId);
+    }
+
+    public WebRtcPeerConnection getOrCreate(@NonNull String peerId) {
+        WebRtcPeerConnection peerConnection;
+        List<IceCandidate> earlyCandidates;
+        ConnectionListener listener;
+        synchronized (this) {
+            peerConnection = mPeers.get(peerId);
+            if (peerConnection != null) return peerConnection;
+
+            PeerConnection.Observer observer = mObserverFactory.create(peerId);
+            if (mPrepared != null) {
+                peerConnection = mPrepared;
+                mPreparedObserver.setDelegate(observer);
+                mPrepared = null;
+                mPreparedObserver = null;
+            } else {
+                peerConnection = new WebRtcPeerConnection(mLocalMedia, mFactory, observer, mIceServers, mIceCandidatePoolSize);
+            }
+            mPeers.put(peerId, peerConnection);
+            earlyCandidates = mEarlyIceCandidates.remove(peerId);
+            listener = mConnectionListener;
+        }
+
+        Log.d(TAG, "Created peer connection for " + peerId);
+        if (listener != null) {
+            listener.onPeerConnectionCreated(peerId, peerConnection);
+        }
+        if (earlyCandidates != null) {
+            for (IceCandidate iceCandidate : earlyCandidates) {
+                peerConnection.addIceCandidate(iceCandidate);
+            }
+        }
+        return peerConnection;
+    }
+
+    /**
+     * Route a remote candidate to the peer's connection, or keep it until the connection exists
+     */
+    public void addIceCandidate(@NonNull String peerId, @NonNull IceCandidate iceCandidate) {
+        WebRtcPeerConnection peerConnection;
+        synchronized (this) {
+            peerConnection = mPeers.get(peerId);
+            if (peerConnection == null) {
+                List<IceCandidate> candidates = mEarlyIceCandidates.get(peerId);
+                if (candidates == null) {
+                    candidates = new ArrayList<>();
+                    mEarlyIceCandidates.put(peerId, candidates);
+                }
+                candidates.add(iceCandidate);
+                return;
+            }
+        }
+        peerConnection.addIceCandidate(iceCandidate);
+    }
+
+    public synchronized List<String> getPeerIds() {
+        return new ArrayList<>(mPeers.keySet());
+    }
+
+    public synchronized int size() {
+        return mPeers.size();
+    }
+
+    public void remove(@NonNull String peerId) {
+        WebRtcPeerConnection peerConnection;
+        synchronized (this) {
+            peerConnection = mPeers.remove(peerId);
+            mEarlyIceCandidates.remove(peerId);
+        }
+        if (peerConnection != null) {
+            peerConnection.close();
+        }
+    }
+
+    public void closeAll() {
+        List<WebRtcPeerConnection> peerConnections;
+        synchronized (this) {
+            peerConnections = new ArrayList<>(mPeers.values());
+            if (mPrepared != null) peerConnections.add(mPrepared);
+            mPeers.clear();
+            mEarlyIceCandidates.clear();
+            mPrepared = null;
+            mPreparedObserver = null;
+        }
+        for (WebRtcPeerConnection peerConnection : peerConnections) {
+            peerConnection.close();
+        }
+    }
+
+    /**
+     * Observer of a prepared connection, buffers callbacks until the peer it belongs to is known
+     */
+    private static class DeferredObserver implements PeerConnection.Observer {
+
+        private final List<Runnable> mPending = new ArrayList<>();
+        private PeerConnection.Observer mDelegate;
+
+        synchronized void setDelegate(PeerConnection.Observer delegate) {
+            mDelegate = delegate;
+            for (Runnable call : mPending) {
+                call.run();
+            }
+            mPending.clear();
+        }
+
+        private synchronized void dispatch(Runnable call) {
+            if (mDelegate != null) {
+                call.run();
+            } else {
+                mPending.add(call);
+            }
+        }
+
+        @Override
+        public void onSignalingChange(PeerConnection.SignalingState signalingState) {
+            dispatch(() -> mDelegate.onSignalingChange(signalingState));
+        }
+
+        @Override
+        public void onIceConnectionChange(PeerConnection.IceConnectionState iceConnectionState) {
+            dispatch(() -> mDelegate.onIceConnectionChange(iceConnectionState));
+        }
+
+        @Override
+        public void onIceConnectionReceivingChange(boolean receiving) {
+            dispatch(() -> mDelegate.onIceConnectionReceivingChange(receiving));
+        }
+
+        @Override
+        public void onIceGatheringChange(PeerConnection.IceGatheringState iceGatheringState) {
+            dispatch(() -> mDelegate.onIceGatheringChange(iceGatheringState));
+        }
+
+        @Override
+        public void onIceCandidate(IceCandidate iceCandidate) {
+            dispatch(() -> mDelegate.onIceCandidate(iceCandidate));
+        }
+
+        @Override
+        public void onIceCandidatesRemoved(IceCandidate[] iceCandidates) {
+            dispatch(() -> mDelegate.onIceCandidatesRemoved(iceCandidates));
+        }
+
+        @Override
+        public void onAddStream(MediaStream mediaStream) {
+            dispatch(() -> mDelegate.onAddStream(mediaStream));
+        }
+
+        @Override
+        public void onRemoveStream(MediaStream mediaStream) {
+            dispatch(() -> mDelegate.onRemoveStream(mediaStream));
+        }
+
+        @Override
+        public void onDataChannel(DataChannel dataChannel) {
+            dispatch(() -> mDelegate.onDataChannel(dataChannel));
+        }
+
+        @Override
+        public void onRenegotiationNeeded() {
+            dispatch(() -> mDelegate.onRenegotiationNeeded());
+        }
+
+        @Override
+        public void onAddTrack(RtpReceiver rtpReceiver, MediaStream[] mediaStreams) {
+            dispatch(() -> mDelegate.onAddTrack(rtpReceiver, mediaStreams));
+        }
+    }
+}
@@ -0,0 +1,510 @@
+package com.aar.app.webrtcbarebone.webrtc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Editable session description for munging, without splitting and rebuilding the whole text.
+ *
+ * {@link #parse(String)} makes a single pass over the text that records where each line starts and
+ * ends and where each media section (m= line) begins, no line is copied. A line only becomes a
+ * string when it is read or replaced and {@link #toString()} copies the unchanged lines straight
+ * from the parsed text, so an unchanged description comes back as the very same string. Line
+ * endings are written as CRLF and empty lines are dropped.
+ *
+ * The lines before the first m= line are the {@link #getSession() session section}, each m= line
+ * starts a {@link Media} section with its payload types and their rtpmap and fmtp. Sections can
+ * change their lines but not be added or removed. Not thread safe.
+ */
+public class Sdp {
+
+    private static final String CRLF = "\r\n";
+    private static final String RTPMAP = "rtpmap";
+    private static final String FMTP = "fmtp";
+    private static final String RTCP_FB = "rtcp-fb";
+
+    private final String mText;
+    private int mLineCount = 0;
+    private int[] mStarts;
+    private int[] mEnds;
+    // replaced and added lines, null where the line is still the one in mText
+    private String[] mLines;
+    private int[] mMediaStarts = new int[4];
+    private int mMediaCount = 0;
+    // true while toString() can return mText as it is
+    private boolean mVerbatim;
+
+    private Sdp(String text, int capacity) {
+        mText = text;
+        mStarts = new int[capacity];
+        mEnds = new int[capacity];
+        mLines = new String[capacity];
+    }
+
+    public static Sdp parse(String text) {
+        // a little over the usual line length, so the arrays are not grown for typical descriptions
+        Sdp sdp = new Sdp(text, text.length() / 24 + 8);
+        boolean verbatim = text.endsWith(CRLF);
+        int length = text.length();
+        int start = 0;
+        while (start < length) {
+            int newline = text.indexOf('\n', start);
+            int next = newline < 0 ? length : newline + 1;
+            int end = newline < 0 ? length : newline;
+            if (end > start && text.charAt(end - 1) == '\r') {
+                end--;
+            } else {
+                verbatim = false;
+            }
+
+            if (end > start) {
+                sdp.insert(sdp.mLineCount, start, end, null);
+            } else {
+                verbatim = false;
+            }
+            start = next;
+        }
+        sdp.mVerbatim = verbatim;
+        return sdp;
+    }
+
+    public Section getSession() {
+        return new Section(-1);
+    }
+
+    public int getMediaCount() {
+        return mMediaCount;
+    }
+
+    public Media getMedia(int index) {
+        if (index < 0 || index >= mMediaCount) {
+            throw new IndexOutOfBoundsException("Media " + index + " of " + mMediaCount);
+        }
+        return new Media(index);
+    }
+
+    /**
+     * @param type media type of the m= line, e.g. audio, video or application
+     * @return first section of that type, null when there is none
+     */
+    public Media findMedia(String type) {
+        for (int i = 0; i < mMediaCount; i++) {
+            int line = mMediaStarts[i];
+            int typeEnd = 2 + type.length();
+            if (regionMatches(line, 2, type) && lineLength(line) > typeEnd && charAt(line, typeEnd) == ' ') {
+                return new Media(i);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        if (mVerbatim) return mText;
+
+        StringBuilder builder = new StringBuilder(mText.length() + 256);
+        for (int i = 0; i < mLineCount; i++) {
+            String line = mLines[i];
+            if (line != null) {
+                builder.append(line);
+            } else {
+                builder.append(mText, mStarts[i], mEnds[i]);
+            }
+            builder.append(CRLF);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Lines of one section, the session section or a media section. Attributes are addressed by
+     * name, the part of an a= line up to its first colon.
+     */
+    public class Section {
+        // -1 for the session section
+        final int mIndex;
+
+        Section(int index) {
+            mIndex = index;
+        }
+
+        int start() {
+            return mIndex < 0 ? 0 : mMediaStarts[mIndex];
+        }
+
+        int end() {
+            int next = mIndex + 1;
+            return next < mMediaCount ? mMediaStarts[next] : mLineCount;
+        }
+
+        public List<String> getLines() {
+            int end = end();
+            List<String> lines = new ArrayList<>(end - start());
+            for (int i = start(); i < end; i++) lines.add(getLine(i));
+            return lines;
+        }
+
+        /**
+         * @return value of the first a=name line, empty for a property attribute (a=rtcp-mux),
+         * null when the section has none
+         */
+        public String getAttribute(String name) {
+            String prefix = "a=" + name;
+            int end = end();
+            for (int i = start(); i < end; i++) {
+                if (isAttribute(i, prefix)) return valueOf(i, prefix);
+            }
+            return null;
+        }
+
+        public List<String> getAttributes(String name) {
+            String prefix = "a=" + name;
+            List<String> values = new ArrayList<>();
+            int end = end();
+            for (int i = start(); i < end; i++) {
+                if (isAttribute(i, prefix)) values.add(valueOf(i, prefix));
+            }
+            return values;
+        }
+
+        public boolean hasAttribute(String name) {
+            return getAttribute(name) != null;
+        }
+
+        /**
+         * Append an a= line at the end of the section
+         *
+         * @param value null for a property attribute
+         */
+        public void addAttribute(String name, String value) {
+            insertLine(end(), attributeLine(name, value));
+        }
+
+        /**
+         * Replace the first a=name line, or add one when there is none
+         */
+        public void setAttribute(String name, String value) {
+            String prefix = "a=" + name;
+            int end = end();
+            for (int i = start(); i < end; i++) {
+                if (isAttribute(i, prefix)) {
+                    setLine(i, attributeLine(name, value));
+                    return;
+                }
+            }
+            insertLine(end, attributeLine(name, value));
+        }
+
+        /**
+         * @return number of lines removed
+         */
+        public int removeAttributes(String name) {
+            String prefix = "a=" + name;
+            int removed = 0;
+            for (int i = end() - 1; i >= start(); i--) {
+                if (isAttribute(i, prefix)) {
+                    removeLine(i);
+                    removed++;
+                }
+            }
+            return removed;
+        }
+
+        /**
+         * Index of the first a=name line of the payload type (a=rtpmap:96 ...) in this section, -1
+         * when there is none
+         */
+        int findPayloadAttribute(String name, String payloadType) {
+            String prefix = "a=" + name + ":" + payloadType;
+            int end = end();
+            for (int i = start(); i < end; i++) {
+                if (startsWith(i, prefix) && (lineLength(i) == prefix.length() || charAt(i, prefix.length()) == ' ')) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * A media section, its first line is the m= line:
+     * <pre>
+     *     m=&lt;type&gt; &lt;port&gt; &lt;proto&gt; &lt;payload type&gt;...
+     * </pre>
+     */
+    public class Media extends Section {
+
+        Media(int index) {
+            super(index);
+        }
+
+        public String getType() {
+            String mLine = getLine(start());
+            int space = mLine.indexOf(' ');
+            return mLine.substring(2, space < 0 ? mLine.length() : space);
+        }
+
+        /**
+         * Payload types of the m= line in their order of preference
+         */
+        public List<String> getPayloadTypes() {
+            String[] parts = getLine(start()).split(" ");
+            if (parts.length <= 3) return new ArrayList<>();
+            return new ArrayList<>(Arrays.asList(parts).subList(3, parts.length));
+        }
+
+        public void setPayloadTypes(List<String> payloadTypes) {
+            String mLine = getLine(start());
+            int protoEnd = nthSpace(mLine, 3);
+            StringBuilder builder = new StringBuilder(protoEnd + payloadTypes.size() * 4);
+            builder.append(mLine, 0, protoEnd);
+            for (String payloadType : payloadTypes) builder.append(' ').append(payloadType);
+            setLine(start(), builder.toString());
+        }
+
+        /**
+         * Remove the payload type from the m= line together with its rtpmap, fmtp and rtcp-fb lines
+         */
+        public void removePayloadType(String payloadType) {
+            List<String> payloadTypes = getPayloadTypes();
+            payloadTypes.remove(payloadType);
+            setPayloadTypes(payloadTypes);
+
+            for (String name : new String[] {RTPMAP, FMTP, RTCP_FB}) {
+                int line;
+                while ((line = findPayloadAttribute(name, payloadType)) >= 0) removeLine(line);
+            }
+        }
+
+        /**
+         * Encoding name of each a=rtpmap line by payload type, as written (VP8, rtx, opus), in the
+         * order of the lines
+         */
+        public Map<String, String> getCodecs() {
+            Map<String, String> codecs = new LinkedHashMap<>();
+            String prefix = "a=" + RTPMAP;
+            int end = end();
+            for (int i = start(); i < end; i++) {
+                if (!isAttribute(i, prefix)) continue;
+
+                String value = valueOf(i, prefix);
+                int space = value.indexOf(' ');
+                if (space < 0) continue;
+                int slash = value.indexOf('/', space);
+                codecs.put(value.substring(0, space), value.substring(space + 1, slash < 0 ? value.length() : slash));
+            }
+            return codecs;
+        }
+
+        /**
+         * Payload types whose rtpmap has the given encoding name, ignoring case, e.g. every H264 profile
+         */
+        public List<String> findPayloadTypes(String codec) {
+            List<String> payloadTypes = new ArrayList<>();
+            for (Map.Entry<String, String> entry : getCodecs().entrySet()) {
+                if (entry.getValue().equalsIgnoreCase(codec)) payloadTypes.add(entry.getKey());
+            }
+            return payloadTypes;
+        }
+
+        /**
+         * @return first payload type of the codec, null when the section does not have it
+         */
+        public String findPayloadType(String codec) {
+            List<String> payloadTypes = findPayloadTypes(codec);
+            return payloadTypes.isEmpty() ? null : payloadTypes.get(0);
+        }
+
+        /**
+         * Parameters of the a=fmtp line of the payload type in their order, a parameter without
+         * '=' (telephone-event 0-15) maps to null. Empty when there is no fmtp line.
+         */
+        public Map<String, String> getFmtp(String payloadType) {
+            Map<String, String> parameters = new LinkedHashMap<>();
+            int line = findPayloadAttribute(FMTP, payloadType);
+            if (line < 0) return parameters;
+
+            String value = getLine(line);
+            int start = "a=fmtp:".length() + payloadType.length() + 1;
+            while (start < value.length()) {
+                int semicolon = value.indexOf(';', start);
+                int end = semicolon < 0 ? value.length() : semicolon;
+                int equals = value.indexOf('=', start);
+                if (equals >= 0 && equals < end) {
+                    parameters.put(value.substring(start, equals).trim(), value.substring(equals + 1, end).trim());
+                } else if (end > start) {
+                    String key = value.substring(start, end).trim();
+                    if (!key.isEmpty()) parameters.put(key, null);
+                }
+                start = end + 1;
+            }
+            return parameters;
+        }
+
+        /**
+         * Replace the a=fmtp line of the payload type, a new one goes right after the rtpmap of the
+         * payload type. Empty parameters remove the line.
+         */
+        public void setFmtp(String payloadType, Map<String, String> parameters) {
+            int line = findPayloadAttribute(FMTP, payloadType);
+            if (parameters.isEmpty()) {
+                if (line >= 0) removeLine(line);
+                return;
+            }
+
+            StringBuilder builder = new StringBuilder("a=fmtp:").append(payloadType).append(' ');
+            boolean first = true;
+            for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+                if (!first) builder.append(';');
+                builder.append(parameter.getKey());
+                if (parameter.getValue() != null) builder.append('=').append(parameter.getValue());
+                first = false;
+            }
+
+            if (line >= 0) {
+                setLine(line, builder.toString());
+            } else {
+                int rtpmap = findPayloadAttribute(RTPMAP, payloadType);
+                insertLine(rtpmap < 0 ? end() : rtpmap + 1, builder.toString());
+            }
+        }
+    }
+
+    String getLine(int index) {
+        String line = mLines[index];
+        return line != null ? line : mText.substring(mStarts[index], mEnds[index]);
+    }
+
+    /**
+     * Replace a line, a media line can only be replaced by a media line and any other line not
+     * by one
+     */
+    void setLine(int index, String line) {
+        checkIndex(index, mLineCount);
+        if (startsWith(index, "m=") != line.startsWith("m=")) {
+            throw new IllegalArgumentException("Cannot replace " + getLine(index) + " with " + line);
+        }
+        mLines[index] = line;
+        mVerbatim = false;
+    }
+
+    /**
+     * Insert before the line at index, a line inserted right before an m= line ends the previous section
+     */
+    void insertLine(int index, String line) {
+        checkIndex(index, mLineCount + 1);
+        if (line.startsWith("m=")) {
+            throw new IllegalArgumentException("Cannot add media section " + line);
+        }
+        insert(index, 0, 0, line);
+        mVerbatim = false;
+    }
+
+    void removeLine(int index) {
+        checkIndex(index, mLineCount);
+        if (startsWith(index, "m=")) {
+            throw new IllegalArgumentException("Cannot remove media section " + getLine(index));
+        }
+
+        int moved = mLineCount - index - 1;
+        System.arraycopy(mStarts, index + 1, mStarts, index, moved);
+        System.arraycopy(mEnds, index + 1, mEnds, index, moved);
+        System.arraycopy(mLines, index + 1, mLines, index, moved);
+        mLineCount--;
+        mLines[mLineCount] = null;
+        for (int i = 0; i < mMediaCount; i++) {
+            if (mMediaStarts[i] > index) mMediaStarts[i]--;
+        }
+        mVerbatim = false;
+    }
+
+    /**
+     * Insert a line of mText (start, end) or a string line before index
+     */
+    private void insert(int index, int start, int end, String line) {
+        if (mLineCount == mStarts.length) {
+            int capacity = mStarts.length * 2;
+            mStarts = Arrays.copyOf(mStarts, capacity);
+            mEnds = Arrays.copyOf(mEnds, capacity);
+            mLines = Arrays.copyOf(mLines, capacity);
+        }
+
+        int moved = mLineCount - index;
+        if (moved > 0) {
+            System.arraycopy(mStarts, index, mStarts, index + 1, moved);
+            System.arraycopy(mEnds, index, mEnds, index + 1, moved);
+            System.arraycopy(mLines, index, mLines, index + 1, moved);
+        }
+        mStarts[index] = start;
+        mEnds[index] = end;
+        mLines[index] = line;
+        mLineCount++;
+
+        for (int i = 0; i < mMediaCount; i++) {
+            if (mMediaStarts[i] >= index) mMediaStarts[i]++;
+        }
+        if (line == null && mText.startsWith("m=", start)) {
+            // only parse() inserts text lines, always at the end
+            if (mMediaCount == mMediaStarts.length) mMediaStarts = Arrays.copyOf(mMediaStarts, mMediaCount * 2);
+            mMediaStarts[mMediaCount++] = index;
+        }
+    }
+
+    private boolean isAttribute(int index, String prefix) {
+        if (!startsWith(index, prefix)) return false;
+        return lineLength(index) == prefix.length() || charAt(index, prefix.length()) == ':';
+    }
+
+    /**
+     * Value of an attribute line that starts with prefix, without copying the line first
+     */
+    private String valueOf(int index, String prefix) {
+        int from = prefix.length() + 1;
+        if (lineLength(index) <= prefix.length()) return "";
+
+        String line = mLines[index];
+        return line != null ? line.substring(from) : mText.substring(mStarts[index] + from, mEnds[index]);
+    }
+
+    private boolean startsWith(int index, String prefix) {
+        return regionMatches(index, 0, prefix);
+    }
+
+    private boolean regionMatches(int index, int offset, String part) {
+        if (offset + part.length() > lineLength(index)) return false;
+
+        String line = mLines[index];
+        return line != null ? line.startsWith(part, offset) : mText.startsWith(part, mStarts[index] + offset);
+    }
+
+    private int lineLength(int index) {
+        String line = mLines[index];
+        return line != null ? line.length() : mEnds[index] - mStarts[index];
+    }
+
+    private char charAt(int index, int offset) {
+        String line = mLines[index];
+        return line != null ? line.charAt(offset) : mText.charAt(mStarts[index] + offset);
+    }
+
+    private static String attributeLine(String name, String value) {
+        return value == null ? "a=" + name : "a=" + name + ":" + value;
+    }
+
+    private static int nthSpace(String line, int n) {
+        int index = -1;
+        for (int i = 0; i < n; i++) {
+            index = line.indexOf(' ', index + 1);
+            if (index < 0) return line.length();
+        }
+        return index;
+    }
+
+    private static void checkIndex(int index, int size) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Line " + index + " of " + size);
+        }
+    }
+}
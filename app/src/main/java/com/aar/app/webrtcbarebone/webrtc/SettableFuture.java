@@ -1,64 +1,129 @@
 package com.aar.app.webrtcbarebone.webrtc;
 
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Lock-free future, the outcome is published with a single compare-and-set so set/setError/cancel
+ * race safely against each other. Waiters are released on any completion including cancellation.
+ */
 public class SettableFuture<T> implements Future<T> {
 
-    private boolean mCancelled;
-    private boolean mCompleted;
-    private Exception mError;
-    private T mResult;
+    private static final ListenerNode DONE = new ListenerNode(null, null);
+
+    private final AtomicReference<Outcome<T>> mOutcome = new AtomicReference<>();
+    private final AtomicReference<ListenerNode> mListeners = new AtomicReference<>();
+    private final CountDownLatch mDoneLatch = new CountDownLatch(1);
+
+    public interface Listener<T> {
+        /**
+         * Called exactly once on the completing thread, or immediately on the registering thread
+         * when the future is already done. error is a {@link CancellationException} if cancelled.
+         */
+        void onComplete(T result, Exception error);
+    }
 
     @Override
     public boolean cancel(boolean mayInterruptIfRunning) {
-        if (!mCompleted && !mCancelled) {
-            mCancelled = true;
-            return true;
-        }
-        return false;
+        return complete(new Outcome<T>(null, new CancellationException(), true));
     }
 
     @Override
     public boolean isCancelled() {
-        return mCancelled;
+        Outcome<T> outcome = mOutcome.get();
+        return outcome != null && outcome.cancelled;
     }
 
     @Override
     public boolean isDone() {
-        return mCompleted;
+        return mOutcome.get() != null;
     }
 
     @Override
-    public synchronized T get() throws ExecutionException, InterruptedException {
-        while (!mCompleted) wait();
-
-        if (mError != null) throw new ExecutionException(mError);
-        return mResult;
+    public T get() throws ExecutionException, InterruptedException {
+        mDoneLatch.await();
+        return report(mOutcome.get());
     }
 
     @Override
-    public synchronized T get(long timeout, TimeUnit unit)
+    public T get(long timeout, TimeUnit unit)
             throws ExecutionException, InterruptedException, TimeoutException {
-        // ToDo implement get with timeout
-        return get();
+        if (!mDoneLatch.await(timeout, unit)) {
+            throw new TimeoutException("Future not completed after " + timeout + " " + unit);
+        }
+        return report(mOutcome.get());
+    }
+
+    public boolean set(T result) {
+        return complete(new Outcome<>(result, null, false));
+    }
+
+    public boolean setError(Exception error) {
+        return complete(new Outcome<T>(null, error, false));
+    }
+
+    @SuppressWarnings("unchecked")
+    public void addListener(Listener<T> listener) {
+        ListenerNode head;
+        do {
+            head = mListeners.get();
+            if (head == DONE) {
+                Outcome<T> outcome = mOutcome.get();
+                listener.onComplete(outcome.result, outcome.error);
+                return;
+            }
+        } while (!mListeners.compareAndSet(head, new ListenerNode(listener, head)));
     }
 
-    public synchronized void set(T result) {
-        if (mCompleted || mCancelled) return;
+    @SuppressWarnings("unchecked")
+    private boolean complete(Outcome<T> outcome) {
+        if (!mOutcome.compareAndSet(null, outcome)) return false;
+
+        mDoneLatch.countDown();
+
+        // listeners were pushed onto a stack, reverse it so they run in registration order
+        ListenerNode node = mListeners.getAndSet(DONE);
+        ListenerNode reversed = null;
+        while (node != null) {
+            reversed = new ListenerNode(node.listener, reversed);
+            node = node.next;
+        }
+        for (; reversed != null; reversed = reversed.next) {
+            ((Listener<T>) reversed.listener).onComplete(outcome.result, outcome.error);
+        }
+        return true;
+    }
 
-        mResult = result;
-        mCompleted = true;
-        notifyAll();
+    private T report(Outcome<T> outcome) throws ExecutionException {
+        if (outcome.cancelled) throw (CancellationException) outcome.error;
+        if (outcome.error != null) throw new ExecutionException(outcome.error);
+        return outcome.result;
     }
 
-    public synchronized void setError(Exception error) {
-        if (mCompleted || mCancelled) return;
+    private static class Outcome<T> {
+        final T result;
+        final Exception error;
+        final boolean cancelled;
 
-        mError = error;
-        mCompleted = true;
-        notifyAll();
+        Outcome(T result, Exception error, boolean cancelled) {
+            this.result = result;
+            this.error = error;
+            this.cancelled = cancelled;
+        }
+    }
+
+    private static class ListenerNode {
+        final Listener<?> listener;
+        final ListenerNode next;
+
+        ListenerNode(Listener<?> listener, ListenerNode next) {
+            this.listener = listener;
+            this.next = next;
+        }
     }
 }
@@ -0,0 +1,191 @@
+package com.aar.app.webrtcbarebone.webrtc;
+
+import org.webrtc.SessionDescription;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Simulcast send configuration, the local video is encoded in 2 or 3 spatial layers so a forwarding
+ * server can pick one per receiver without transcoding.
+ *
+ * The layers are declared with an ssrc-group:SIM in the local description (plan b has no other way
+ * to add encodings to a sender), libwebrtc then encodes them at full, 1/2 and 1/4 of the capture
+ * resolution. Once the description is applied {@link WebRtcPeerConnection} sets the per layer bitrate
+ * caps through the rtp sender encodings. Layers are ordered lowest resolution first, same as the encodings.
+ *
+ * libwebrtc drops layers the capture resolution is too small for (e.g. 640x360 gets 2) and
+ * only vp8 has a simulcast capable encoder in this version.
+ */
+public class Simulcast {
+
+    public static class Layer {
+        public final int maxBitrateBps;
+        public final boolean active;
+
+        public Layer(int maxBitrateBps) {
+            this(maxBitrateBps, true);
+        }
+
+        public Layer(int maxBitrateBps, boolean active) {
+            this.maxBitrateBps = maxBitrateBps;
+            this.active = active;
+        }
+    }
+
+    /**
+     * quarter, half and full resolution of a 720p capture
+     */
+    public static final Simulcast DEFAULT = new Simulcast(
+            new Layer(150_000),
+            new Layer(500_000),
+            new Layer(1_500_000));
+
+    private final Layer[] mLayers;
+
+    /**
+     * @param layers lowest resolution first
+     */
+    public Simulcast(@NonNull Layer... layers) {
+        if (layers.length < 2 || layers.length > 3) {
+            throw new IllegalArgumentException("Simulcast needs 2 or 3 layers, got " + layers.length);
+        }
+        mLayers = layers.clone();
+    }
+
+    public int getLayerCount() {
+        return mLayers.length;
+    }
+
+    public Layer getLayer(int index) {
+        return mLayers[index];
+    }
+
+    /**
+     * Local description with the video ssrcs for every layer added
+     *
+     * @param current local description applied before, a re-offer or re-answer keeps its layer ssrcs
+     *                so the receivers and the forwarding server don't see new streams
+     */
+    public SessionDescription apply(@NonNull SessionDescription sdp, @Nullable SessionDescription current) {
+        return new SessionDescription(sdp.type, addLayerSsrcs(sdp.description, mLayers.length, new Random(),
+                current != null ? current.description : null));
+    }
+
+    static String addLayerSsrcs(String sdp, int layerCount, Random random) {
+        return addLayerSsrcs(sdp, layerCount, random, null);
+    }
+
+    /**
+     * Add layerCount - 1 ssrcs next to the first one of the video section and group them with
+     * ssrc-group:SIM, rtx ssrcs are added with their own FID group when the section uses rtx.
+     * Sections that already have a SIM group are left as they are. The layer and rtx ssrcs of the
+     * current description are reused when its SIM group starts with the same primary ssrc, libwebrtc
+     * keeps the primary one of a sender across offers.
+     */
+    static String addLayerSsrcs(String sdp, int layerCount, Random random, String current) {
+        Sdp parsed = Sdp.parse(sdp);
+        Sdp.Media video = parsed.findMedia("video");
+        if (video == null) return sdp;
+
+        String primary = null;
+        String rtx = null;
+        for (String group : video.getAttributes("ssrc-group")) {
+            if (group.startsWith("SIM")) return sdp;
+
+            String[] ssrcs = group.split(" ");
+            if (rtx == null && ssrcs.length == 3 && ssrcs[0].equals("FID")) {
+                primary = ssrcs[1];
+                rtx = ssrcs[2];
+            }
+        }
+
+        List<String> ssrcAttributes = video.getAttributes("ssrc");
+        Set<String> usedSsrcs = new HashSet<>();
+        for (String attribute : ssrcAttributes) {
+            String ssrc = ssrcOf(attribute);
+            usedSsrcs.add(ssrc);
+            if (primary == null) primary = ssrc;
+        }
+        if (primary == null) return sdp;
+
+        List<String> currentLayers = new ArrayList<>();
+        Map<String, String> currentRtx = new HashMap<>();
+        if (current != null) readLayerSsrcs(current, primary, currentLayers, currentRtx);
+
+        List<String> layerSsrcs = new ArrayList<>();
+        List<String> rtxSsrcs = new ArrayList<>();
+        layerSsrcs.add(primary);
+        for (int i = 1; i < layerCount; i++) {
+            String layer = i < currentLayers.size() ? currentLayers.get(i) : null;
+            layer = reuseOrNewSsrc(layer, random, usedSsrcs);
+            layerSsrcs.add(layer);
+            if (rtx != null) rtxSsrcs.add(reuseOrNewSsrc(currentRtx.get(layer), random, usedSsrcs));
+        }
+
+        StringBuilder group = new StringBuilder("SIM");
+        for (String ssrc : layerSsrcs) group.append(' ').append(ssrc);
+        video.addAttribute("ssrc-group", group.toString());
+        for (int i = 0; i < rtxSsrcs.size(); i++) {
+            video.addAttribute("ssrc-group", "FID " + layerSsrcs.get(i + 1) + " " + rtxSsrcs.get(i));
+        }
+        for (int i = 1; i < layerSsrcs.size(); i++) {
+            copySsrcAttributes(video, ssrcAttributes, primary, layerSsrcs.get(i));
+            if (rtx != null) copySsrcAttributes(video, ssrcAttributes, rtx, rtxSsrcs.get(i - 1));
+        }
+        return parsed.toString();
+    }
+
+    /**
+     * Layer ssrcs of the SIM group starting with primary, primary first, and the rtx ssrc of each
+     * layer from its FID group
+     */
+    private static void readLayerSsrcs(String sdp, String primary, List<String> layers, Map<String, String> rtx) {
+        Sdp.Media video = Sdp.parse(sdp).findMedia("video");
+        if (video == null) return;
+
+        for (String group : video.getAttributes("ssrc-group")) {
+            String[] ssrcs = group.split(" ");
+            if (ssrcs[0].equals("SIM") && ssrcs.length > 1 && ssrcs[1].equals(primary) && layers.isEmpty()) {
+                layers.addAll(Arrays.asList(ssrcs).subList(1, ssrcs.length));
+            } else if (ssrcs[0].equals("FID") && ssrcs.length == 3) {
+                rtx.put(ssrcs[1], ssrcs[2]);
+            }
+        }
+    }
+
+    private static void copySsrcAttributes(Sdp.Media media, List<String> ssrcAttributes, String from, String to) {
+        String prefix = from + " ";
+        for (String attribute : ssrcAttributes) {
+            if (attribute.startsWith(prefix)) {
+                media.addAttribute("ssrc", to + " " + attribute.substring(prefix.length()));
+            }
+        }
+    }
+
+    private static String ssrcOf(String ssrcAttribute) {
+        int space = ssrcAttribute.indexOf(' ');
+        return space < 0 ? ssrcAttribute : ssrcAttribute.substring(0, space);
+    }
+
+    private static String reuseOrNewSsrc(String ssrc, Random random, Set<String> used) {
+        return ssrc != null && used.add(ssrc) ? ssrc : newSsrc(random, used);
+    }
+
+    private static String newSsrc(Random random, Set<String> used) {
+        String ssrc;
+        do {
+            ssrc = String.valueOf(random.nextInt(Integer.MAX_VALUE - 1) + 1);
+        } while (!used.add(ssrc));
+        return ssrc;
+    }
+}
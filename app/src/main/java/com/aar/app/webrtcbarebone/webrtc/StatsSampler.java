@@ -0,0 +1,321 @@
+package com.aar.app.webrtcbarebone.webrtc;
+
+import org.webrtc.PeerConnection;
+import org.webrtc.StatsReport;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Periodically polls {@link PeerConnection#getStats} and flattens the values of interest into
+ * fixed size ring buffers of primitives, one per {@link Metric}. Nothing is allocated per sample
+ * apart from what the native stats call itself produces.
+ *
+ * Only one connection is polled. In a mesh call the values describe the link to that peer alone,
+ * bandwidth and loss towards the others are not seen.
+ *
+ * The sampler thread only issues the {@link PeerConnection#getStats} calls, the reports are recorded
+ * and listeners are notified on libwebrtc's signaling thread, which delivers the legacy stats
+ * callback. Listeners must return quickly and post anything touching call state or the camera to
+ * the thread owning it, e.g. the {@link WebRtcThread}.
+ */
+public class StatsSampler {
+
+    public static final long MISSING = -1;
+
+    public enum Metric {
+        RTT_MS,
+        JITTER_MS,
+        PACKETS_RECEIVED,
+        PACKETS_LOST,
+        BYTES_SENT,
+        BYTES_RECEIVED,
+        FRAME_RATE_INPUT,
+        FRAME_RATE_SENT,
+        FRAME_RATE_RECEIVED,
+        AVAILABLE_SEND_BPS,
+        ENCODE_USAGE_PERCENT,
+        CPU_LIMITED
+    }
+
+    private static final Metric[] METRICS = Metric.values();
+    private static final long RELEASE_TIMEOUT_MS = 1_000;
+
+    public interface Listener {
+        /**
+         * Called on libwebrtc's signaling thread after a sample has been recorded
+         */
+        void onSample(StatsSampler sampler);
+    }
+
+    private final int mCapacity;
+    private final long[] mTimestampsMs;
+    private final long[][] mValues;
+    private final long[] mCurrent = new long[METRICS.length];
+    private final long[] mScratch;
+    // codec of the outbound video report of the sample being read and of the latest sample
+    private String mCurrentSendVideoCodec;
+    private String mSendVideoCodec;
+    private int mHead = 0;
+    private int mSize = 0;
+
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService mExecutor = Executors.newSingleThreadScheduledExecutor();
+    private ScheduledFuture<?> mPollTask;
+
+    /**
+     * @param capacity number of samples kept per metric, older samples are overwritten
+     */
+    public StatsSampler(int capacity) {
+        mCapacity = capacity;
+        mTimestampsMs = new long[capacity];
+        mValues = new long[METRICS.length][capacity];
+        mScratch = new long[capacity];
+    }
+
+    /**
+     * @param peerConnection the one connection sampled until {@link #stop()}
+     */
+    public synchronized void start(@NonNull PeerConnection peerConnection, long intervalMs) {
+        if (mPollTask != null) return;
+
+        mPollTask = mExecutor.scheduleWithFixedDelay(
+                () -> peerConnection.getStats(this::onStatsReports, null),
+                0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (mPollTask != null) {
+            mPollTask.cancel(false);
+            mPollTask = null;
+        }
+    }
+
+    /**
+     * Stop polling and wait for a getStats call in progress, so the peer connection can be disposed
+     * right after. A report already requested may still be delivered, it reaches no listener.
+     */
+    public void release() {
+        stop();
+        mExecutor.shutdown();
+        mListeners.clear();
+        try {
+            mExecutor.awaitTermination(RELEASE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void addListener(@NonNull Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(@NonNull Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    public synchronized int getSampleCount() {
+        return mSize;
+    }
+
+    /**
+     * @return googCodecName of the outbound video in the latest sample (VP8, H264), null when
+     * nothing is sending video
+     */
+    public synchronized String getSendVideoCodec() {
+        return mSendVideoCodec;
+    }
+
+    /**
+     * @return latest recorded value or {@link #MISSING}
+     */
+    public synchronized long getLatest(Metric metric) {
+        return get(metric, 0);
+    }
+
+    /**
+     * @param age 0 for the latest sample, 1 for the one before and so on
+     * @return recorded value or {@link #MISSING}
+     */
+    public synchronized long get(Metric metric, int age) {
+        if (age >= mSize) return MISSING;
+        return mValues[metric.ordinal()][index(age)];
+    }
+
+    /**
+     * Per second rate of a cumulative counter (bytes, packets) between the two latest samples,
+     * e.g. BYTES_SENT gives bytes/s
+     */
+    public synchronized double getRatePerSecond(Metric metric) {
+        if (mSize < 2) return 0;
+
+        long[] values = mValues[metric.ordinal()];
+        long latest = values[index(0)];
+        long previous = values[index(1)];
+        long elapsedMs = mTimestampsMs[index(0)] - mTimestampsMs[index(1)];
+        if (latest == MISSING || previous == MISSING || elapsedMs <= 0 || latest < previous) return 0;
+        return (latest - previous) * 1000.0 / elapsedMs;
+    }
+
+    /**
+     * Fraction of packets lost between the two latest samples
+     */
+    public synchronized double getPacketLossRatio() {
+        double lost = getRatePerSecond(Metric.PACKETS_LOST);
+        double received = getRatePerSecond(Metric.PACKETS_RECEIVED);
+        return lost + received > 0 ? lost / (lost + received) : 0;
+    }
+
+    /**
+     * Percentile over the recorded history ignoring missing values
+     *
+     * @param percentile 0..100
+     */
+    public synchronized long getPercentile(Metric metric, double percentile) {
+        long[] values = mValues[metric.ordinal()];
+        int count = 0;
+        for (int age = 0; age < mSize; age++) {
+            long value = values[index(age)];
+            if (value != MISSING) mScratch[count++] = value;
+        }
+        if (count == 0) return MISSING;
+
+        Arrays.sort(mScratch, 0, count);
+        int rank = (int) Math.ceil(percentile / 100.0 * count) - 1;
+        return mScratch[Math.max(0, Math.min(count - 1, rank))];
+    }
+
+    private int index(int age) {
+        return (mHead - 1 - age + mCapacity) % mCapacity;
+    }
+
+    private void onStatsReports(StatsReport[] reports) {
+        record(reports, System.currentTimeMillis());
+
+        for (Listener listener : mListeners) {
+            listener.onSample(this);
+        }
+    }
+
+    synchronized void record(StatsReport[] reports, long timestampMs) {
+        Arrays.fill(mCurrent, MISSING);
+        mCurrentSendVideoCodec = null;
+        for (StatsReport report : reports) {
+            if ("VideoBwe".equals(report.type)) {
+                readVideoBwe(report);
+            } else if ("ssrc".equals(report.type)) {
+                readSsrc(report);
+            }
+        }
+
+        mTimestampsMs[mHead] = timestampMs;
+        for (int i = 0; i < METRICS.length; i++) {
+            mValues[i][mHead] = mCurrent[i];
+        }
+        mSendVideoCodec = mCurrentSendVideoCodec;
+        mHead = (mHead + 1) % mCapacity;
+        mSize = Math.min(mSize + 1, mCapacity);
+    }
+
+    private void readVideoBwe(StatsReport report) {
+        for (StatsReport.Value value : report.values) {
+            if ("googAvailableSendBandwidth".equals(value.name)) {
+                put(Metric.AVAILABLE_SEND_BPS, parseLong(value.value));
+            }
+        }
+    }
+
+    private void readSsrc(StatsReport report) {
+        String codecName = null;
+        boolean video = false;
+        for (StatsReport.Value value : report.values) {
+            switch (value.name) {
+                case "googCodecName":
+                    codecName = value.value;
+                    break;
+                case "mediaType":
+                    video = "video".equals(value.value);
+                    break;
+                case "googRtt":
+                    max(Metric.RTT_MS, parseLong(value.value));
+                    break;
+                case "googJitterReceived":
+                    max(Metric.JITTER_MS, parseLong(value.value));
+                    break;
+                case "packetsReceived":
+                    add(Metric.PACKETS_RECEIVED, parseLong(value.value));
+                    break;
+                case "packetsLost":
+                    add(Metric.PACKETS_LOST, parseLong(value.value));
+                    break;
+                case "bytesSent":
+                    add(Metric.BYTES_SENT, parseLong(value.value));
+                    break;
+                case "bytesReceived":
+                    add(Metric.BYTES_RECEIVED, parseLong(value.value));
+                    break;
+                case "googFrameRateInput":
+                    put(Metric.FRAME_RATE_INPUT, parseLong(value.value));
+                    break;
+                case "googFrameRateSent":
+                    put(Metric.FRAME_RATE_SENT, parseLong(value.value));
+                    break;
+                case "googFrameRateReceived":
+                    put(Metric.FRAME_RATE_RECEIVED, parseLong(value.value));
+                    break;
+                case "googEncodeUsagePercent":
+                    put(Metric.ENCODE_USAGE_PERCENT, parseLong(value.value));
+                    break;
+                case "googCpuLimitedResolution":
+                    put(Metric.CPU_LIMITED, "true".equals(value.value) ? 1 : 0);
+                    break;
+            }
+        }
+        // outbound reports are the ones with ids like ssrc_1234_send
+        if (video && report.id.endsWith("_send")) mCurrentSendVideoCodec = codecName;
+    }
+
+    private void put(Metric metric, long value) {
+        if (value != MISSING) mCurrent[metric.ordinal()] = value;
+    }
+
+    private void add(Metric metric, long value) {
+        if (value == MISSING) return;
+        long current = mCurrent[metric.ordinal()];
+        mCurrent[metric.ordinal()] = current == MISSING ? value : current + value;
+    }
+
+    private void max(Metric metric, long value) {
+        if (value == MISSING) return;
+        mCurrent[metric.ordinal()] = Math.max(mCurrent[metric.ordinal()], value);
+    }
+
+    /**
+     * Parses the integer part of a stats value without allocating or throwing,
+     * returns {@link #MISSING} when there is none
+     */
+    static long parseLong(String value) {
+        if (value == null || value.isEmpty()) return MISSING;
+
+        long result = 0;
+        int i = 0;
+        boolean negative = value.charAt(0) == '-';
+        if (negative) i++;
+
+        int start = i;
+        for (; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') break;
+            result = result * 10 + (c - '0');
+        }
+        if (i == start) return MISSING;
+        return negative ? -result : result;
+    }
+}
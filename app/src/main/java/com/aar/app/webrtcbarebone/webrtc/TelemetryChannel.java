@@ -0,0 +1,198 @@
+package com.aar.app.webrtcbarebone.webrtc;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import org.webrtc.DataChannel;
+
+import java.nio.ByteBuffer;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Unordered, unreliable data channel for small frequent messages (cursor positions, sensor readings)
+ * where a late message is worth less than a lost one.
+ *
+ * Messages sent within {@link #TICK_MS} are packed into one packet of at most {@link #MAX_PACKET_SIZE}
+ * bytes, each message framed as
+ * <pre>
+ *     u8 type | u8 payload length | payload
+ * </pre>
+ * The packet is built in one reused direct buffer and flushed from a handler thread, so sending a
+ * message allocates nothing. A packet is dropped instead of queued when the channel still has more
+ * than {@link #MAX_BUFFERED_AMOUNT} bytes buffered.
+ *
+ * The side that creates the channel sends on it, the remote side gets it through
+ * {@link org.webrtc.PeerConnection.Observer#onDataChannel} and wraps it to receive.
+ */
+public class TelemetryChannel implements DataChannel.Observer {
+    private static final String TAG = "TelemetryChannel";
+
+    public static final String LABEL = "telemetry";
+
+    public static final int MAX_PAYLOAD_SIZE = 255;
+    // stays within one sctp packet on a 1280 byte path mtu
+    static final int MAX_PACKET_SIZE = 1100;
+    static final long TICK_MS = 10;
+    static final long MAX_BUFFERED_AMOUNT = 16 * 1024;
+    private static final int HEADER_SIZE = 2;
+
+    public interface Listener {
+        /**
+         * @param payload positioned at the message payload, only valid during the call
+         */
+        void onMessage(int type, ByteBuffer payload);
+    }
+
+    private final DataChannel mDataChannel;
+    private volatile Listener mListener;
+
+    private final ByteBuffer mPacket = ByteBuffer.allocateDirect(MAX_PACKET_SIZE);
+    private final HandlerThread mFlushThread = new HandlerThread(TAG);
+    private final Handler mFlushHandler;
+    private final Runnable mFlusher = this::flush;
+    private long mDroppedPackets = 0;
+    // set under mPacket once the native channel is disposed
+    private boolean mClosed = false;
+
+    public TelemetryChannel(@NonNull DataChannel dataChannel) {
+        mDataChannel = dataChannel;
+        LiveObjects.onCreated(LiveObjects.Kind.DATA_CHANNEL);
+        mFlushThread.start();
+        mFlushHandler = new Handler(mFlushThread.getLooper());
+        mDataChannel.registerObserver(this);
+    }
+
+    public static DataChannel.Init createInit() {
+        DataChannel.Init init = new DataChannel.Init();
+        init.ordered = false;
+        init.maxRetransmits = 0;
+        return init;
+    }
+
+    public static boolean isTelemetryChannel(@NonNull DataChannel dataChannel) {
+        return LABEL.equals(dataChannel.label());
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Queue a message for the next packet
+     *
+     * @param type 0..255
+     * @param payload remaining bytes are sent, at most {@link #MAX_PAYLOAD_SIZE}, left untouched
+     * @return false when the channel is not open or the payload is too large
+     */
+    public boolean send(int type, @NonNull ByteBuffer payload) {
+        int length = payload.remaining();
+        if (length > MAX_PAYLOAD_SIZE) return false;
+
+        synchronized (mPacket) {
+            if (mClosed || mDataChannel.state() != DataChannel.State.OPEN) return false;
+            reserve(length);
+            mPacket.put((byte) type).put((byte) length);
+            int position = payload.position();
+            mPacket.put(payload);
+            payload.position(position);
+        }
+        return true;
+    }
+
+    public boolean send(int type, @NonNull byte[] payload, int offset, int length) {
+        if (length > MAX_PAYLOAD_SIZE) return false;
+
+        synchronized (mPacket) {
+            if (mClosed || mDataChannel.state() != DataChannel.State.OPEN) return false;
+            reserve(length);
+            mPacket.put((byte) type).put((byte) length).put(payload, offset, length);
+        }
+        return true;
+    }
+
+    public long getDroppedPacketCount() {
+        synchronized (mPacket) {
+            return mDroppedPackets;
+        }
+    }
+
+    /**
+     * Drop the unsent packet and dispose the data channel, calling it again does nothing
+     */
+    public void close() {
+        synchronized (mPacket) {
+            if (mClosed) return;
+            mClosed = true;
+            mDataChannel.unregisterObserver();
+            mFlushHandler.removeCallbacks(mFlusher);
+            mFlushThread.quitSafely();
+            mDataChannel.close();
+            mDataChannel.dispose();
+            LiveObjects.onDisposed(LiveObjects.Kind.DATA_CHANNEL);
+        }
+    }
+
+    /**
+     * Make room for a message, flushing the packet when it does not fit and scheduling
+     * the flush of a new packet. Called holding mPacket.
+     */
+    private void reserve(int payloadLength) {
+        if (mPacket.position() + HEADER_SIZE + payloadLength > MAX_PACKET_SIZE) {
+            sendPacket();
+        }
+        if (mPacket.position() == 0) {
+            mFlushHandler.postDelayed(mFlusher, TICK_MS);
+        }
+    }
+
+    private void flush() {
+        synchronized (mPacket) {
+            if (!mClosed) sendPacket();
+        }
+    }
+
+    private void sendPacket() {
+        if (mPacket.position() == 0) return;
+
+        mPacket.flip();
+        if (mDataChannel.bufferedAmount() > MAX_BUFFERED_AMOUNT) {
+            mDroppedPackets++;
+        } else if (!mDataChannel.send(new DataChannel.Buffer(mPacket, true))) {
+            mDroppedPackets++;
+        }
+        mPacket.clear();
+    }
+
+    @Override
+    public void onBufferedAmountChange(long previousAmount) { }
+
+    @Override
+    public void onStateChange() {
+        Log.d(TAG, "Telemetry channel state: " + mDataChannel.state());
+    }
+
+    @Override
+    public void onMessage(DataChannel.Buffer buffer) {
+        Listener listener = mListener;
+        if (listener == null || !buffer.binary) return;
+
+        ByteBuffer packet = buffer.data;
+        int end = packet.limit();
+        while (packet.position() + HEADER_SIZE <= end) {
+            int type = packet.get() & 0xff;
+            int length = packet.get() & 0xff;
+            int payloadEnd = packet.position() + length;
+            if (payloadEnd > end) {
+                Log.d(TAG, "Truncated telemetry message of type " + type);
+                break;
+            }
+
+            packet.limit(payloadEnd);
+            listener.onMessage(type, packet);
+            packet.limit(end);
+            packet.position(payloadEnd);
+        }
+    }
+}
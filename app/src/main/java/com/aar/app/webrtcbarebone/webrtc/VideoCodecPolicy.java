@@ -0,0 +1,254 @@
+package com.aar.app.webrtcbarebone.webrtc;
+
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.util.Log;
+
+import org.webrtc.EglBase;
+import org.webrtc.HardwareVideoEncoderFactory;
+import org.webrtc.SessionDescription;
+import org.webrtc.VideoCodecInfo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Decides the video codec order of the local descriptions from the hardware codecs of the device.
+ *
+ * H264 goes first when it can be both encoded and decoded in hardware, otherwise VP8 does (which the
+ * encoder factory still encodes in hardware when the device has a vp8 encoder). The order is applied by
+ * moving the payload types in the m=video line, a codec the remote side does not support is not in the
+ * answer so the first codec both sides have wins.
+ *
+ * A hardware encoder that stops producing frames is reported through {@link #onEncoderFailure(String)},
+ * the codec is then removed from the local descriptions for the rest of the process. Moving it to the
+ * back is not enough: libwebrtc sends the first codec of the remote description, so an answerer that
+ * prefers it would put it first again.
+ */
+public class VideoCodecPolicy {
+    private static final String TAG = "VideoCodecPolicy";
+
+    public static final String VP8 = "VP8";
+    public static final String VP9 = "VP9";
+    public static final String H264 = "H264";
+
+    private static final String[] SOFTWARE_CODEC_PREFIXES = {"OMX.google.", "c2.android.", "c2.google."};
+
+    private final Set<String> mHardwareEncoders;
+    private final Set<String> mHardwareDecoders;
+    private final Set<String> mFailedEncoders = Collections.synchronizedSet(new HashSet<>());
+
+    public VideoCodecPolicy(@NonNull Set<String> hardwareEncoders, @NonNull Set<String> hardwareDecoders) {
+        mHardwareEncoders = new HashSet<>(hardwareEncoders);
+        mHardwareDecoders = new HashSet<>(hardwareDecoders);
+    }
+
+    /**
+     * Encoders are the ones libwebrtc's hardware factory accepts on this device, decoders come
+     * from the platform codec list
+     */
+    public static VideoCodecPolicy probe(@NonNull EglBase.Context eglContext) {
+        Set<String> encoders = new HashSet<>();
+        for (VideoCodecInfo codec : new HardwareVideoEncoderFactory(eglContext, true, true).getSupportedCodecs()) {
+            encoders.add(codec.name.toUpperCase(Locale.US));
+        }
+
+        Set<String> decoders = new HashSet<>();
+        for (int i = 0; i < MediaCodecList.getCodecCount(); i++) {
+            MediaCodecInfo info = MediaCodecList.getCodecInfoAt(i);
+            if (info.isEncoder() || isSoftwareCodec(info.getName())) continue;
+
+            for (String type : info.getSupportedTypes()) {
+                String codec = codecOfMimeType(type);
+                if (codec != null) decoders.add(codec);
+            }
+        }
+
+        Log.d(TAG, "Hardware encoders: " + encoders + ", decoders: " + decoders);
+        return new VideoCodecPolicy(encoders, decoders);
+    }
+
+    public boolean hasHardwareEncoder(String codec) {
+        return mHardwareEncoders.contains(codec) && !mFailedEncoders.contains(codec);
+    }
+
+    public boolean hasHardwareDecoder(String codec) {
+        return mHardwareDecoders.contains(codec);
+    }
+
+    public void onEncoderFailure(@NonNull String codec) {
+        if (mFailedEncoders.add(codec)) {
+            Log.d(TAG, "Hardware " + codec + " encoder failed, removed from the next descriptions");
+        }
+    }
+
+    /**
+     * Most preferred first
+     */
+    public List<String> getPreferredCodecs() {
+        if (hasHardwareEncoder(H264) && hasHardwareDecoder(H264)) {
+            return Arrays.asList(H264, VP8, VP9);
+        }
+        return Arrays.asList(VP8, VP9, H264);
+    }
+
+    /**
+     * Remove the failed codecs and order the rest, for offers and answers alike
+     */
+    public SessionDescription apply(@NonNull SessionDescription sdp) {
+        String description = sdp.description;
+        List<String> failed;
+        synchronized (mFailedEncoders) {
+            failed = new ArrayList<>(mFailedEncoders);
+        }
+        for (String codec : failed) description = removeCodec(description, codec);
+        return new SessionDescription(sdp.type, preferCodecs(description, getPreferredCodecs()));
+    }
+
+    /**
+     * Remove every payload type of the codec from the m=video line, with the rtx payload types
+     * repairing them. Left as it is when no other codec would remain.
+     */
+    static String removeCodec(String sdp, String codec) {
+        Sdp parsed = Sdp.parse(sdp);
+        Sdp.Media video = parsed.findMedia("video");
+        if (video == null) return sdp;
+
+        List<String> removed = video.findPayloadTypes(codec);
+        if (removed.isEmpty()) return sdp;
+        Map<String, String> codecs = video.getCodecs();
+        for (String payloadType : video.getPayloadTypes()) {
+            if ("rtx".equalsIgnoreCase(codecs.get(payloadType))
+                    && removed.contains(video.getFmtp(payloadType).get("apt"))) {
+                removed.add(payloadType);
+            }
+        }
+
+        boolean othersLeft = false;
+        for (String payloadType : video.getPayloadTypes()) {
+            String name = codecs.get(payloadType);
+            if (removed.contains(payloadType) || name == null) continue;
+            if (!name.equalsIgnoreCase("rtx") && !name.equalsIgnoreCase("red") && !name.equalsIgnoreCase("ulpfec")) {
+                othersLeft = true;
+            }
+        }
+        if (!othersLeft) {
+            Log.d(TAG, "Not removing " + codec + ", it is the only video codec");
+            return sdp;
+        }
+
+        for (String payloadType : removed) video.removePayloadType(payloadType);
+        return parsed.toString();
+    }
+
+    /**
+     * Reorder the payload types of the m=video line so the given codecs come first in the given
+     * order, other payload types (rtx, red, ulpfec) keep their relative order behind them
+     */
+    static String preferCodecs(String sdp, List<String> codecs) {
+        Sdp parsed = Sdp.parse(sdp);
+        Sdp.Media video = parsed.findMedia("video");
+        if (video == null) return sdp;
+
+        List<String> ordered = new ArrayList<>();
+        for (String codec : codecs) ordered.addAll(video.findPayloadTypes(codec));
+        for (String payloadType : video.getPayloadTypes()) {
+            if (!ordered.contains(payloadType)) ordered.add(payloadType);
+        }
+        video.setPayloadTypes(ordered);
+        return parsed.toString();
+    }
+
+    private static boolean isSoftwareCodec(String name) {
+        for (String prefix : SOFTWARE_CODEC_PREFIXES) {
+            if (name.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+    private static String codecOfMimeType(String mimeType) {
+        switch (mimeType.toLowerCase(Locale.US)) {
+            case "video/avc":
+                return H264;
+            case "video/x-vnd.on2.vp8":
+                return VP8;
+            case "video/x-vnd.on2.vp9":
+                return VP9;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Watches the send side stats for a hardware h264 encoder that takes frames but produces none,
+     * reports it to the policy and tells the listener so the call can be renegotiated. VP8/VP9 need no
+     * monitoring, the default encoder factory already falls back to libvpx for them.
+     *
+     * Frames in and none out is also what a paused encoder looks like, so only samples where the
+     * outbound video is H264 count, and none while the video is suspended
+     * ({@link #setVideoSuspended(boolean)}) or the available send bandwidth is below the video min
+     * bitrate of the profile ({@link #setBandwidthProfile(BandwidthPolicy.Profile)}), where libwebrtc
+     * pauses the encoder for congestion.
+     */
+    public static class EncoderMonitor implements StatsSampler.Listener {
+
+        static final int FAILURE_SAMPLES = 5;
+
+        public interface Listener {
+            void onEncoderFallback(String failedCodec);
+        }
+
+        private final VideoCodecPolicy mPolicy;
+        private final Listener mListener;
+        private volatile boolean mVideoSuspended = false;
+        private volatile int mMinVideoBps = 0;
+        private int mStalledSamples = 0;
+
+        public EncoderMonitor(@NonNull VideoCodecPolicy policy, @NonNull Listener listener) {
+            mPolicy = policy;
+            mListener = listener;
+        }
+
+        public void setVideoSuspended(boolean suspended) {
+            mVideoSuspended = suspended;
+        }
+
+        public void setBandwidthProfile(@NonNull BandwidthPolicy.Profile profile) {
+            mMinVideoBps = profile.video.minBps;
+        }
+
+        @Override
+        public void onSample(StatsSampler sampler) {
+            onSample(sampler.getSendVideoCodec(),
+                    sampler.getLatest(StatsSampler.Metric.FRAME_RATE_INPUT),
+                    sampler.getLatest(StatsSampler.Metric.FRAME_RATE_SENT),
+                    sampler.getLatest(StatsSampler.Metric.AVAILABLE_SEND_BPS));
+        }
+
+        synchronized void onSample(String sendVideoCodec, long frameRateInput, long frameRateSent,
+                                   long availableSendBps) {
+            boolean paused = mVideoSuspended
+                    || (availableSendBps != StatsSampler.MISSING && availableSendBps < mMinVideoBps);
+            if (!H264.equalsIgnoreCase(sendVideoCodec) || !mPolicy.hasHardwareEncoder(H264) || paused) {
+                // the count starts over, a resumed encoder needs a moment before it produces frames
+                mStalledSamples = 0;
+                return;
+            }
+
+            mStalledSamples = frameRateInput > 0 && frameRateSent == 0 ? mStalledSamples + 1 : 0;
+            if (mStalledSamples >= FAILURE_SAMPLES) {
+                mStalledSamples = 0;
+                mPolicy.onEncoderFailure(H264);
+                mListener.onEncoderFallback(H264);
+            }
+        }
+    }
+}
@@ -1,41 +1,55 @@
 package com.aar.app.webrtcbarebone.webrtc;
 
 import android.content.Context;
+import android.util.Log;
 
-import org.webrtc.AudioSource;
 import org.webrtc.AudioTrack;
-import org.webrtc.CameraVideoCapturer;
+import org.webrtc.DataChannel;
 import org.webrtc.EglBase;
 import org.webrtc.IceCandidate;
 import org.webrtc.MediaConstraints;
-import org.webrtc.MediaStream;
+import org.webrtc.MediaStreamTrack;
 import org.webrtc.PeerConnection;
 import org.webrtc.PeerConnectionFactory;
+import org.webrtc.RtpParameters;
+import org.webrtc.RtpSender;
 import org.webrtc.SdpObserver;
 import org.webrtc.SessionDescription;
-import org.webrtc.SurfaceTextureHelper;
-import org.webrtc.VideoSource;
 import org.webrtc.VideoTrack;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import androidx.annotation.NonNull;
 
 public class WebRtcPeerConnection {
     private static final String TAG = "WebRtcPeerConnection";
 
+    // upper bound for the blocking *Sync calls, a hung native sdp callback must not pin the caller forever
+    private static final long SDP_TIMEOUT_MS = 10_000;
+
     private static final PeerConnection.IceServer FALLBACK_STUN_SERVER =
             PeerConnection.IceServer.builder("stun:stun1.l.google.com:19302").createIceServer();
 
 
-    private Camera mCamera;
+    private LocalMedia mLocalMedia;
+    // media created by the legacy constructors belongs to this connection alone
+    private final boolean mOwnsLocalMedia;
     private PeerConnection mPeerConnection;
-    private VideoSource mLocalVideoSource;
-    private VideoTrack mLocalVideoTrack;
-    private AudioSource mLocalAudioSource;
-    private AudioTrack mLocalAudioTrack;
+    private boolean mDisposed = false;
+
+    // remote candidates received before the remote description was applied, guarded by itself
+    private final List<IceCandidate> mPendingIceCandidates = new ArrayList<>();
+    private boolean mRemoteDescriptionSet = false;
+
+    private CallSetupTracer mTracer;
+    private volatile Simulcast mSimulcast;
+    private volatile VideoCodecPolicy mVideoCodecPolicy;
+    private volatile BandwidthPolicy.Profile mBandwidthProfile;
+    private volatile boolean mVideoSuspended = false;
 
 
     public WebRtcPeerConnection(
@@ -45,70 +59,113 @@ public class WebRtcPeerConnection {
             @NonNull PeerConnectionFactory factory,
             @NonNull PeerConnection.Observer observer,
             @NonNull List<PeerConnection.IceServer> iceServers) {
-        mCamera = camera;
+        this(context, eglBase, camera, factory, observer, iceServers, 0);
+    }
+
+    /**
+     * @param iceCandidatePoolSize number of ice sessions gathered up front, when greater than 0 candidates
+     *                             are gathered as soon as the connection is created and reused by the
+     *                             first offer/answer instead of starting after setLocalDescription
+     */
+    public WebRtcPeerConnection(
+            @NonNull Context context,
+            @NonNull EglBase eglBase,
+            @NonNull Camera camera,
+            @NonNull PeerConnectionFactory factory,
+            @NonNull PeerConnection.Observer observer,
+            @NonNull List<PeerConnection.IceServer> iceServers,
+            int iceCandidatePoolSize) {
+        this(new LocalMedia(context, eglBase, camera, factory), true, factory, observer, iceServers, iceCandidatePoolSize);
+    }
+
+    /**
+     * Connection sending the given local media, which can be shared with other connections
+     * (e.g. one per remote peer in a mesh call) so capture happens only once
+     */
+    public WebRtcPeerConnection(
+            @NonNull LocalMedia localMedia,
+            @NonNull PeerConnectionFactory factory,
+            @NonNull PeerConnection.Observer observer,
+            @NonNull List<PeerConnection.IceServer> iceServers,
+            int iceCandidatePoolSize) {
+        this(localMedia, false, factory, observer, iceServers, iceCandidatePoolSize);
+    }
+
+    private WebRtcPeerConnection(
+            LocalMedia localMedia,
+            boolean ownsLocalMedia,
+            PeerConnectionFactory factory,
+            PeerConnection.Observer observer,
+            List<PeerConnection.IceServer> iceServers,
+            int iceCandidatePoolSize) {
+        mLocalMedia = localMedia;
+        mOwnsLocalMedia = ownsLocalMedia;
 
         List<PeerConnection.IceServer> internalIceServers = new ArrayList<>(iceServers);
         internalIceServers.add(FALLBACK_STUN_SERVER);
 
         PeerConnection.RTCConfiguration configuration =
                 new PeerConnection.RTCConfiguration(internalIceServers);
-
-        initAudio(factory);
-        initVideo(context, eglBase, camera, factory);
-
-        MediaStream mediaStream = factory.createLocalMediaStream("ARDAMS");
-        mediaStream.addTrack(mLocalAudioTrack);
-        if (mLocalVideoTrack != null) mediaStream.addTrack(mLocalVideoTrack);
+        configuration.iceCandidatePoolSize = iceCandidatePoolSize;
 
         mPeerConnection = factory.createPeerConnection(configuration, observer);
-        mPeerConnection.addStream(mediaStream);
+        LiveObjects.onCreated(LiveObjects.Kind.PEER_CONNECTION);
+        mPeerConnection.addStream(localMedia.getMediaStream());
     }
 
-    private void initAudio(PeerConnectionFactory factory) {
-        mLocalAudioSource = factory.createAudioSource(new MediaConstraints());
-        mLocalAudioTrack = factory.createAudioTrack("ARDAMSa0", mLocalAudioSource);
-        mLocalAudioTrack.setEnabled(false);
-    }
-
-    private void initVideo(Context context, EglBase eglBase, Camera camera, PeerConnectionFactory factory) {
-        CameraVideoCapturer capturer = camera.getCameraVideoCapturer();
-        if (capturer != null) {
-            mLocalVideoSource = factory.createVideoSource(capturer.isScreencast());
-            capturer.initialize(
-                    SurfaceTextureHelper.create("Cap0", eglBase.getEglBaseContext()),
-                    context,
-                    mLocalVideoSource.getCapturerObserver()
-            );
-            mLocalVideoTrack = factory.createVideoTrack("ARDAMSv0", mLocalVideoSource);
-            mLocalVideoTrack.setEnabled(false);
-        }
+    public LocalMedia getLocalMedia() {
+        return mLocalMedia;
     }
 
     public VideoTrack getLocalVideoTrack() {
-        return mLocalVideoTrack;
+        return mLocalMedia.getLocalVideoTrack();
     }
 
     public AudioTrack getLocalAudioTrack() {
-        return mLocalAudioTrack;
+        return mLocalMedia.getLocalAudioTrack();
     }
 
     public void flipCamera() {
-        mCamera.switchCamera();
+        mLocalMedia.flipCamera();
     }
 
     public void enableAudio(boolean enable) {
-        mLocalAudioTrack.setEnabled(enable);
+        mLocalMedia.enableAudio(enable);
     }
 
     public void enableVideo(boolean enable) {
-        if (mLocalVideoTrack != null) {
-            mLocalVideoTrack.setEnabled(enable);
+        mLocalMedia.enableVideo(enable);
+    }
+
+    public DataChannel createDataChannel(@NonNull String label, @NonNull DataChannel.Init init) {
+        return mPeerConnection.createDataChannel(label, init);
+    }
+
+    /**
+     * Unreliable channel for sending telemetry, the remote side receives it in onDataChannel
+     */
+    public TelemetryChannel createTelemetryChannel() {
+        return new TelemetryChannel(createDataChannel(TelemetryChannel.LABEL, TelemetryChannel.createInit()));
+    }
+
+    /**
+     * Close and dispose the connection with its remote tracks. Data channels created on it must be
+     * disposed before. Shared local media is left untouched, media created by the connection itself
+     * is disposed after it. Calling it again does nothing.
+     */
+    public void close() {
+        synchronized (this) {
+            if (mDisposed) return;
+            mDisposed = true;
         }
 
-        if (enable) {
-            mCamera.startCapture();
-        } else {
-            mCamera.stopCapture();
+        // PeerConnection.dispose() would dispose the local stream too, which other connections may still send
+        mPeerConnection.removeStream(mLocalMedia.getMediaStream());
+        mPeerConnection.dispose();
+        LiveObjects.onDisposed(LiveObjects.Kind.PEER_CONNECTION);
+
+        if (mOwnsLocalMedia) {
+            mLocalMedia.dispose();
         }
     }
 
@@ -116,10 +173,13 @@ public class WebRtcPeerConnection {
             throws WebRtcPeerConnectionError {
         SettableFuture<SessionDescription> future = new SettableFuture<>();
 
+        trace(CallSetupTracer.Event.CREATE_SDP_START);
         mPeerConnection.createOffer(new FutureCreateSdpObserver(future), mediaConstraints);
         try {
-            return future.get();
-        } catch (InterruptedException | ExecutionException e) {
+            SessionDescription offer = future.get(SDP_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            trace(CallSetupTracer.Event.CREATE_SDP_DONE);
+            return offer;
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
             throw new WebRtcPeerConnectionError(e);
         }
     }
@@ -128,10 +188,13 @@ public class WebRtcPeerConnection {
         throws WebRtcPeerConnectionError {
         SettableFuture<SessionDescription> future = new SettableFuture<>();
 
+        trace(CallSetupTracer.Event.CREATE_SDP_START);
         mPeerConnection.createAnswer(new FutureCreateSdpObserver(future), mediaConstraints);
         try {
-            return future.get();
-        } catch (InterruptedException | ExecutionException e) {
+            SessionDescription answer = future.get(SDP_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            trace(CallSetupTracer.Event.CREATE_SDP_DONE);
+            return answer;
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
             throw new WebRtcPeerConnectionError(e);
         }
     }
@@ -139,30 +202,287 @@ public class WebRtcPeerConnection {
     public PeerConnection getPeerConnection() {
         return mPeerConnection;
     }
-    public void setLocalDescriptionSync(SessionDescription sdp) throws WebRtcPeerConnectionError {
+    /**
+     * @return the description that was applied, which differs from sdp when simulcast is enabled
+     */
+    public SessionDescription setLocalDescriptionSync(SessionDescription sdp) throws WebRtcPeerConnectionError {
+        trace(CallSetupTracer.Event.SET_LOCAL_SDP_START);
+        Simulcast simulcast = mSimulcast;
+        SessionDescription localSdp = prepareLocalDescription(sdp, simulcast);
+
         SettableFuture<Boolean> future = new SettableFuture<>();
-        mPeerConnection.setLocalDescription(new FutureSetSdpObserver(future), sdp);
+        mPeerConnection.setLocalDescription(new FutureSetSdpObserver(future), localSdp);
 
         try {
-            future.get();
-        } catch (InterruptedException | ExecutionException e) {
+            future.get(SDP_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
             throw new WebRtcPeerConnectionError(e);
         }
+        trace(CallSetupTracer.Event.SET_LOCAL_SDP_DONE);
+        applySendParameters();
+        return localSdp;
     }
 
     public void setRemoteDescriptionSync(SessionDescription sdp) throws WebRtcPeerConnectionError {
+        trace(CallSetupTracer.Event.SET_REMOTE_SDP_START);
+        sdp = mLocalMedia.getAudioProfile().applyRemote(sdp);
         SettableFuture<Boolean> future = new SettableFuture<>();
         mPeerConnection.setRemoteDescription(new FutureSetSdpObserver(future), sdp);
 
         try {
-            future.get();
-        } catch (InterruptedException | ExecutionException e) {
+            future.get(SDP_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
             throw new WebRtcPeerConnectionError(e);
         }
+        trace(CallSetupTracer.Event.SET_REMOTE_SDP_DONE);
+        drainPendingIceCandidates();
     }
 
+    /**
+     * Tracer of this connection's sdp phases, the blocking *Sync calls are traced like the async ones
+     */
+    public void setCallSetupTracer(CallSetupTracer tracer) {
+        mTracer = tracer;
+    }
+
+    /**
+     * Order the video codecs of the next local descriptions by the policy, null keeps
+     * the order libwebrtc produces
+     */
+    public void setVideoCodecPolicy(VideoCodecPolicy policy) {
+        mVideoCodecPolicy = policy;
+    }
+
+    /**
+     * Send the local video as simulcast layers from the next local description on, null sends
+     * a single encoding again
+     */
+    public void setSimulcast(Simulcast simulcast) {
+        mSimulcast = simulcast;
+    }
+
+    /**
+     * Limit the send bitrate to the profile right away and after every local description,
+     * null removes the limits
+     */
+    public void setBandwidthProfile(BandwidthPolicy.Profile profile) {
+        mBandwidthProfile = profile;
+        applySendParameters();
+    }
+
+    /**
+     * Stop or resume sending video without renegotiating, the audio keeps going
+     */
+    public void setVideoSuspended(boolean suspended) {
+        mVideoSuspended = suspended;
+        applySendParameters();
+    }
+
+    /**
+     * Bandwidth estimator limits and per sender encodings from the simulcast layers, the bandwidth
+     * profile and the video suspension. Senders get their encodings with the local description,
+     * so this runs again after each one.
+     */
+    private void applySendParameters() {
+        BandwidthPolicy.Profile profile = mBandwidthProfile;
+        Simulcast simulcast = mSimulcast;
+        boolean videoSuspended = mVideoSuspended;
+
+        synchronized (this) {
+            if (mDisposed) return;
+
+            if (profile != null && !mPeerConnection.setBitrate(
+                    profile.getMinBps(), profile.getStartBps(), profile.getMaxBps())) {
+                Log.d(TAG, "Failed to set bitrate limits");
+            }
+
+            for (RtpSender sender : mPeerConnection.getSenders()) {
+                MediaStreamTrack track = sender.track();
+                if (track == null) continue;
+
+                boolean video = MediaStreamTrack.VIDEO_TRACK_KIND.equals(track.kind());
+                RtpParameters parameters = sender.getParameters();
+                for (int i = 0; i < parameters.encodings.size(); i++) {
+                    RtpParameters.Encoding encoding = parameters.encodings.get(i);
+                    if (!video) {
+                        encoding.maxBitrateBps = profile != null ? profile.audio.maxBps : null;
+                        continue;
+                    }
+
+                    Simulcast.Layer layer = simulcast != null && i < simulcast.getLayerCount()
+                            ? simulcast.getLayer(i) : null;
+                    Integer maxBitrateBps = layer != null ? layer.maxBitrateBps : null;
+                    if (profile != null) {
+                        maxBitrateBps = maxBitrateBps != null
+                                ? Math.min(maxBitrateBps, profile.video.maxBps) : profile.video.maxBps;
+                    }
+                    encoding.maxBitrateBps = maxBitrateBps;
+                    encoding.active = !videoSuspended && (layer == null || layer.active);
+                }
+                if (video && simulcast != null && parameters.encodings.size() < simulcast.getLayerCount()) {
+                    Log.d(TAG, "Video sender has " + parameters.encodings.size() + " encodings for "
+                            + simulcast.getLayerCount() + " simulcast layers");
+                }
+                if (!sender.setParameters(parameters)) {
+                    Log.d(TAG, "Failed to set " + track.kind() + " sender parameters");
+                }
+            }
+        }
+    }
+
+    public void createOffer(MediaConstraints mediaConstraints,
+                            @NonNull Callback<SessionDescription> callback) {
+        trace(CallSetupTracer.Event.CREATE_SDP_START);
+        mPeerConnection.createOffer(new CallbackCreateSdpObserver(
+                traced(CallSetupTracer.Event.CREATE_SDP_DONE, callback)), mediaConstraints);
+    }
+
+    public void createAnswer(MediaConstraints mediaConstraints,
+                             @NonNull Callback<SessionDescription> callback) {
+        trace(CallSetupTracer.Event.CREATE_SDP_START);
+        mPeerConnection.createAnswer(new CallbackCreateSdpObserver(
+                traced(CallSetupTracer.Event.CREATE_SDP_DONE, callback)), mediaConstraints);
+    }
+
+    /**
+     * Set local description asynchronously, on success the callback receives the applied sdp
+     * so it can be chained directly into sending it to the remote peer
+     */
+    public void setLocalDescription(@NonNull SessionDescription sdp,
+                                    @NonNull Callback<SessionDescription> callback) {
+        trace(CallSetupTracer.Event.SET_LOCAL_SDP_START);
+        SessionDescription localSdp = prepareLocalDescription(sdp, mSimulcast);
+        mPeerConnection.setLocalDescription(new CallbackSetSdpObserver(localSdp,
+                traced(CallSetupTracer.Event.SET_LOCAL_SDP_DONE, new ChainedCallback<SessionDescription>(callback) {
+                    @Override
+                    public void onSuccess(SessionDescription result) {
+                        applySendParameters();
+                        callback.onSuccess(result);
+                    }
+                })), localSdp);
+    }
+
+    /**
+     * The bitrate cap and packet duration of the local audio profile are applied to the remote
+     * description where they are tighter, so they also limit what is sent
+     */
+    public void setRemoteDescription(@NonNull SessionDescription remoteSdp,
+                                     @NonNull Callback<SessionDescription> callback) {
+        trace(CallSetupTracer.Event.SET_REMOTE_SDP_START);
+        SessionDescription sdp = mLocalMedia.getAudioProfile().applyRemote(remoteSdp);
+        mPeerConnection.setRemoteDescription(new CallbackSetSdpObserver(sdp, new ChainedCallback<SessionDescription>(callback) {
+            @Override
+            public void onSuccess(SessionDescription result) {
+                trace(CallSetupTracer.Event.SET_REMOTE_SDP_DONE);
+                drainPendingIceCandidates();
+                callback.onSuccess(result);
+            }
+        }), sdp);
+    }
+
+    /**
+     * Offer pipeline: create offer -> set local description, without blocking any thread.
+     * The callback receives the local offer once it has been applied.
+     */
+    public void makeOffer(MediaConstraints mediaConstraints,
+                          @NonNull Callback<SessionDescription> callback) {
+        createOffer(mediaConstraints, new ChainedCallback<SessionDescription>(callback) {
+            @Override
+            public void onSuccess(SessionDescription offer) {
+                setLocalDescription(offer, callback);
+            }
+        });
+    }
+
+    /**
+     * Answer pipeline: set remote offer -> create answer -> set local description,
+     * without blocking any thread. The callback receives the local answer once it has been applied.
+     */
+    public void makeAnswer(@NonNull SessionDescription remoteOffer,
+                           MediaConstraints mediaConstraints,
+                           @NonNull Callback<SessionDescription> callback) {
+        setRemoteDescription(remoteOffer, new ChainedCallback<SessionDescription>(callback) {
+            @Override
+            public void onSuccess(SessionDescription result) {
+                createAnswer(mediaConstraints, new ChainedCallback<SessionDescription>(callback) {
+                    @Override
+                    public void onSuccess(SessionDescription answer) {
+                        setLocalDescription(answer, callback);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Add remote ice candidate, candidates that arrive before the remote description has been set
+     * are queued and applied in arrival order right after it is set
+     */
     public boolean addIceCandidate(IceCandidate iceCandidate) {
-        return mPeerConnection.addIceCandidate(iceCandidate);
+        synchronized (mPendingIceCandidates) {
+            if (!mRemoteDescriptionSet) {
+                Log.d(TAG, "Remote description not set yet, queue ice candidate: " + iceCandidate);
+                mPendingIceCandidates.add(iceCandidate);
+                return true;
+            }
+            synchronized (this) {
+                if (mDisposed) return false;
+                return mPeerConnection.addIceCandidate(iceCandidate);
+            }
+        }
+    }
+
+    private SessionDescription prepareLocalDescription(SessionDescription sdp, Simulcast simulcast) {
+        VideoCodecPolicy policy = mVideoCodecPolicy;
+        sdp = mLocalMedia.getAudioProfile().applyLocal(sdp);
+        if (policy != null) sdp = policy.apply(sdp);
+        if (simulcast != null) sdp = simulcast.apply(sdp, mPeerConnection.getLocalDescription());
+        return sdp;
+    }
+
+    private void trace(CallSetupTracer.Event event) {
+        CallSetupTracer tracer = mTracer;
+        if (tracer != null) tracer.record(event);
+    }
+
+    private <T> Callback<T> traced(CallSetupTracer.Event event, Callback<T> callback) {
+        if (mTracer == null) return callback;
+
+        return new ChainedCallback<T>(callback) {
+            @Override
+            public void onSuccess(T result) {
+                trace(event);
+                callback.onSuccess(result);
+            }
+        };
+    }
+
+    public boolean hasRemoteDescription() {
+        synchronized (mPendingIceCandidates) {
+            return mRemoteDescriptionSet;
+        }
+    }
+
+    public int getPendingIceCandidateCount() {
+        synchronized (mPendingIceCandidates) {
+            return mPendingIceCandidates.size();
+        }
+    }
+
+    private void drainPendingIceCandidates() {
+        synchronized (mPendingIceCandidates) {
+            mRemoteDescriptionSet = true;
+            synchronized (this) {
+                if (!mDisposed) {
+                    for (IceCandidate iceCandidate : mPendingIceCandidates) {
+                        if (!mPeerConnection.addIceCandidate(iceCandidate)) {
+                            Log.d(TAG, "Failed to add queued ice candidate: " + iceCandidate);
+                        }
+                    }
+                }
+            }
+            mPendingIceCandidates.clear();
+        }
     }
 
     public static void initialize(@NonNull Context applicationContext) {
@@ -184,6 +504,81 @@ public class WebRtcPeerConnection {
         }
     }
 
+    /**
+     * Result callback of the asynchronous sdp operations, invoked on the webrtc signaling thread
+     */
+    public interface Callback<T> {
+        void onSuccess(T result);
+
+        void onError(WebRtcPeerConnectionError error);
+    }
+
+    private static abstract class ChainedCallback<T> implements Callback<T> {
+
+        private Callback<?> downstream;
+
+        ChainedCallback(Callback<?> downstream) {
+            this.downstream = downstream;
+        }
+
+        @Override
+        public void onError(WebRtcPeerConnectionError error) {
+            downstream.onError(error);
+        }
+    }
+
+    private static class CallbackCreateSdpObserver implements SdpObserver {
+
+        private Callback<SessionDescription> callback;
+
+        CallbackCreateSdpObserver(Callback<SessionDescription> callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public void onCreateSuccess(SessionDescription sdp) {
+            this.callback.onSuccess(sdp);
+        }
+
+        @Override
+        public void onCreateFailure(String error) {
+            this.callback.onError(new WebRtcPeerConnectionError(error));
+        }
+
+        @Override
+        public void onSetSuccess() { }
+
+        @Override
+        public void onSetFailure(String s) { }
+    }
+
+    private static class CallbackSetSdpObserver implements SdpObserver {
+
+        private SessionDescription sdp;
+        private Callback<SessionDescription> callback;
+
+        CallbackSetSdpObserver(SessionDescription sdp, Callback<SessionDescription> callback) {
+            this.sdp = sdp;
+            this.callback = callback;
+        }
+
+        @Override
+        public void onCreateSuccess(SessionDescription sessionDescription) { }
+
+        @Override
+        public void onCreateFailure(String s) { }
+
+        @Override
+        public void onSetSuccess() {
+            this.callback.onSuccess(sdp);
+        }
+
+        @Override
+        public void onSetFailure(String error) {
+            this.callback.onError(new WebRtcPeerConnectionError(error));
+        }
+    }
+
     private static class FutureCreateSdpObserver implements SdpObserver {
 
         private SettableFuture<SessionDescription> future;
@@ -0,0 +1,67 @@
+package com.aar.app.webrtcbarebone.webrtc;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.Executor;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Serial thread owning the peer connections, local media and camera of a call.
+ *
+ * Everything that touches them runs as a task on this thread: signaling events, peer connection
+ * observer callbacks and ui actions are posted here without waiting, and only view updates go back
+ * to the main thread. State confined to the thread needs no locking, {@link #checkIsOnThread()}
+ * documents and asserts it.
+ */
+public class WebRtcThread implements Executor {
+    private static final String TAG = "WebRtcThread";
+
+    private final HandlerThread mThread;
+    private final Handler mHandler;
+
+    public WebRtcThread(@NonNull String name) {
+        mThread = new HandlerThread(name);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+    }
+
+    @Override
+    public void execute(@NonNull Runnable task) {
+        if (!mHandler.post(task)) {
+            Log.d(TAG, "Thread quit, dropping task");
+        }
+    }
+
+    public void executeDelayed(@NonNull Runnable task, long delayMs) {
+        mHandler.postDelayed(task, delayMs);
+    }
+
+    public void cancel(@NonNull Runnable task) {
+        mHandler.removeCallbacks(task);
+    }
+
+    public Looper getLooper() {
+        return mThread.getLooper();
+    }
+
+    public boolean isCurrentThread() {
+        return Thread.currentThread() == mThread;
+    }
+
+    public void checkIsOnThread() {
+        if (!isCurrentThread()) {
+            throw new IllegalStateException("Not on " + mThread.getName() + " but " + Thread.currentThread().getName());
+        }
+    }
+
+    /**
+     * Run the tasks already posted, then stop, delayed tasks not yet due are dropped
+     */
+    public void quit() {
+        mThread.quitSafely();
+    }
+}
@@ -0,0 +1,127 @@
+package com.aar.app.webrtcbarebone.signaling;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LoopbackSignalingTest {
+
+    private LoopbackSignalingServer mServer;
+
+    @Before
+    public void setUp() {
+        mServer = new LoopbackSignalingServer();
+    }
+
+    @After
+    public void tearDown() {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void offerIsRoutedToRecipientAndAcked() throws Exception {
+        RecordingListener alice = new RecordingListener();
+        RecordingListener bob = new RecordingListener();
+        SignalingClient aliceClient = connect(alice, "alice");
+        connect(bob, "bob");
+
+        JSONObject offer = new JSONObject()
+                .put("to_id", "bob")
+                .put("from_id", "alice")
+                .put("sdp", "v=0");
+        CountDownLatch acked = new CountDownLatch(1);
+        aliceClient.sendOffer(offer, acked::countDown);
+
+        JSONObject received = bob.offers.poll(1, TimeUnit.SECONDS);
+        assertNotNull(received);
+        assertEquals("alice", received.getString("from_id"));
+        assertEquals("v=0", received.getString("sdp"));
+        assertNotSame(offer, received);
+        assertTrue(acked.await(1, TimeUnit.SECONDS));
+        assertTrue(alice.offers.isEmpty());
+    }
+
+    @Test
+    public void messageToUnknownIdIsDroppedButAcked() throws Exception {
+        RecordingListener alice = new RecordingListener();
+        SignalingClient aliceClient = connect(alice, "alice");
+
+        CountDownLatch acked = new CountDownLatch(1);
+        aliceClient.sendIceCandidates(new JSONObject().put("to_id", "nobody"), acked::countDown);
+
+        assertTrue(acked.await(1, TimeUnit.SECONDS));
+        assertTrue(alice.candidates.isEmpty());
+    }
+
+    @Test
+    public void disconnectedClientReceivesNothing() throws Exception {
+        RecordingListener alice = new RecordingListener();
+        RecordingListener bob = new RecordingListener();
+        SignalingClient aliceClient = connect(alice, "alice");
+        SignalingClient bobClient = connect(bob, "bob");
+
+        bobClient.disconnect();
+        assertEquals("client disconnect", bob.disconnects.poll(1, TimeUnit.SECONDS));
+
+        CountDownLatch acked = new CountDownLatch(1);
+        aliceClient.sendAnswer(new JSONObject().put("to_id", "bob"), acked::countDown);
+        assertTrue(acked.await(1, TimeUnit.SECONDS));
+        assertTrue(bob.answers.isEmpty());
+    }
+
+    private SignalingClient connect(RecordingListener listener, String id) throws InterruptedException {
+        SignalingClient client = mServer.newClient();
+        client.setListener(listener);
+        client.connect();
+        assertTrue(listener.connected.await(1, TimeUnit.SECONDS));
+
+        CountDownLatch registered = new CountDownLatch(1);
+        client.register(id, registered::countDown);
+        assertTrue(registered.await(1, TimeUnit.SECONDS));
+        return client;
+    }
+
+    private static class RecordingListener implements SignalingClient.Listener {
+        final CountDownLatch connected = new CountDownLatch(1);
+        final BlockingQueue<String> disconnects = new LinkedBlockingQueue<>();
+        final BlockingQueue<JSONObject> offers = new LinkedBlockingQueue<>();
+        final BlockingQueue<JSONObject> answers = new LinkedBlockingQueue<>();
+        final BlockingQueue<JSONObject> candidates = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onConnected() {
+            connected.countDown();
+        }
+
+        @Override
+        public void onDisconnected(String reason) {
+            disconnects.add(reason);
+        }
+
+        @Override
+        public void onError(String error) { }
+
+        @Override
+        public void onOffer(JSONObject message) {
+            offers.add(message);
+        }
+
+        @Override
+        public void onAnswer(JSONObject message) {
+            answers.add(message);
+        }
+
+        @Override
+        public void onIceCandidates(JSONObject message) {
+            candidates.add(message);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.aar.app.webrtcbarebone.signaling;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ReliableSignalingClientTest {
+
+    private FakeTransport mTransport;
+    private ReliableSignalingClient mClient;
+    private final BlockingQueue<String> mEvents = new LinkedBlockingQueue<>();
+    private final BlockingQueue<JSONObject> mOffers = new LinkedBlockingQueue<>();
+
+    @Before
+    public void setUp() {
+        mTransport = new FakeTransport();
+        mClient = new ReliableSignalingClient(mTransport, 10, 40);
+        mClient.setListener(new SignalingClient.Listener() {
+            @Override
+            public void onConnected() {
+                mEvents.add("connected");
+            }
+
+            @Override
+            public void onDisconnected(String reason) {
+                mEvents.add("disconnected");
+            }
+
+            @Override
+            public void onError(String error) { }
+
+            @Override
+            public void onOffer(JSONObject message) {
+                mOffers.add(message);
+            }
+
+            @Override
+            public void onAnswer(JSONObject message) { }
+
+            @Override
+            public void onIceCandidates(JSONObject message) { }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mClient.disconnect();
+    }
+
+    @Test
+    public void queuedMessagesAreSentInOrderAfterReconnect() throws Exception {
+        connect();
+        mClient.register("alice", null);
+        assertEquals("register alice", mTransport.poll());
+
+        mTransport.drop();
+        assertEquals("disconnected", mEvents.poll(1, TimeUnit.SECONDS));
+        mClient.sendOffer(new JSONObject().put("n", 1), null);
+        mClient.sendIceCandidates(new JSONObject().put("n", 2), null);
+        mClient.sendAnswer(new JSONObject().put("n", 3), null);
+
+        // reconnected by the backoff, not by the caller
+        assertEquals("connect", mTransport.poll());
+        mTransport.open();
+        assertEquals("register alice", mTransport.poll());
+        assertEquals(SignalingClient.EVENT_OFFER + " 1", mTransport.poll());
+        assertEquals(SignalingClient.EVENT_ICE + " 2", mTransport.poll());
+        assertEquals(SignalingClient.EVENT_ANSWER + " 3", mTransport.poll());
+        assertEquals("connected", mEvents.poll(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void unackedMessageIsSentAgainAndAckedOnce() throws Exception {
+        connect();
+        CountDownLatch acked = new CountDownLatch(1);
+        mClient.sendOffer(new JSONObject().put("n", 1), acked::countDown);
+        assertEquals(SignalingClient.EVENT_OFFER + " 1", mTransport.poll());
+        SignalingClient.Ack lostAck = mTransport.lastAck;
+
+        mTransport.drop();
+        assertEquals("connect", mTransport.poll());
+        mTransport.open();
+        assertEquals(SignalingClient.EVENT_OFFER + " 1", mTransport.poll());
+
+        lostAck.onAck();
+        mTransport.lastAck.onAck();
+        assertTrue(acked.await(1, TimeUnit.SECONDS));
+        mTransport.drop();
+        assertEquals("connect", mTransport.poll());
+        mTransport.open();
+        assertNull(mTransport.sent.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void duplicateMessagesFromSenderAreDropped() throws Exception {
+        connect();
+        mTransport.receiveOffer("bob", "s1", 1);
+        mTransport.receiveOffer("bob", "s1", 1);
+        mTransport.receiveOffer("bob", "s1", 2);
+        // bob restarted with a new session
+        mTransport.receiveOffer("bob", "s2", 1);
+
+        assertEquals(1, mOffers.poll(1, TimeUnit.SECONDS).getLong("seq"));
+        assertEquals(2, mOffers.poll(1, TimeUnit.SECONDS).getLong("seq"));
+        assertEquals("s2", mOffers.poll(1, TimeUnit.SECONDS).getString("session"));
+        assertNull(mOffers.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void backoffIsJitteredAndCapped() {
+        for (int attempt = 0; attempt < 30; attempt++) {
+            long expected = Math.min(10L << Math.min(attempt, 20), 40);
+            long backoff = mClient.getBackoffMs(attempt);
+            assertTrue(backoff >= expected / 2 && backoff <= expected);
+        }
+    }
+
+    private void connect() throws InterruptedException {
+        mClient.connect();
+        assertEquals("connect", mTransport.poll());
+        mTransport.open();
+        assertEquals("connected", mEvents.poll(1, TimeUnit.SECONDS));
+    }
+
+    private static class FakeTransport implements SignalingClient {
+        final BlockingQueue<String> sent = new LinkedBlockingQueue<>();
+        volatile Listener listener;
+        volatile Ack lastAck;
+
+        String poll() throws InterruptedException {
+            return sent.poll(1, TimeUnit.SECONDS);
+        }
+
+        void open() {
+            listener.onConnected();
+        }
+
+        void drop() {
+            listener.onDisconnected("transport error");
+        }
+
+        void receiveOffer(String from, String session, long seq) throws Exception {
+            listener.onOffer(new JSONObject().put("from_id", from).put("session", session).put("seq", seq));
+        }
+
+        @Override
+        public void setListener(Listener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void connect() {
+            sent.add("connect");
+        }
+
+        @Override
+        public void disconnect() { }
+
+        @Override
+        public void register(String id, Ack ack) {
+            sent.add("register " + id);
+        }
+
+        @Override
+        public void sendOffer(JSONObject message, Ack ack) {
+            record(EVENT_OFFER, message, ack);
+        }
+
+        @Override
+        public void sendAnswer(JSONObject message, Ack ack) {
+            record(EVENT_ANSWER, message, ack);
+        }
+
+        @Override
+        public void sendIceCandidates(JSONObject message, Ack ack) {
+            record(EVENT_ICE, message, ack);
+        }
+
+        private void record(String event, JSONObject message, Ack ack) {
+            lastAck = ack;
+            sent.add(event + " " + message.optInt("n"));
+        }
+    }
+}
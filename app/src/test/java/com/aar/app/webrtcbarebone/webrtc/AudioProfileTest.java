@@ -0,0 +1,67 @@
+package com.aar.app.webrtcbarebone.webrtc;
+
+import org.junit.Test;
+import org.webrtc.SessionDescription;
+
+import static org.junit.Assert.*;
+
+public class AudioProfileTest {
+
+    // answer of a peer on a slow link asking for dtx and a low bitrate
+    private static final String REMOTE_ANSWER = "v=0\r\n"
+            + "o=- 8140371234012398471 2 IN IP4 127.0.0.1\r\n"
+            + "s=-\r\n"
+            + "t=0 0\r\n"
+            + "a=group:BUNDLE audio\r\n"
+            + "m=audio 9 UDP/TLS/RTP/SAVPF 111 0\r\n"
+            + "c=IN IP4 0.0.0.0\r\n"
+            + "a=mid:audio\r\n"
+            + "a=sendrecv\r\n"
+            + "a=rtcp-mux\r\n"
+            + "a=rtpmap:111 opus/48000/2\r\n"
+            + "a=fmtp:111 minptime=10;useinbandfec=1;usedtx=1;maxaveragebitrate=16000\r\n"
+            + "a=rtpmap:0 PCMU/8000\r\n"
+            + "a=ptime:60\r\n";
+
+    @Test
+    public void defaultProfileLeavesBothDescriptionsAlone() {
+        AudioProfile profile = new AudioProfile();
+        SessionDescription remote = new SessionDescription(SessionDescription.Type.ANSWER, REMOTE_ANSWER);
+        assertSame(remote, profile.applyRemote(remote));
+        assertSame(remote, profile.applyLocal(remote));
+    }
+
+    @Test
+    public void remoteDtxAndTighterLimitsSurviveTheLocalProfile() {
+        AudioProfile profile = new AudioProfile();
+        profile.maxAverageBitrateBps = 24_000;
+        profile.ptimeMs = 20;
+
+        String applied = profile.applyRemote(
+                new SessionDescription(SessionDescription.Type.ANSWER, REMOTE_ANSWER)).description;
+        assertEquals(REMOTE_ANSWER, applied);
+    }
+
+    @Test
+    public void remoteSideOnlyGetsOurTighterLimits() {
+        AudioProfile profile = AudioProfile.lowBandwidthVoice();
+        String remote = REMOTE_ANSWER
+                .replace(";usedtx=1;maxaveragebitrate=16000", ";usedtx=1")
+                .replace("a=ptime:60", "a=ptime:20");
+
+        String applied = profile.applyRemote(new SessionDescription(SessionDescription.Type.ANSWER, remote)).description;
+        assertEquals(remote
+                .replace(";usedtx=1", ";usedtx=1;maxaveragebitrate=20000")
+                .replace("a=ptime:20", "a=ptime:40"), applied);
+    }
+
+    @Test
+    public void localDescriptionOnlyGetsWhatTheProfileTurnsOn() {
+        AudioProfile profile = new AudioProfile();
+        profile.dtx = true;
+        String local = REMOTE_ANSWER.replace(";usedtx=1;maxaveragebitrate=16000", "");
+
+        String applied = profile.applyLocal(new SessionDescription(SessionDescription.Type.OFFER, local)).description;
+        assertEquals(local.replace("useinbandfec=1", "useinbandfec=1;usedtx=1"), applied);
+    }
+}
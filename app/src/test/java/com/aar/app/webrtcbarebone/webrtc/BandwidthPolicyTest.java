@@ -0,0 +1,102 @@
+package com.aar.app.webrtcbarebone.webrtc;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BandwidthPolicyTest {
+
+    private static final BandwidthPolicy POLICY = BandwidthPolicy.DEFAULT;
+    private static final int LOW = POLICY.getAudioOnlyBelowBps() - 1;
+    private static final int BETWEEN = (POLICY.getAudioOnlyBelowBps() + POLICY.getResumeVideoAboveBps()) / 2;
+    private static final int HIGH = POLICY.getResumeVideoAboveBps() + 1;
+
+    private final List<Boolean> mChanges = new ArrayList<>();
+    private BandwidthPolicy.AudioOnlyMonitor mMonitor;
+
+    @Before
+    public void setUp() {
+        mMonitor = new BandwidthPolicy.AudioOnlyMonitor(POLICY, mChanges::add);
+    }
+
+    @Test
+    public void profileFollowsTheNetworkType() {
+        BandwidthPolicy.Profile cellular = POLICY.getProfile(NetworkMonitor.NetworkType.CELLULAR);
+        assertSame(cellular, POLICY.getProfile(NetworkMonitor.NetworkType.UNKNOWN));
+        assertTrue(POLICY.getProfile(NetworkMonitor.NetworkType.WIFI).getMaxBps() > cellular.getMaxBps());
+        assertTrue(POLICY.getProfile(NetworkMonitor.NetworkType.ROAMING).getMaxBps() < cellular.getMaxBps());
+    }
+
+    @Test
+    public void estimatorFloorLetsTheEstimateReachTheThresholds() {
+        for (NetworkMonitor.NetworkType networkType : NetworkMonitor.NetworkType.values()) {
+            BandwidthPolicy.Profile profile = POLICY.getProfile(networkType);
+            assertEquals(profile.audio.minBps, profile.getMinBps());
+            assertTrue(networkType.toString(), profile.getMinBps() < POLICY.getAudioOnlyBelowBps());
+            assertTrue(networkType.toString(), profile.getMinBps() < profile.video.minBps);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void floorAboveTheAudioOnlyThresholdIsRejected() {
+        BandwidthPolicy.Profile profile = new BandwidthPolicy.Profile(
+                new BandwidthPolicy.Limits(100_000, 100_000, 100_000),
+                new BandwidthPolicy.Limits(100_000, 100_000, 100_000));
+        new BandwidthPolicy(profile, profile, profile, 80_000, 160_000);
+    }
+
+    @Test
+    public void suspendsAfterConsecutiveLowSamplesOnly() {
+        feed(LOW, BandwidthPolicy.AudioOnlyMonitor.SUSPEND_SAMPLES - 1);
+        feed(HIGH, 1);
+        feed(LOW, BandwidthPolicy.AudioOnlyMonitor.SUSPEND_SAMPLES - 1);
+        assertTrue(mChanges.isEmpty());
+
+        feed(LOW, 1);
+        assertEquals(Collections.singletonList(true), mChanges);
+        assertTrue(mMonitor.isSuspended());
+    }
+
+    @Test
+    public void resumesOnlyAboveTheResumeThreshold() {
+        feed(LOW, BandwidthPolicy.AudioOnlyMonitor.SUSPEND_SAMPLES);
+        // above the suspend threshold is not enough to resume
+        feed(BETWEEN, BandwidthPolicy.AudioOnlyMonitor.RESUME_SAMPLES + 2);
+        assertTrue(mMonitor.isSuspended());
+
+        feed(HIGH, BandwidthPolicy.AudioOnlyMonitor.RESUME_SAMPLES);
+        assertEquals(Arrays.asList(true, false), mChanges);
+        assertFalse(mMonitor.isSuspended());
+    }
+
+    @Test
+    public void probesVideoWhileSuspended() {
+        feed(LOW, BandwidthPolicy.AudioOnlyMonitor.SUSPEND_SAMPLES);
+        feed(LOW, BandwidthPolicy.AudioOnlyMonitor.PROBE_SAMPLES - 1);
+        assertTrue(mMonitor.isSuspended());
+
+        feed(LOW, 1);
+        assertFalse(mMonitor.isSuspended());
+        // a link that is still too slow suspends it again
+        feed(LOW, BandwidthPolicy.AudioOnlyMonitor.SUSPEND_SAMPLES);
+        assertEquals(Arrays.asList(true, false, true), mChanges);
+    }
+
+    @Test
+    public void missingEstimatesAreIgnored() {
+        feed(LOW, BandwidthPolicy.AudioOnlyMonitor.SUSPEND_SAMPLES - 1);
+        feed(StatsSampler.MISSING, 5);
+        feed(LOW, 1);
+        assertEquals(Collections.singletonList(true), mChanges);
+    }
+
+    private void feed(long availableSendBps, int samples) {
+        for (int i = 0; i < samples; i++) mMonitor.onAvailableSendBandwidth(availableSendBps);
+    }
+}
@@ -0,0 +1,53 @@
+package com.aar.app.webrtcbarebone.webrtc;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CallSetupTracerTest {
+
+    @Test
+    public void fork_keepsEarlierEventsAndSeparatesLaterOnes() throws InterruptedException {
+        CallSetupTracer session = new CallSetupTracer();
+        session.record(CallSetupTracer.Event.SIGNALING_CONNECT_START);
+        session.record(CallSetupTracer.Event.SIGNALING_CONNECTED);
+
+        CallSetupTracer first = session.fork();
+        CallSetupTracer second = session.fork();
+        Thread.sleep(2);
+        first.record(CallSetupTracer.Event.OFFER_SENT);
+        second.record(CallSetupTracer.Event.OFFER_SENT);
+        first.record(CallSetupTracer.Event.ANSWER_RECEIVED);
+
+        assertEquals(session.getDurationMs(CallSetupTracer.Event.SIGNALING_CONNECT_START, CallSetupTracer.Event.SIGNALING_CONNECTED),
+                first.getDurationMs(CallSetupTracer.Event.SIGNALING_CONNECT_START, CallSetupTracer.Event.SIGNALING_CONNECTED), 0);
+        assertTrue(first.getDurationMs(CallSetupTracer.Event.SIGNALING_CONNECT_START, CallSetupTracer.Event.OFFER_SENT) >= 2);
+        assertTrue(first.getDurationMs(CallSetupTracer.Event.OFFER_SENT, CallSetupTracer.Event.ANSWER_RECEIVED) >= 0);
+        // the other peer's answer is not mixed in
+        assertEquals(-1, second.getDurationMs(CallSetupTracer.Event.OFFER_SENT, CallSetupTracer.Event.ANSWER_RECEIVED), 0);
+        assertEquals(-1, session.getDurationMs(CallSetupTracer.Event.SIGNALING_CONNECT_START, CallSetupTracer.Event.OFFER_SENT), 0);
+    }
+
+    @Test
+    public void firstFrame_isMeasuredFromTheOffer() throws InterruptedException {
+        CallSetupTracer caller = new CallSetupTracer();
+        caller.record(CallSetupTracer.Event.SIGNALING_CONNECT_START);
+        Thread.sleep(20);
+        caller.record(CallSetupTracer.Event.OFFER_SENT);
+        caller.record(CallSetupTracer.Event.FIRST_REMOTE_FRAME);
+        assertEquals(caller.getDurationMs(CallSetupTracer.Event.OFFER_SENT, CallSetupTracer.Event.FIRST_REMOTE_FRAME),
+                caller.getFirstFrameMs(), 0);
+        assertTrue(caller.getFirstFrameMs() < 20);
+
+        CallSetupTracer callee = new CallSetupTracer();
+        callee.record(CallSetupTracer.Event.SIGNALING_CONNECT_START);
+        Thread.sleep(20);
+        callee.record(CallSetupTracer.Event.OFFER_RECEIVED);
+        callee.record(CallSetupTracer.Event.FIRST_REMOTE_FRAME);
+        assertEquals(callee.getDurationMs(CallSetupTracer.Event.OFFER_RECEIVED, CallSetupTracer.Event.FIRST_REMOTE_FRAME),
+                callee.getFirstFrameMs(), 0);
+        assertTrue(callee.getFirstFrameMs() < 20);
+
+        assertEquals(-1, new CallSetupTracer().getFirstFrameMs(), 0);
+    }
+}
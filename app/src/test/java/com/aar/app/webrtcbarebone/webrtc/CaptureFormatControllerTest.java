@@ -0,0 +1,86 @@
+package com.aar.app.webrtcbarebone.webrtc;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CaptureFormatControllerTest {
+
+    private static final CaptureFormatController.Format[] LADDER = CaptureFormatController.DEFAULT_LADDER;
+
+    // format changes queued for the camera, never run so no camera is needed
+    private final List<Runnable> mCameraTasks = new ArrayList<>();
+
+    @Test
+    public void stepsDownAfterTwoBadSamples() {
+        CaptureFormatController controller = controller(2);
+
+        controller.adapt(LADDER[2].minBitrateBps - 1, false, 50, 0);
+        assertSame(LADDER[2], controller.getCurrentFormat());
+        controller.adapt(LADDER[2].minBitrateBps - 1, false, 50, 0);
+        assertSame(LADDER[1], controller.getCurrentFormat());
+        assertEquals(1, mCameraTasks.size());
+    }
+
+    @Test
+    public void goodSampleResetsTheBadCount() {
+        CaptureFormatController controller = controller(2);
+
+        controller.adapt(5_000_000, true, 50, 0);
+        controller.adapt(5_000_000, false, 50, 0);
+        controller.adapt(5_000_000, false, 90, 0);
+        assertSame(LADDER[2], controller.getCurrentFormat());
+        controller.adapt(5_000_000, false, 50, 0.5);
+        assertSame(LADDER[1], controller.getCurrentFormat());
+    }
+
+    @Test
+    public void stepsUpAfterFiveGoodSamples() {
+        CaptureFormatController controller = controller(1);
+        long bps = (long) (LADDER[2].minBitrateBps * 1.3) + 1;
+
+        for (int i = 0; i < 4; i++) controller.adapt(bps, false, 50, 0);
+        assertSame(LADDER[1], controller.getCurrentFormat());
+        controller.adapt(bps, false, 50, 0);
+        assertSame(LADDER[2], controller.getCurrentFormat());
+        assertEquals(1, mCameraTasks.size());
+    }
+
+    @Test
+    public void needsHeadroomOverTheNextLevelToStepUp() {
+        CaptureFormatController controller = controller(1);
+        long bps = (long) (LADDER[2].minBitrateBps * 1.3);
+
+        for (int i = 0; i < 20; i++) controller.adapt(bps, false, 50, 0);
+        assertSame(LADDER[1], controller.getCurrentFormat());
+        assertTrue(mCameraTasks.isEmpty());
+    }
+
+    @Test
+    public void staysWithinTheLadder() {
+        CaptureFormatController top = controller(LADDER.length - 1);
+        for (int i = 0; i < 20; i++) top.adapt(100_000_000, false, 10, 0);
+        assertSame(LADDER[LADDER.length - 1], top.getCurrentFormat());
+
+        CaptureFormatController bottom = controller(0);
+        for (int i = 0; i < 20; i++) bottom.adapt(0, true, 100, 1);
+        assertSame(LADDER[0], bottom.getCurrentFormat());
+
+        assertTrue(mCameraTasks.isEmpty());
+    }
+
+    @Test
+    public void missingBandwidthIsIgnored() {
+        CaptureFormatController controller = controller(2);
+
+        for (int i = 0; i < 5; i++) controller.adapt(StatsSampler.MISSING, true, 100, 1);
+        assertSame(LADDER[2], controller.getCurrentFormat());
+    }
+
+    private CaptureFormatController controller(int initialLevel) {
+        return new CaptureFormatController(null, mCameraTasks::add, LADDER, initialLevel);
+    }
+}
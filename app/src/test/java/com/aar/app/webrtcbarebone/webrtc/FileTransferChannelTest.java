@@ -0,0 +1,274 @@
+package com.aar.app.webrtcbarebone.webrtc;
+
+import org.junit.After;
+import org.junit.Test;
+import org.webrtc.DataChannel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+public class FileTransferChannelTest {
+
+    private static final long TIMEOUT_MS = 5_000;
+
+    private final FakeDataChannel mSenderChannel = new FakeDataChannel();
+    private final FakeDataChannel mReceiverChannel = new FakeDataChannel();
+    private final FileTransferChannel mSender = new FileTransferChannel(mSenderChannel);
+    private final FileTransferChannel mReceiver = new FileTransferChannel(mReceiverChannel);
+    private final RecordingReceiver mSink = new RecordingReceiver();
+    private final RecordingListener mListener = new RecordingListener();
+
+    @After
+    public void tearDown() {
+        mSink.mWriteGate.countDown();
+        mSender.close();
+        mReceiver.close();
+    }
+
+    @Test
+    public void contentIsSentInChunksAndVerified() throws InterruptedException {
+        connect();
+        byte[] content = randomBytes(2 * FileTransferChannel.CHUNK_SIZE + 7_232);
+
+        mSender.send(new BytesSource(content), "a.bin", content.length, mListener);
+        assertTrue(mListener.mDone.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+        assertEquals(Arrays.asList(FileTransferChannel.CHUNK_SIZE, FileTransferChannel.CHUNK_SIZE, 7_232),
+                mSenderChannel.binarySizes());
+        assertArrayEquals(content, mSink.mContent.toByteArray());
+        assertEquals(Collections.singletonList(true), mSink.mVerified);
+        assertEquals(Collections.singletonList(true), mListener.mVerified);
+    }
+
+    @Test
+    public void digestMismatchIsReportedToBothSides() throws InterruptedException {
+        connect();
+        mSenderChannel.mCorrupt = true;
+        byte[] content = randomBytes(FileTransferChannel.CHUNK_SIZE + 1);
+
+        mSender.send(new BytesSource(content), "a.bin", content.length, mListener);
+        assertTrue(mListener.mDone.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+        assertEquals(Collections.singletonList(false), mSink.mVerified);
+        assertEquals(Collections.singletonList(false), mListener.mVerified);
+    }
+
+    @Test
+    public void highWatermarkPausesSendingUntilTheBufferDrains() throws InterruptedException {
+        mSenderChannel.mBufferedAmount = FileTransferChannel.HIGH_WATERMARK;
+        byte[] content = randomBytes(3 * FileTransferChannel.CHUNK_SIZE);
+
+        mSender.send(new BytesSource(content), "a.bin", content.length, mListener);
+        await(() -> mSenderChannel.textCount() == 1);
+        Thread.sleep(100);
+        assertEquals(0, mSenderChannel.binarySizes().size());
+
+        // still above the low watermark
+        mSenderChannel.mBufferedAmount = FileTransferChannel.LOW_WATERMARK + 1;
+        mSenderChannel.mObserver.onBufferedAmountChange(FileTransferChannel.HIGH_WATERMARK);
+        Thread.sleep(100);
+        assertEquals(0, mSenderChannel.binarySizes().size());
+
+        mSenderChannel.mBufferedAmount = FileTransferChannel.LOW_WATERMARK;
+        mSenderChannel.mObserver.onBufferedAmountChange(FileTransferChannel.LOW_WATERMARK + 1);
+        // the three chunks and the end message
+        await(() -> mSenderChannel.binarySizes().size() == 3 && mSenderChannel.textCount() == 2);
+    }
+
+    @Test
+    public void slowSinkHoldsTheSenderAtOneWindow() throws InterruptedException {
+        connect();
+        mSink.mWriteGate = new CountDownLatch(1);
+        byte[] content = randomBytes(3 * FileTransferChannel.WINDOW_CHUNKS * FileTransferChannel.CHUNK_SIZE);
+
+        mSender.send(new BytesSource(content), "a.bin", content.length, mListener);
+        await(() -> mSenderChannel.binarySizes().size() == FileTransferChannel.WINDOW_CHUNKS);
+        Thread.sleep(100);
+        assertEquals(FileTransferChannel.WINDOW_CHUNKS, mSenderChannel.binarySizes().size());
+
+        mSink.mWriteGate.countDown();
+        assertTrue(mListener.mDone.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertArrayEquals(content, mSink.mContent.toByteArray());
+        assertEquals(Collections.singletonList(true), mListener.mVerified);
+    }
+
+    private void connect() {
+        mSenderChannel.mPeer = mReceiverChannel;
+        mReceiverChannel.mPeer = mSenderChannel;
+        mReceiver.setReceiver(mSink);
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.getAsBoolean()) {
+            assertTrue("timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Open channel delivering what is sent to its peer right away, on the sending thread
+     */
+    private static class FakeDataChannel extends DataChannel {
+        volatile Observer mObserver;
+        volatile FakeDataChannel mPeer;
+        volatile long mBufferedAmount = 0;
+        volatile boolean mCorrupt = false;
+        // sizes of the binary messages, -1 for text messages
+        private final List<Integer> mSent = Collections.synchronizedList(new ArrayList<>());
+
+        FakeDataChannel() {
+            super(0);
+        }
+
+        @Override
+        public void registerObserver(Observer observer) {
+            mObserver = observer;
+        }
+
+        @Override
+        public void unregisterObserver() {
+            mObserver = null;
+        }
+
+        @Override
+        public State state() {
+            return State.OPEN;
+        }
+
+        @Override
+        public long bufferedAmount() {
+            return mBufferedAmount;
+        }
+
+        @Override
+        public boolean send(Buffer buffer) {
+            byte[] bytes = new byte[buffer.data.remaining()];
+            buffer.data.get(bytes);
+            if (buffer.binary && mCorrupt) bytes[0] ^= 1;
+            mSent.add(buffer.binary ? bytes.length : -1);
+
+            FakeDataChannel peer = mPeer;
+            Observer observer = peer != null ? peer.mObserver : null;
+            if (observer != null) observer.onMessage(new Buffer(ByteBuffer.wrap(bytes), buffer.binary));
+            return true;
+        }
+
+        @Override
+        public void close() { }
+
+        @Override
+        public void dispose() { }
+
+        List<Integer> binarySizes() {
+            List<Integer> sizes = new ArrayList<>();
+            synchronized (mSent) {
+                for (int size : mSent) if (size >= 0) sizes.add(size);
+            }
+            return sizes;
+        }
+
+        int textCount() {
+            synchronized (mSent) {
+                return Collections.frequency(mSent, -1);
+            }
+        }
+    }
+
+    private static class BytesSource implements ReadableByteChannel {
+        private final ByteBuffer mContent;
+
+        BytesSource(byte[] content) {
+            mContent = ByteBuffer.wrap(content);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (!mContent.hasRemaining()) return -1;
+            ByteBuffer slice = mContent.duplicate();
+            slice.limit(slice.position() + Math.min(dst.remaining(), slice.remaining()));
+            int read = slice.remaining();
+            dst.put(slice);
+            mContent.position(mContent.position() + read);
+            return read;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() { }
+    }
+
+    private static class RecordingListener implements FileTransferChannel.Listener {
+        final List<Boolean> mVerified = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch mDone = new CountDownLatch(1);
+
+        @Override
+        public void onProgress(FileTransferChannel.Transfer transfer) { }
+
+        @Override
+        public void onComplete(FileTransferChannel.Transfer transfer, boolean verified) {
+            mVerified.add(verified);
+            mDone.countDown();
+        }
+
+        @Override
+        public void onError(FileTransferChannel.Transfer transfer, Exception error) {
+            mDone.countDown();
+        }
+    }
+
+    private static class RecordingReceiver extends RecordingListener implements FileTransferChannel.Receiver {
+        final ByteArrayOutputStream mContent = new ByteArrayOutputStream();
+        volatile CountDownLatch mWriteGate = new CountDownLatch(0);
+
+        @Override
+        public WritableByteChannel openSink(FileTransferChannel.Transfer transfer) {
+            return new WritableByteChannel() {
+                @Override
+                public int write(ByteBuffer src) throws IOException {
+                    try {
+                        mWriteGate.await();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                    int length = src.remaining();
+                    byte[] bytes = new byte[length];
+                    src.get(bytes);
+                    mContent.write(bytes, 0, length);
+                    return length;
+                }
+
+                @Override
+                public boolean isOpen() {
+                    return true;
+                }
+
+                @Override
+                public void close() { }
+            };
+        }
+    }
+}
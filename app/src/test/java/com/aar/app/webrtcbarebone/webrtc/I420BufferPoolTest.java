@@ -0,0 +1,68 @@
+package com.aar.app.webrtcbarebone.webrtc;
+
+import org.junit.Test;
+import org.webrtc.JavaI420Buffer;
+import org.webrtc.VideoFrame;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class I420BufferPoolTest {
+
+    @Test
+    public void copyDropsTheSourceStride() {
+        // 3x2 luma in rows of 5, 2x1 chroma in rows of 4
+        VideoFrame.I420Buffer source = JavaI420Buffer.wrap(3, 2,
+                plane(1, 2, 3, 0, 0, 4, 5, 6, 0, 0), 5,
+                plane(7, 8, 0, 0), 4,
+                plane(9, 10, 0, 0), 4,
+                null);
+        VideoFrame.I420Buffer copy = new I420BufferPool().copy(source);
+
+        assertArrayEquals(new int[] {1, 2, 3, 4, 5, 6}, values(copy.getDataY(), 6));
+        assertArrayEquals(new int[] {7, 8}, values(copy.getDataU(), 2));
+        assertArrayEquals(new int[] {9, 10}, values(copy.getDataV(), 2));
+        copy.release();
+    }
+
+    @Test
+    public void releasedBuffersAreReused() {
+        I420BufferPool pool = new I420BufferPool(1);
+        VideoFrame.I420Buffer first = pool.acquire(4, 4);
+        VideoFrame.I420Buffer second = pool.acquire(4, 4);
+        first.release();
+        second.release();
+        pool.acquire(4, 4).release();
+        pool.acquire(4, 4).release();
+
+        // the second release found the pool full
+        assertEquals(2, pool.getAllocationCount());
+        assertEquals(2, pool.getReuseCount());
+    }
+
+    @Test
+    public void resolutionChangeDropsPooledBuffers() {
+        I420BufferPool pool = new I420BufferPool();
+        VideoFrame.I420Buffer small = pool.acquire(4, 4);
+        pool.acquire(8, 8).release();
+        // released after the change, too small for the pool's buffers
+        small.release();
+        pool.acquire(4, 4).release();
+
+        assertEquals(3, pool.getAllocationCount());
+        assertEquals(0, pool.getReuseCount());
+    }
+
+    private static ByteBuffer plane(int... values) {
+        ByteBuffer plane = ByteBuffer.allocateDirect(values.length);
+        for (int i = 0; i < values.length; i++) plane.put(i, (byte) values[i]);
+        return plane;
+    }
+
+    private static int[] values(ByteBuffer plane, int length) {
+        int[] values = new int[length];
+        for (int i = 0; i < length; i++) values[i] = plane.get(i) & 0xff;
+        return values;
+    }
+}
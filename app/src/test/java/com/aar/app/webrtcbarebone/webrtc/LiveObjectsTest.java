@@ -0,0 +1,40 @@
+package com.aar.app.webrtcbarebone.webrtc;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LiveObjectsTest {
+
+    @After
+    public void tearDown() {
+        assertEquals(0, LiveObjects.getTotal());
+    }
+
+    @Test
+    public void countsDropToZeroWhenEverythingIsDisposed() {
+        LiveObjects.onCreated(LiveObjects.Kind.PEER_CONNECTION);
+        LiveObjects.onCreated(LiveObjects.Kind.PEER_CONNECTION);
+        LiveObjects.onCreated(LiveObjects.Kind.CAMERA_CAPTURER);
+        assertEquals(2, LiveObjects.get(LiveObjects.Kind.PEER_CONNECTION));
+        assertEquals(3, LiveObjects.getTotal());
+        assertEquals("PEER_CONNECTION=2 CAMERA_CAPTURER=1", LiveObjects.describe());
+
+        LiveObjects.onDisposed(LiveObjects.Kind.PEER_CONNECTION);
+        LiveObjects.onDisposed(LiveObjects.Kind.CAMERA_CAPTURER);
+        LiveObjects.onDisposed(LiveObjects.Kind.PEER_CONNECTION);
+        assertEquals(0, LiveObjects.get(LiveObjects.Kind.PEER_CONNECTION));
+        assertEquals("", LiveObjects.describe());
+    }
+
+    @Test
+    public void disposingMoreThanCreatedIsCountedAndKeepsTheCount() {
+        int unbalanced = LiveObjects.getUnbalancedDisposals();
+        LiveObjects.onCreated(LiveObjects.Kind.SURFACE_TEXTURE_HELPER);
+        LiveObjects.onDisposed(LiveObjects.Kind.SURFACE_TEXTURE_HELPER);
+        LiveObjects.onDisposed(LiveObjects.Kind.SURFACE_TEXTURE_HELPER);
+        assertEquals(0, LiveObjects.get(LiveObjects.Kind.SURFACE_TEXTURE_HELPER));
+        assertEquals(unbalanced + 1, LiveObjects.getUnbalancedDisposals());
+    }
+}
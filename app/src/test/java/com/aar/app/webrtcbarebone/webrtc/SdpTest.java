@@ -0,0 +1,309 @@
+package com.aar.app.webrtcbarebone.webrtc;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SdpTest {
+
+    // google-webrtc on android
+    private static final String ANDROID_OFFER = "v=0\r\n"
+            + "o=- 4611731400430051336 2 IN IP4 127.0.0.1\r\n"
+            + "s=-\r\n"
+            + "t=0 0\r\n"
+            + "a=group:BUNDLE audio video\r\n"
+            + "a=msid-semantic: WMS ARDAMS\r\n"
+            + "m=audio 9 UDP/TLS/RTP/SAVPF 111 103 104 9 102 0 8 106 105 13 110 112 113 126\r\n"
+            + "c=IN IP4 0.0.0.0\r\n"
+            + "a=rtcp:9 IN IP4 0.0.0.0\r\n"
+            + "a=ice-ufrag:ZbV5\r\n"
+            + "a=ice-pwd:0LtKrL9oEQ4Dc9HXNe9fTZMH\r\n"
+            + "a=ice-options:trickle renomination\r\n"
+            + "a=fingerprint:sha-256 9D:2A:6E:61:25:FD:E6:36:1B:7A:35:61:05:C4:6F:52:D3:3E:AA:7E:6E:C5:7B:22:FA:67:CE:D5:D5:28:6C:D9\r\n"
+            + "a=setup:actpass\r\n"
+            + "a=mid:audio\r\n"
+            + "a=extmap:1 urn:ietf:params:rtp-hdrext:ssrc-audio-level\r\n"
+            + "a=sendrecv\r\n"
+            + "a=rtcp-mux\r\n"
+            + "a=rtpmap:111 opus/48000/2\r\n"
+            + "a=rtcp-fb:111 transport-cc\r\n"
+            + "a=fmtp:111 minptime=10;useinbandfec=1\r\n"
+            + "a=rtpmap:103 ISAC/16000\r\n"
+            + "a=rtpmap:0 PCMU/8000\r\n"
+            + "a=ssrc:3145212938 cname:kNOnbKcxuFOo4Hx/\r\n"
+            + "a=ssrc:3145212938 msid:ARDAMS ARDAMSa0\r\n"
+            + "a=ssrc:3145212938 mslabel:ARDAMS\r\n"
+            + "a=ssrc:3145212938 label:ARDAMSa0\r\n"
+            + "m=video 9 UDP/TLS/RTP/SAVPF 96 97 98 99 100 101 127\r\n"
+            + "c=IN IP4 0.0.0.0\r\n"
+            + "a=rtcp:9 IN IP4 0.0.0.0\r\n"
+            + "a=ice-ufrag:ZbV5\r\n"
+            + "a=ice-pwd:0LtKrL9oEQ4Dc9HXNe9fTZMH\r\n"
+            + "a=setup:actpass\r\n"
+            + "a=mid:video\r\n"
+            + "a=extmap:14 urn:ietf:params:rtp-hdrext:toffset\r\n"
+            + "a=extmap:2 http://www.webrtc.org/experiments/rtp-hdrext/abs-send-time\r\n"
+            + "a=sendrecv\r\n"
+            + "a=rtcp-mux\r\n"
+            + "a=rtcp-rsize\r\n"
+            + "a=rtpmap:96 VP8/90000\r\n"
+            + "a=rtcp-fb:96 goog-remb\r\n"
+            + "a=rtcp-fb:96 transport-cc\r\n"
+            + "a=rtcp-fb:96 ccm fir\r\n"
+            + "a=rtcp-fb:96 nack\r\n"
+            + "a=rtcp-fb:96 nack pli\r\n"
+            + "a=rtpmap:97 rtx/90000\r\n"
+            + "a=fmtp:97 apt=96\r\n"
+            + "a=ssrc-group:FID 2590348744 1281512330\r\n"
+            + "a=ssrc:2590348744 cname:kNOnbKcxuFOo4Hx/\r\n"
+            + "a=ssrc:2590348744 msid:ARDAMS ARDAMSv0\r\n"
+            + "a=ssrc:2590348744 mslabel:ARDAMS\r\n"
+            + "a=ssrc:2590348744 label:ARDAMSv0\r\n";
+
+    // desktop chrome, several h264 profiles, red/ulpfec and a data channel
+    private static final String CHROME_OFFER = "v=0\r\n"
+            + "o=- 1837933589686018726 2 IN IP4 127.0.0.1\r\n"
+            + "s=-\r\n"
+            + "t=0 0\r\n"
+            + "a=group:BUNDLE audio video data\r\n"
+            + "a=msid-semantic: WMS 5nYd1mVh3uVtLPNc8XBvXkIkh9fhqN6nrb1J\r\n"
+            + "m=audio 9 UDP/TLS/RTP/SAVPF 111 103 104 9 0 8 106 105 13 110 112 113 126\r\n"
+            + "c=IN IP4 0.0.0.0\r\n"
+            + "a=rtcp:9 IN IP4 0.0.0.0\r\n"
+            + "a=ice-ufrag:Ue7s\r\n"
+            + "a=ice-pwd:b8RnfpUm3F2Ez2nA0K7QDr6G\r\n"
+            + "a=ice-options:trickle\r\n"
+            + "a=fingerprint:sha-256 5B:1F:3E:8B:36:0C:8D:D0:6E:67:3B:3F:7B:2C:25:C5:0F:35:5A:A4:1E:0B:30:0E:9E:CB:23:6E:2C:11:A5:1D\r\n"
+            + "a=setup:actpass\r\n"
+            + "a=mid:audio\r\n"
+            + "a=extmap:1 urn:ietf:params:rtp-hdrext:ssrc-audio-level\r\n"
+            + "a=sendrecv\r\n"
+            + "a=rtcp-mux\r\n"
+            + "a=rtpmap:111 opus/48000/2\r\n"
+            + "a=rtcp-fb:111 transport-cc\r\n"
+            + "a=fmtp:111 minptime=10; useinbandfec=1\r\n"
+            + "a=rtpmap:103 ISAC/16000\r\n"
+            + "a=rtpmap:104 ISAC/32000\r\n"
+            + "a=rtpmap:9 G722/8000\r\n"
+            + "a=rtpmap:0 PCMU/8000\r\n"
+            + "a=rtpmap:8 PCMA/8000\r\n"
+            + "a=rtpmap:106 CN/32000\r\n"
+            + "a=rtpmap:105 CN/16000\r\n"
+            + "a=rtpmap:13 CN/8000\r\n"
+            + "a=rtpmap:110 telephone-event/48000\r\n"
+            + "a=rtpmap:112 telephone-event/32000\r\n"
+            + "a=rtpmap:113 telephone-event/16000\r\n"
+            + "a=rtpmap:126 telephone-event/8000\r\n"
+            + "a=ssrc:1932542516 cname:u6Vu5WzE8UuQz3Lp\r\n"
+            + "a=ssrc:1932542516 msid:5nYd1mVh3uVtLPNc8XBvXkIkh9fhqN6nrb1J 0d6e1b32-4b43-4a5c-9d1d-5c1d4c7c3f3b\r\n"
+            + "m=video 9 UDP/TLS/RTP/SAVPF 96 97 98 99 100 101 102 122 127 121 125 107 108 109 124 120 123 119 114 115 116\r\n"
+            + "c=IN IP4 0.0.0.0\r\n"
+            + "a=rtcp:9 IN IP4 0.0.0.0\r\n"
+            + "a=ice-ufrag:Ue7s\r\n"
+            + "a=ice-pwd:b8RnfpUm3F2Ez2nA0K7QDr6G\r\n"
+            + "a=ice-options:trickle\r\n"
+            + "a=fingerprint:sha-256 5B:1F:3E:8B:36:0C:8D:D0:6E:67:3B:3F:7B:2C:25:C5:0F:35:5A:A4:1E:0B:30:0E:9E:CB:23:6E:2C:11:A5:1D\r\n"
+            + "a=setup:actpass\r\n"
+            + "a=mid:video\r\n"
+            + "a=extmap:2 urn:ietf:params:rtp-hdrext:toffset\r\n"
+            + "a=extmap:3 http://www.webrtc.org/experiments/rtp-hdrext/abs-send-time\r\n"
+            + "a=extmap:4 urn:3gpp:video-orientation\r\n"
+            + "a=sendrecv\r\n"
+            + "a=rtcp-mux\r\n"
+            + "a=rtcp-rsize\r\n"
+            + "a=rtpmap:96 VP8/90000\r\n"
+            + "a=rtcp-fb:96 goog-remb\r\n"
+            + "a=rtcp-fb:96 transport-cc\r\n"
+            + "a=rtcp-fb:96 ccm fir\r\n"
+            + "a=rtcp-fb:96 nack\r\n"
+            + "a=rtcp-fb:96 nack pli\r\n"
+            + "a=rtpmap:97 rtx/90000\r\n"
+            + "a=fmtp:97 apt=96\r\n"
+            + "a=rtpmap:98 VP9/90000\r\n"
+            + "a=rtcp-fb:98 nack pli\r\n"
+            + "a=fmtp:98 profile-id=0\r\n"
+            + "a=rtpmap:99 rtx/90000\r\n"
+            + "a=fmtp:99 apt=98\r\n"
+            + "a=rtpmap:100 VP9/90000\r\n"
+            + "a=fmtp:100 profile-id=2\r\n"
+            + "a=rtpmap:101 rtx/90000\r\n"
+            + "a=fmtp:101 apt=100\r\n"
+            + "a=rtpmap:102 H264/90000\r\n"
+            + "a=rtcp-fb:102 nack pli\r\n"
+            + "a=fmtp:102 level-asymmetry-allowed=1;packetization-mode=1;profile-level-id=42001f\r\n"
+            + "a=rtpmap:122 rtx/90000\r\n"
+            + "a=fmtp:122 apt=102\r\n"
+            + "a=rtpmap:127 H264/90000\r\n"
+            + "a=fmtp:127 level-asymmetry-allowed=1;packetization-mode=0;profile-level-id=42001f\r\n"
+            + "a=rtpmap:121 rtx/90000\r\n"
+            + "a=fmtp:121 apt=127\r\n"
+            + "a=rtpmap:125 H264/90000\r\n"
+            + "a=fmtp:125 level-asymmetry-allowed=1;packetization-mode=1;profile-level-id=42e01f\r\n"
+            + "a=rtpmap:107 rtx/90000\r\n"
+            + "a=fmtp:107 apt=125\r\n"
+            + "a=rtpmap:108 H264/90000\r\n"
+            + "a=fmtp:108 level-asymmetry-allowed=1;packetization-mode=0;profile-level-id=42e01f\r\n"
+            + "a=rtpmap:109 rtx/90000\r\n"
+            + "a=fmtp:109 apt=108\r\n"
+            + "a=rtpmap:124 H264/90000\r\n"
+            + "a=fmtp:124 level-asymmetry-allowed=1;packetization-mode=1;profile-level-id=4d0032\r\n"
+            + "a=rtpmap:120 rtx/90000\r\n"
+            + "a=fmtp:120 apt=124\r\n"
+            + "a=rtpmap:123 H264/90000\r\n"
+            + "a=fmtp:123 level-asymmetry-allowed=1;packetization-mode=1;profile-level-id=640032\r\n"
+            + "a=rtpmap:119 rtx/90000\r\n"
+            + "a=fmtp:119 apt=123\r\n"
+            + "a=rtpmap:114 red/90000\r\n"
+            + "a=rtpmap:115 rtx/90000\r\n"
+            + "a=fmtp:115 apt=114\r\n"
+            + "a=rtpmap:116 ulpfec/90000\r\n"
+            + "a=ssrc-group:FID 3531316447 2410599442\r\n"
+            + "a=ssrc:3531316447 cname:u6Vu5WzE8UuQz3Lp\r\n"
+            + "a=ssrc:3531316447 msid:5nYd1mVh3uVtLPNc8XBvXkIkh9fhqN6nrb1J 6b5ae8c6-0a5e-4c4b-94f4-3e2c1a8f7d60\r\n"
+            + "a=ssrc:2410599442 cname:u6Vu5WzE8UuQz3Lp\r\n"
+            + "a=ssrc:2410599442 msid:5nYd1mVh3uVtLPNc8XBvXkIkh9fhqN6nrb1J 6b5ae8c6-0a5e-4c4b-94f4-3e2c1a8f7d60\r\n"
+            + "m=application 9 DTLS/SCTP 5000\r\n"
+            + "c=IN IP4 0.0.0.0\r\n"
+            + "a=ice-ufrag:Ue7s\r\n"
+            + "a=ice-pwd:b8RnfpUm3F2Ez2nA0K7QDr6G\r\n"
+            + "a=ice-options:trickle\r\n"
+            + "a=fingerprint:sha-256 5B:1F:3E:8B:36:0C:8D:D0:6E:67:3B:3F:7B:2C:25:C5:0F:35:5A:A4:1E:0B:30:0E:9E:CB:23:6E:2C:11:A5:1D\r\n"
+            + "a=setup:actpass\r\n"
+            + "a=mid:data\r\n"
+            + "a=sctpmap:5000 webrtc-datachannel 1024\r\n";
+
+    @Test
+    public void unchangedOfferIsSerializedVerbatim() {
+        for (String offer : new String[] {ANDROID_OFFER, CHROME_OFFER}) {
+            assertSame(offer, Sdp.parse(offer).toString());
+        }
+        assertEquals(ANDROID_OFFER, Sdp.parse(ANDROID_OFFER.replace("\r\n", "\n")).toString());
+        assertEquals(ANDROID_OFFER, Sdp.parse(ANDROID_OFFER + "\r\n").toString());
+    }
+
+    @Test
+    public void parsesSectionsAttributesAndPayloadMaps() {
+        Sdp sdp = Sdp.parse(CHROME_OFFER);
+        assertEquals("BUNDLE audio video data", sdp.getSession().getAttribute("group"));
+        assertEquals(3, sdp.getMediaCount());
+        assertEquals("application", sdp.getMedia(2).getType());
+        assertNull(sdp.findMedia("vid"));
+
+        Sdp.Media video = sdp.findMedia("video");
+        assertEquals("video", video.getAttribute("mid"));
+        assertEquals("", video.getAttribute("rtcp-mux"));
+        assertNull(video.getAttribute("rtcp-mu"));
+        assertEquals(21, video.getPayloadTypes().size());
+        assertEquals(Arrays.asList("102", "127", "125", "108", "124", "123"), video.findPayloadTypes("h264"));
+        assertEquals("ulpfec", video.getCodecs().get("116"));
+
+        Map<String, String> fmtp = video.getFmtp("125");
+        assertEquals(Arrays.asList("level-asymmetry-allowed", "packetization-mode", "profile-level-id"),
+                Arrays.asList(fmtp.keySet().toArray()));
+        assertEquals("42e01f", fmtp.get("profile-level-id"));
+        assertTrue(video.getFmtp("96").isEmpty());
+        assertEquals("1", sdp.findMedia("audio").getFmtp("111").get("useinbandfec"));
+    }
+
+    @Test
+    public void mutationsOnlyRewriteTheChangedLines() {
+        Sdp sdp = Sdp.parse(ANDROID_OFFER);
+        Sdp.Media audio = sdp.findMedia("audio");
+        audio.setAttribute("ptime", "40");
+        audio.setPayloadTypes(Arrays.asList("111", "0"));
+        Map<String, String> fmtp = new LinkedHashMap<>();
+        fmtp.put("apt", "96");
+        audio.setFmtp("0", fmtp);
+        assertEquals(4, audio.removeAttributes("ssrc"));
+
+        String expected = ANDROID_OFFER
+                .replace("111 103 104 9 102 0 8 106 105 13 110 112 113 126", "111 0")
+                .replace("a=rtpmap:0 PCMU/8000\r\n", "a=rtpmap:0 PCMU/8000\r\na=fmtp:0 apt=96\r\n")
+                .replaceAll("a=ssrc:3145212938 [^\r]*\r\n", "")
+                .replace("m=video", "a=ptime:40\r\nm=video");
+        assertEquals(expected, sdp.toString());
+
+        // the video section still starts at its m= line after the audio one changed size
+        Sdp.Media video = sdp.findMedia("video");
+        assertTrue(video.getLines().get(0).startsWith("m=video "));
+        video.addAttribute("x-google-flag", null);
+        assertTrue(sdp.toString().endsWith("a=ssrc:2590348744 label:ARDAMSv0\r\na=x-google-flag\r\n"));
+        assertEquals(1, video.removeAttributes("x-google-flag"));
+        video.setFmtp("97", Collections.<String, String>emptyMap());
+        assertFalse(sdp.toString().contains("a=fmtp:97"));
+    }
+
+    @Test
+    public void mediaLinesCannotBeAddedRemovedOrReplacedByOtherLines() {
+        Sdp sdp = Sdp.parse(ANDROID_OFFER);
+        int videoLine = sdp.findMedia("video").start();
+        try {
+            sdp.insertLine(videoLine, "m=audio 9 UDP/TLS/RTP/SAVPF 0");
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            sdp.removeLine(videoLine);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            sdp.setLine(videoLine, "a=inactive");
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            sdp.setLine(0, "m=audio 9 UDP/TLS/RTP/SAVPF 0");
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        assertSame(ANDROID_OFFER, sdp.toString());
+    }
+
+    @Test
+    public void mungersKeepEverythingButWhatTheyChange() {
+        String preferred = VideoCodecPolicy.preferCodecs(CHROME_OFFER, Arrays.asList("H264", "VP8", "VP9"));
+        assertEquals(CHROME_OFFER.replace("96 97 98 99 100 101 102 122 127 121 125 107 108 109 124 120 123 119",
+                "102 127 125 108 124 123 96 98 100 97 99 101 122 121 107 109 120 119"), preferred);
+
+        Map<String, String> opus = new LinkedHashMap<>();
+        opus.put("usedtx", "1");
+        opus.put("useinbandfec", "1");
+        String applied = AudioProfile.applyOpusParameters(CHROME_OFFER, opus, 40);
+        assertEquals(CHROME_OFFER
+                .replace("a=fmtp:111 minptime=10; useinbandfec=1", "a=fmtp:111 minptime=10;useinbandfec=1;usedtx=1")
+                .replace("m=video", "a=ptime:40\r\nm=video"), applied);
+
+        Sdp simulcast = Sdp.parse(Simulcast.addLayerSsrcs(ANDROID_OFFER, 3, new Random(1)));
+        List<String> groups = simulcast.findMedia("video").getAttributes("ssrc-group");
+        assertEquals(4, groups.size());
+        assertTrue(groups.get(1).startsWith("SIM 2590348744 "));
+        // the offer only has ssrc lines for the primary ssrc, each layer gets a copy of them
+        assertEquals(3 * 4, simulcast.findMedia("video").getAttributes("ssrc").size());
+        assertEquals(ANDROID_OFFER, Sdp.parse(ANDROID_OFFER).toString());
+    }
+
+    @Test
+    public void simulcast_reofferKeepsTheLayerSsrcs() {
+        String first = Simulcast.addLayerSsrcs(ANDROID_OFFER, 3, new Random(1));
+        // libwebrtc offers the same primary ssrc again, the random source differs per offer
+        String reoffer = Simulcast.addLayerSsrcs(ANDROID_OFFER, 3, new Random(2), first);
+
+        assertEquals(first, reoffer);
+        assertNotEquals(first, Simulcast.addLayerSsrcs(ANDROID_OFFER, 3, new Random(2)));
+
+        // a new primary ssrc is a new sender, nothing is reused
+        String newSender = Simulcast.addLayerSsrcs(ANDROID_OFFER.replace("2590348744", "1111111111"), 3, new Random(3), first);
+        List<String> groups = Sdp.parse(newSender).findMedia("video").getAttributes("ssrc-group");
+        assertTrue(groups.get(1).startsWith("SIM 1111111111 "));
+        assertNotEquals(Sdp.parse(first).findMedia("video").getAttributes("ssrc-group").get(1).substring(15),
+                groups.get(1).substring(15));
+    }
+}
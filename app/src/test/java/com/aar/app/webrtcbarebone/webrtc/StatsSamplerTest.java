@@ -0,0 +1,109 @@
+package com.aar.app.webrtcbarebone.webrtc;
+
+import org.junit.Test;
+import org.webrtc.StatsReport;
+
+import static org.junit.Assert.*;
+
+public class StatsSamplerTest {
+
+    @Test
+    public void oldestSamplesAreOverwritten() {
+        StatsSampler sampler = new StatsSampler(3);
+        for (int i = 1; i <= 5; i++) {
+            sampler.record(reports(ssrc("ssrc_1_recv", "packetsReceived", String.valueOf(i))), i * 1000);
+        }
+
+        assertEquals(3, sampler.getSampleCount());
+        assertEquals(5, sampler.getLatest(StatsSampler.Metric.PACKETS_RECEIVED));
+        assertEquals(4, sampler.get(StatsSampler.Metric.PACKETS_RECEIVED, 1));
+        assertEquals(3, sampler.get(StatsSampler.Metric.PACKETS_RECEIVED, 2));
+        assertEquals(StatsSampler.MISSING, sampler.get(StatsSampler.Metric.PACKETS_RECEIVED, 3));
+    }
+
+    @Test
+    public void ssrcReportsAreAggregated() {
+        StatsSampler sampler = new StatsSampler(4);
+        sampler.record(reports(
+                ssrc("ssrc_1_send", "mediaType", "audio", "bytesSent", "100", "googRtt", "40"),
+                ssrc("ssrc_2_send", "mediaType", "video", "googCodecName", "VP8", "bytesSent", "900", "googRtt", "55"),
+                ssrc("ssrc_3_recv", "mediaType", "video", "googCodecName", "H264", "bytesReceived", "70")), 0);
+
+        assertEquals(1000, sampler.getLatest(StatsSampler.Metric.BYTES_SENT));
+        assertEquals(55, sampler.getLatest(StatsSampler.Metric.RTT_MS));
+        assertEquals(70, sampler.getLatest(StatsSampler.Metric.BYTES_RECEIVED));
+        assertEquals(StatsSampler.MISSING, sampler.getLatest(StatsSampler.Metric.AVAILABLE_SEND_BPS));
+        assertEquals("VP8", sampler.getSendVideoCodec());
+    }
+
+    @Test
+    public void rateIsPerSecondBetweenTheLatestSamples() {
+        StatsSampler sampler = new StatsSampler(4);
+        sampler.record(reports(ssrc("ssrc_1_send", "bytesSent", "1000")), 10_000);
+        assertEquals(0, sampler.getRatePerSecond(StatsSampler.Metric.BYTES_SENT), 0);
+
+        sampler.record(reports(ssrc("ssrc_1_send", "bytesSent", "3000")), 10_500);
+        assertEquals(4000, sampler.getRatePerSecond(StatsSampler.Metric.BYTES_SENT), 0);
+
+        // counters restart with a new connection
+        sampler.record(reports(ssrc("ssrc_1_send", "bytesSent", "200")), 11_000);
+        assertEquals(0, sampler.getRatePerSecond(StatsSampler.Metric.BYTES_SENT), 0);
+
+        sampler.record(reports(), 11_500);
+        assertEquals(0, sampler.getRatePerSecond(StatsSampler.Metric.BYTES_SENT), 0);
+    }
+
+    @Test
+    public void packetLossIsTheLostShareOfTheLatestInterval() {
+        StatsSampler sampler = new StatsSampler(4);
+        assertEquals(0, sampler.getPacketLossRatio(), 0);
+
+        sampler.record(reports(ssrc("ssrc_1_recv", "packetsReceived", "1000", "packetsLost", "50")), 0);
+        sampler.record(reports(ssrc("ssrc_1_recv", "packetsReceived", "1090", "packetsLost", "60")), 1000);
+        assertEquals(0.1, sampler.getPacketLossRatio(), 1e-9);
+
+        sampler.record(reports(ssrc("ssrc_1_recv", "packetsReceived", "1090", "packetsLost", "60")), 2000);
+        assertEquals(0, sampler.getPacketLossRatio(), 0);
+    }
+
+    @Test
+    public void percentileSkipsMissingValues() {
+        StatsSampler sampler = new StatsSampler(20);
+        assertEquals(StatsSampler.MISSING, sampler.getPercentile(StatsSampler.Metric.RTT_MS, 50));
+
+        for (int rtt = 10; rtt >= 1; rtt--) {
+            sampler.record(reports(ssrc("ssrc_1_send", "googRtt", String.valueOf(rtt))), 0);
+            sampler.record(reports(), 0);
+        }
+
+        assertEquals(1, sampler.getPercentile(StatsSampler.Metric.RTT_MS, 0));
+        assertEquals(5, sampler.getPercentile(StatsSampler.Metric.RTT_MS, 50));
+        assertEquals(9, sampler.getPercentile(StatsSampler.Metric.RTT_MS, 90));
+        assertEquals(10, sampler.getPercentile(StatsSampler.Metric.RTT_MS, 100));
+    }
+
+    @Test
+    public void parseLongReadsTheIntegerPart() {
+        assertEquals(123, StatsSampler.parseLong("123"));
+        assertEquals(-7, StatsSampler.parseLong("-7"));
+        assertEquals(12, StatsSampler.parseLong("12.75"));
+        assertEquals(3, StatsSampler.parseLong("3kbps"));
+        assertEquals(StatsSampler.MISSING, StatsSampler.parseLong(null));
+        assertEquals(StatsSampler.MISSING, StatsSampler.parseLong(""));
+        assertEquals(StatsSampler.MISSING, StatsSampler.parseLong("-"));
+        assertEquals(StatsSampler.MISSING, StatsSampler.parseLong("true"));
+        assertEquals(StatsSampler.MISSING, StatsSampler.parseLong(".5"));
+    }
+
+    private static StatsReport[] reports(StatsReport... reports) {
+        return reports;
+    }
+
+    private static StatsReport ssrc(String id, String... namesAndValues) {
+        StatsReport.Value[] values = new StatsReport.Value[namesAndValues.length / 2];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = new StatsReport.Value(namesAndValues[2 * i], namesAndValues[2 * i + 1]);
+        }
+        return new StatsReport(id, "ssrc", 0, values);
+    }
+}
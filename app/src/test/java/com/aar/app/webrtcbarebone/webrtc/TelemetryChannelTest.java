@@ -0,0 +1,151 @@
+package com.aar.app.webrtcbarebone.webrtc;
+
+import org.junit.After;
+import org.junit.Test;
+import org.webrtc.DataChannel;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TelemetryChannelTest {
+
+    private static final int MESSAGE_SIZE = 2 + TelemetryChannel.MAX_PAYLOAD_SIZE;
+
+    private final FakeDataChannel mDataChannel = new FakeDataChannel();
+    private final TelemetryChannel mTelemetry = new TelemetryChannel(mDataChannel);
+    private final List<String> mReceived = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        mTelemetry.close();
+    }
+
+    @Test
+    public void messagesArePackedIntoOnePacket() {
+        ByteBuffer payload = ByteBuffer.wrap(new byte[] {9, 1, 2, 3});
+        payload.position(1);
+        assertTrue(mTelemetry.send(1, payload));
+        assertEquals(1, payload.position());
+        assertTrue(mTelemetry.send(2, new byte[] {7, 4, 5, 7}, 1, 2));
+        assertTrue(mTelemetry.send(3, new byte[0], 0, 0));
+        assertTrue(mDataChannel.mSent.isEmpty());
+
+        // the packet is sent when the next message does not fit
+        int fitting = (TelemetryChannel.MAX_PACKET_SIZE - 11) / MESSAGE_SIZE;
+        fill(fitting);
+        assertTrue(mDataChannel.mSent.isEmpty());
+        fill(1);
+        assertEquals(1, mDataChannel.mSent.size());
+
+        byte[] packet = mDataChannel.mSent.get(0);
+        assertArrayEquals(new byte[] {1, 3, 1, 2, 3, 2, 2, 4, 5, 3, 0, 4, (byte) 255},
+                Arrays.copyOf(packet, 13));
+        assertEquals(11 + fitting * MESSAGE_SIZE, packet.length);
+    }
+
+    @Test
+    public void receivedPacketIsSplitIntoMessages() {
+        mTelemetry.setListener(this::onMessage);
+
+        mTelemetry.onMessage(packet(1, 3, 1, 2, 3, 2, 0, 255, 1, 7));
+        assertEquals(Arrays.asList("1:[1, 2, 3]", "2:[]", "255:[7]"), mReceived);
+    }
+
+    @Test
+    public void truncatedMessageEndsThePacket() {
+        mTelemetry.setListener(this::onMessage);
+
+        mTelemetry.onMessage(packet(1, 1, 6, 2, 5, 1, 2));
+        assertEquals(Arrays.asList("1:[6]"), mReceived);
+    }
+
+    @Test
+    public void packetIsDroppedWhileTheChannelIsBuffered() {
+        mDataChannel.mBufferedAmount = TelemetryChannel.MAX_BUFFERED_AMOUNT + 1;
+
+        fill(TelemetryChannel.MAX_PACKET_SIZE / MESSAGE_SIZE + 1);
+        assertTrue(mDataChannel.mSent.isEmpty());
+        assertEquals(1, mTelemetry.getDroppedPacketCount());
+
+        mDataChannel.mBufferedAmount = 0;
+        fill(TelemetryChannel.MAX_PACKET_SIZE / MESSAGE_SIZE);
+        assertEquals(1, mDataChannel.mSent.size());
+        assertEquals(1, mTelemetry.getDroppedPacketCount());
+    }
+
+    @Test
+    public void oversizedOrLateMessagesAreRejected() {
+        assertFalse(mTelemetry.send(1, ByteBuffer.allocate(TelemetryChannel.MAX_PAYLOAD_SIZE + 1)));
+
+        mDataChannel.mState = DataChannel.State.CONNECTING;
+        assertFalse(mTelemetry.send(1, new byte[1], 0, 1));
+
+        mDataChannel.mState = DataChannel.State.OPEN;
+        mTelemetry.close();
+        assertFalse(mTelemetry.send(1, new byte[1], 0, 1));
+    }
+
+    private void fill(int messages) {
+        byte[] payload = new byte[TelemetryChannel.MAX_PAYLOAD_SIZE];
+        for (int i = 0; i < messages; i++) {
+            assertTrue(mTelemetry.send(4, payload, 0, payload.length));
+        }
+    }
+
+    private void onMessage(int type, ByteBuffer payload) {
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        mReceived.add(type + ":" + Arrays.toString(bytes));
+    }
+
+    private static DataChannel.Buffer packet(int... bytes) {
+        ByteBuffer packet = ByteBuffer.allocateDirect(bytes.length);
+        for (int value : bytes) packet.put((byte) value);
+        packet.flip();
+        return new DataChannel.Buffer(packet, true);
+    }
+
+    private static class FakeDataChannel extends DataChannel {
+        final List<byte[]> mSent = new ArrayList<>();
+        volatile State mState = State.OPEN;
+        volatile long mBufferedAmount = 0;
+
+        FakeDataChannel() {
+            super(0);
+        }
+
+        @Override
+        public void registerObserver(Observer observer) { }
+
+        @Override
+        public void unregisterObserver() { }
+
+        @Override
+        public State state() {
+            return mState;
+        }
+
+        @Override
+        public long bufferedAmount() {
+            return mBufferedAmount;
+        }
+
+        @Override
+        public boolean send(Buffer buffer) {
+            byte[] bytes = new byte[buffer.data.remaining()];
+            buffer.data.get(bytes);
+            mSent.add(bytes);
+            return true;
+        }
+
+        @Override
+        public void close() { }
+
+        @Override
+        public void dispose() { }
+    }
+}
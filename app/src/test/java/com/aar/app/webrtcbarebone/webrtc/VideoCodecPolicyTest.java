@@ -0,0 +1,119 @@
+package com.aar.app.webrtcbarebone.webrtc;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.webrtc.SessionDescription;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class VideoCodecPolicyTest {
+
+    private static final BandwidthPolicy.Profile PROFILE = new BandwidthPolicy.Profile(
+            new BandwidthPolicy.Limits(16_000, 32_000, 64_000),
+            new BandwidthPolicy.Limits(150_000, 800_000, 2_500_000));
+
+    private static final String OFFER = "v=0\r\n"
+            + "o=- 4611731400430051336 2 IN IP4 127.0.0.1\r\n"
+            + "s=-\r\n"
+            + "t=0 0\r\n"
+            + "m=video 9 UDP/TLS/RTP/SAVPF 96 97 100 101 127\r\n"
+            + "a=mid:video\r\n"
+            + "a=rtpmap:96 VP8/90000\r\n"
+            + "a=rtcp-fb:96 nack\r\n"
+            + "a=rtpmap:97 rtx/90000\r\n"
+            + "a=fmtp:97 apt=96\r\n"
+            + "a=rtpmap:100 H264/90000\r\n"
+            + "a=rtcp-fb:100 nack\r\n"
+            + "a=fmtp:100 level-asymmetry-allowed=1;packetization-mode=1;profile-level-id=42e01f\r\n"
+            + "a=rtpmap:101 rtx/90000\r\n"
+            + "a=fmtp:101 apt=100\r\n"
+            + "a=rtpmap:127 red/90000\r\n";
+
+    private VideoCodecPolicy mPolicy;
+    private final List<String> mFallbacks = new ArrayList<>();
+    private VideoCodecPolicy.EncoderMonitor mMonitor;
+
+    @Before
+    public void setUp() {
+        HashSet<String> codecs = new HashSet<>(Arrays.asList(VideoCodecPolicy.H264, VideoCodecPolicy.VP8));
+        mPolicy = new VideoCodecPolicy(codecs, codecs);
+        mMonitor = new VideoCodecPolicy.EncoderMonitor(mPolicy, mFallbacks::add);
+        mMonitor.setBandwidthProfile(PROFILE);
+    }
+
+    @Test
+    public void stalledHardwareH264FallsBackOnce() {
+        feedStalled("H264", 1_000_000, VideoCodecPolicy.EncoderMonitor.FAILURE_SAMPLES * 3);
+        assertEquals(Collections.singletonList(VideoCodecPolicy.H264), mFallbacks);
+        assertFalse(mPolicy.hasHardwareEncoder(VideoCodecPolicy.H264));
+        assertEquals(VideoCodecPolicy.VP8, mPolicy.getPreferredCodecs().get(0));
+    }
+
+    @Test
+    public void suspendedVideoIsNotAFailure() {
+        mMonitor.setVideoSuspended(true);
+        feedStalled("H264", 1_000_000, 50);
+        mMonitor.setVideoSuspended(false);
+        // the samples while suspended do not add up with the ones after
+        feedStalled("H264", 1_000_000, VideoCodecPolicy.EncoderMonitor.FAILURE_SAMPLES - 1);
+        assertTrue(mFallbacks.isEmpty());
+        assertTrue(mPolicy.hasHardwareEncoder(VideoCodecPolicy.H264));
+    }
+
+    @Test
+    public void congestionBelowTheVideoMinIsNotAFailure() {
+        feedStalled("H264", 100_000, 50);
+        assertTrue(mFallbacks.isEmpty());
+    }
+
+    @Test
+    public void onlyH264IsWatched() {
+        feedStalled("VP8", 1_000_000, 50);
+        feedStalled(null, 1_000_000, 50);
+        assertTrue(mFallbacks.isEmpty());
+    }
+
+    @Test
+    public void fallbackSurvivesAnAnswererPreferringH264() {
+        feedStalled("H264", 1_000_000, VideoCodecPolicy.EncoderMonitor.FAILURE_SAMPLES);
+
+        // the renegotiation offer has no H264 left, so an answer built from it can't pick it
+        String offer = mPolicy.apply(new SessionDescription(SessionDescription.Type.OFFER, OFFER)).description;
+        assertEquals(Arrays.asList("96", "97", "127"), Sdp.parse(offer).findMedia("video").getPayloadTypes());
+        assertFalse(offer.contains(":100 ") || offer.contains(":101 ") || offer.contains("apt=100"));
+
+        // an answerer with working hardware H264 orders what it was offered
+        String remoteAnswer = VideoCodecPolicy.preferCodecs(offer, Arrays.asList(VideoCodecPolicy.H264, VideoCodecPolicy.VP8));
+        assertEquals("96", Sdp.parse(remoteAnswer).findMedia("video").getPayloadTypes().get(0));
+    }
+
+    @Test
+    public void failedCodecIsRemovedFromLocalAnswers() {
+        // this side answers an offer that prefers H264
+        String remoteOffer = VideoCodecPolicy.preferCodecs(OFFER, Collections.singletonList(VideoCodecPolicy.H264));
+        String preferred = mPolicy.apply(new SessionDescription(SessionDescription.Type.ANSWER, remoteOffer)).description;
+        assertEquals("100", Sdp.parse(preferred).findMedia("video").getPayloadTypes().get(0));
+
+        mPolicy.onEncoderFailure(VideoCodecPolicy.H264);
+        String answer = mPolicy.apply(new SessionDescription(SessionDescription.Type.ANSWER, remoteOffer)).description;
+        assertEquals(Arrays.asList("96", "97", "127"), Sdp.parse(answer).findMedia("video").getPayloadTypes());
+    }
+
+    @Test
+    public void onlyVideoCodecIsNotRemoved() {
+        String h264Only = VideoCodecPolicy.removeCodec(OFFER, VideoCodecPolicy.VP8);
+        assertEquals(h264Only, VideoCodecPolicy.removeCodec(h264Only, VideoCodecPolicy.H264));
+    }
+
+    private void feedStalled(String codec, long availableSendBps, int samples) {
+        for (int i = 0; i < samples; i++) {
+            mMonitor.onSample(codec, 30, 0, availableSendBps);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.aar.app.webrtcbarebone.benchmark;
+
+import org.webrtc.SdpObserver;
+import org.webrtc.SessionDescription;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Stand-in for the native PeerConnection: sdp operations complete their observer on a dedicated
+ * "signaling" thread like the real one, without doing any media work
+ */
+class FakePeerConnection {
+
+    private final ExecutorService mSignalingThread = Executors.newSingleThreadExecutor();
+
+    void createOffer(SdpObserver observer) {
+        mSignalingThread.execute(() -> observer.onCreateSuccess(
+                new SessionDescription(SessionDescription.Type.OFFER, SampleSdp.OFFER)));
+    }
+
+    void createAnswer(SdpObserver observer) {
+        mSignalingThread.execute(() -> observer.onCreateSuccess(
+                new SessionDescription(SessionDescription.Type.ANSWER, SampleSdp.OFFER)));
+    }
+
+    void setLocalDescription(SdpObserver observer, SessionDescription sdp) {
+        mSignalingThread.execute(observer::onSetSuccess);
+    }
+
+    void setRemoteDescription(SdpObserver observer, SessionDescription sdp) {
+        mSignalingThread.execute(observer::onSetSuccess);
+    }
+
+    void dispose() {
+        mSignalingThread.shutdownNow();
+    }
+}
@@ -0,0 +1,146 @@
+package com.aar.app.webrtcbarebone.benchmark;
+
+import com.aar.app.webrtcbarebone.webrtc.SettableFuture;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.webrtc.SdpObserver;
+import org.webrtc.SessionDescription;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Offer and answer flows the way WebRtcPeerConnection drives them, blocking on a future per step
+ * (*Sync methods) against chaining the steps from the observer callbacks (makeOffer/makeAnswer),
+ * run against {@link FakePeerConnection}
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NegotiationBenchmark {
+
+    private FakePeerConnection mPeerConnection;
+
+    @Setup
+    public void setup() {
+        mPeerConnection = new FakePeerConnection();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mPeerConnection.dispose();
+    }
+
+    @Benchmark
+    public SessionDescription offerBlocking() throws ExecutionException, InterruptedException {
+        SettableFuture<SessionDescription> created = new SettableFuture<>();
+        mPeerConnection.createOffer(new FutureObserver(created, null));
+        SessionDescription offer = created.get();
+
+        SettableFuture<Boolean> set = new SettableFuture<>();
+        mPeerConnection.setLocalDescription(new FutureObserver(null, set), offer);
+        set.get();
+        return offer;
+    }
+
+    @Benchmark
+    public SessionDescription offerChained() throws ExecutionException, InterruptedException {
+        // only the benchmark thread waits for the end of the pipeline, no step in between blocks
+        SettableFuture<SessionDescription> done = new SettableFuture<>();
+        mPeerConnection.createOffer(new FutureObserver(null, null) {
+            @Override
+            public void onCreateSuccess(SessionDescription offer) {
+                mPeerConnection.setLocalDescription(new FutureObserver(null, null) {
+                    @Override
+                    public void onSetSuccess() {
+                        done.set(offer);
+                    }
+                }, offer);
+            }
+        });
+        return done.get();
+    }
+
+    @Benchmark
+    public SessionDescription answerBlocking() throws ExecutionException, InterruptedException {
+        SettableFuture<Boolean> remoteSet = new SettableFuture<>();
+        mPeerConnection.setRemoteDescription(new FutureObserver(null, remoteSet),
+                new SessionDescription(SessionDescription.Type.OFFER, SampleSdp.OFFER));
+        remoteSet.get();
+
+        SettableFuture<SessionDescription> created = new SettableFuture<>();
+        mPeerConnection.createAnswer(new FutureObserver(created, null));
+        SessionDescription answer = created.get();
+
+        SettableFuture<Boolean> localSet = new SettableFuture<>();
+        mPeerConnection.setLocalDescription(new FutureObserver(null, localSet), answer);
+        localSet.get();
+        return answer;
+    }
+
+    @Benchmark
+    public SessionDescription answerChained() throws ExecutionException, InterruptedException {
+        SettableFuture<SessionDescription> done = new SettableFuture<>();
+        mPeerConnection.setRemoteDescription(new FutureObserver(null, null) {
+            @Override
+            public void onSetSuccess() {
+                mPeerConnection.createAnswer(new FutureObserver(null, null) {
+                    @Override
+                    public void onCreateSuccess(SessionDescription answer) {
+                        mPeerConnection.setLocalDescription(new FutureObserver(null, null) {
+                            @Override
+                            public void onSetSuccess() {
+                                done.set(answer);
+                            }
+                        }, answer);
+                    }
+                });
+            }
+        }, new SessionDescription(SessionDescription.Type.OFFER, SampleSdp.OFFER));
+        return done.get();
+    }
+
+    private static class FutureObserver implements SdpObserver {
+
+        private final SettableFuture<SessionDescription> created;
+        private final SettableFuture<Boolean> set;
+
+        FutureObserver(SettableFuture<SessionDescription> created, SettableFuture<Boolean> set) {
+            this.created = created;
+            this.set = set;
+        }
+
+        @Override
+        public void onCreateSuccess(SessionDescription sdp) {
+            created.set(sdp);
+        }
+
+        @Override
+        public void onSetSuccess() {
+            set.set(true);
+        }
+
+        @Override
+        public void onCreateFailure(String error) {
+            created.setError(new IllegalStateException(error));
+        }
+
+        @Override
+        public void onSetFailure(String error) {
+            set.setError(new IllegalStateException(error));
+        }
+    }
+}
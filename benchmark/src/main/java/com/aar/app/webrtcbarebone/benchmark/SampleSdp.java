@@ -0,0 +1,66 @@
+package com.aar.app.webrtcbarebone.benchmark;
+
+/**
+ * Offer in the shape google-webrtc produces for the ARDAMS audio/video stream of this app
+ */
+final class SampleSdp {
+
+    static final String OFFER = "v=0\r\n"
+            + "o=- 4611731400430051336 2 IN IP4 127.0.0.1\r\n"
+            + "s=-\r\n"
+            + "t=0 0\r\n"
+            + "a=group:BUNDLE audio video\r\n"
+            + "a=msid-semantic: WMS ARDAMS\r\n"
+            + "m=audio 9 UDP/TLS/RTP/SAVPF 111 103 104 9 102 0 8 106 105 13 110 112 113 126\r\n"
+            + "c=IN IP4 0.0.0.0\r\n"
+            + "a=rtcp:9 IN IP4 0.0.0.0\r\n"
+            + "a=ice-ufrag:ZbV5\r\n"
+            + "a=ice-pwd:0LtKrL9oEQ4Dc9HXNe9fTZMH\r\n"
+            + "a=ice-options:trickle renomination\r\n"
+            + "a=fingerprint:sha-256 9D:2A:6E:61:25:FD:E6:36:1B:7A:35:61:05:C4:6F:52:D3:3E:AA:7E:6E:C5:7B:22:FA:67:CE:D5:D5:28:6C:D9\r\n"
+            + "a=setup:actpass\r\n"
+            + "a=mid:audio\r\n"
+            + "a=extmap:1 urn:ietf:params:rtp-hdrext:ssrc-audio-level\r\n"
+            + "a=sendrecv\r\n"
+            + "a=rtcp-mux\r\n"
+            + "a=rtpmap:111 opus/48000/2\r\n"
+            + "a=rtcp-fb:111 transport-cc\r\n"
+            + "a=fmtp:111 minptime=10;useinbandfec=1\r\n"
+            + "a=rtpmap:103 ISAC/16000\r\n"
+            + "a=rtpmap:0 PCMU/8000\r\n"
+            + "a=ssrc:3145212938 cname:kNOnbKcxuFOo4Hx/\r\n"
+            + "a=ssrc:3145212938 msid:ARDAMS ARDAMSa0\r\n"
+            + "a=ssrc:3145212938 mslabel:ARDAMS\r\n"
+            + "a=ssrc:3145212938 label:ARDAMSa0\r\n"
+            + "m=video 9 UDP/TLS/RTP/SAVPF 96 97 98 99 100 101 127\r\n"
+            + "c=IN IP4 0.0.0.0\r\n"
+            + "a=rtcp:9 IN IP4 0.0.0.0\r\n"
+            + "a=ice-ufrag:ZbV5\r\n"
+            + "a=ice-pwd:0LtKrL9oEQ4Dc9HXNe9fTZMH\r\n"
+            + "a=setup:actpass\r\n"
+            + "a=mid:video\r\n"
+            + "a=extmap:14 urn:ietf:params:rtp-hdrext:toffset\r\n"
+            + "a=extmap:2 http://www.webrtc.org/experiments/rtp-hdrext/abs-send-time\r\n"
+            + "a=sendrecv\r\n"
+            + "a=rtcp-mux\r\n"
+            + "a=rtcp-rsize\r\n"
+            + "a=rtpmap:96 VP8/90000\r\n"
+            + "a=rtcp-fb:96 goog-remb\r\n"
+            + "a=rtcp-fb:96 transport-cc\r\n"
+            + "a=rtcp-fb:96 ccm fir\r\n"
+            + "a=rtcp-fb:96 nack\r\n"
+            + "a=rtcp-fb:96 nack pli\r\n"
+            + "a=rtpmap:97 rtx/90000\r\n"
+            + "a=fmtp:97 apt=96\r\n"
+            + "a=ssrc-group:FID 2590348744 1281512330\r\n"
+            + "a=ssrc:2590348744 cname:kNOnbKcxuFOo4Hx/\r\n"
+            + "a=ssrc:2590348744 msid:ARDAMS ARDAMSv0\r\n"
+            + "a=ssrc:2590348744 mslabel:ARDAMS\r\n"
+            + "a=ssrc:2590348744 label:ARDAMSv0\r\n";
+
+    static final String CANDIDATE =
+            "candidate:842163049 1 udp 1677729535 36.68.11.2 51617 typ srflx raddr 192.168.1.5 rport 51617 generation 0 ufrag ZbV5 network-id 3 network-cost 10";
+
+    private SampleSdp() {
+    }
+}
@@ -0,0 +1,72 @@
+package com.aar.app.webrtcbarebone.benchmark;
+
+import com.aar.app.webrtcbarebone.webrtc.Sdp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of munging a local description through {@link Sdp} on the call setup path, compare with
+ * {@link SdpStringBenchmark#splitAndJoin()} for what splitting and rebuilding the text costs
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SdpModelBenchmark {
+
+    @Benchmark
+    public Sdp parse() {
+        return Sdp.parse(SampleSdp.OFFER);
+    }
+
+    @Benchmark
+    public String parseAndSerializeUnchanged() {
+        return Sdp.parse(SampleSdp.OFFER).toString();
+    }
+
+    /**
+     * One changed line, every line is copied
+     */
+    @Benchmark
+    public String parseSetAttributeAndSerialize() {
+        Sdp sdp = Sdp.parse(SampleSdp.OFFER);
+        sdp.findMedia("audio").setAttribute("ptime", "40");
+        return sdp.toString();
+    }
+
+    /**
+     * What a call applies to each local description: video codec order and opus parameters
+     */
+    @Benchmark
+    public String parseMungeAndSerialize() {
+        Sdp sdp = Sdp.parse(SampleSdp.OFFER);
+
+        Sdp.Media video = sdp.findMedia("video");
+        List<String> ordered = new ArrayList<>(video.findPayloadTypes("H264"));
+        for (String payloadType : video.getPayloadTypes()) {
+            if (!ordered.contains(payloadType)) ordered.add(payloadType);
+        }
+        video.setPayloadTypes(ordered);
+
+        Sdp.Media audio = sdp.findMedia("audio");
+        String opus = audio.findPayloadType("opus");
+        Map<String, String> fmtp = audio.getFmtp(opus);
+        fmtp.put("usedtx", "1");
+        fmtp.put("maxaveragebitrate", "20000");
+        audio.setFmtp(opus, fmtp);
+        audio.setAttribute("ptime", "40");
+        return sdp.toString();
+    }
+}
@@ -0,0 +1,57 @@
+package com.aar.app.webrtcbarebone.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Baseline cost of the string handling any sdp munging pays: splitting into lines,
+ * finding a media section and rebuilding the text
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SdpStringBenchmark {
+
+    @Benchmark
+    public String[] splitLinesRegex() {
+        return SampleSdp.OFFER.split("\r\n");
+    }
+
+    @Benchmark
+    public int scanLinesIndexOf() {
+        String sdp = SampleSdp.OFFER;
+        int lines = 0;
+        int start = 0;
+        while (start < sdp.length()) {
+            int end = sdp.indexOf("\r\n", start);
+            if (end < 0) end = sdp.length();
+            lines++;
+            start = end + 2;
+        }
+        return lines;
+    }
+
+    @Benchmark
+    public int findVideoMediaLine() {
+        return SampleSdp.OFFER.indexOf("\r\nm=video ");
+    }
+
+    @Benchmark
+    public String splitAndJoin() {
+        String[] lines = SampleSdp.OFFER.split("\r\n");
+        StringBuilder builder = new StringBuilder(SampleSdp.OFFER.length());
+        for (String line : lines) {
+            builder.append(line).append("\r\n");
+        }
+        return builder.toString();
+    }
+}
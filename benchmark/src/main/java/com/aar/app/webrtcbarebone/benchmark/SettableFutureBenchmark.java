@@ -0,0 +1,104 @@
+package com.aar.app.webrtcbarebone.benchmark;
+
+import com.aar.app.webrtcbarebone.webrtc.SettableFuture;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SettableFutureBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class SharedFuture {
+        SettableFuture<String> future;
+
+        @Setup
+        public void setup() {
+            future = new SettableFuture<>();
+            future.set("sdp");
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class SignalingThread {
+        ExecutorService executor;
+
+        @Setup
+        public void setup() {
+            executor = Executors.newSingleThreadExecutor();
+        }
+
+        @TearDown
+        public void tearDown() {
+            executor.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public String setThenGet() throws ExecutionException, InterruptedException {
+        SettableFuture<String> future = new SettableFuture<>();
+        future.set("sdp");
+        return future.get();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public void listenerDispatch(Blackhole blackhole) {
+        SettableFuture<String> future = new SettableFuture<>();
+        for (int i = 0; i < 4; i++) {
+            future.addListener((result, error) -> blackhole.consume(result));
+        }
+        future.set("sdp");
+    }
+
+    /**
+     * Completed on another thread while the caller is parked in get(), the pattern of the
+     * *Sync negotiation calls
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public String crossThreadHandoff(SignalingThread signalingThread)
+            throws ExecutionException, InterruptedException {
+        SettableFuture<String> future = new SettableFuture<>();
+        signalingThread.executor.execute(() -> future.set("sdp"));
+        return future.get();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Threads(4)
+    public String contendedGetOnCompleted(SharedFuture shared)
+            throws ExecutionException, InterruptedException {
+        return shared.future.get();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Threads(4)
+    public boolean contendedCompletionRace(SharedFuture shared) {
+        // every call loses the race against the already completed outcome, measures the CAS failure path
+        return shared.future.set("late");
+    }
+}
@@ -0,0 +1,124 @@
+package com.aar.app.webrtcbarebone.benchmark;
+
+import com.aar.app.webrtcbarebone.signaling.CompactSignalingCodec;
+import com.aar.app.webrtcbarebone.signaling.JsonSignalingCodec;
+import com.aar.app.webrtcbarebone.signaling.SignalingCodec;
+import com.aar.app.webrtcbarebone.signaling.SignalingCodecs;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.webrtc.IceCandidate;
+import org.webrtc.SessionDescription;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building and parsing the offer/answer and ice messages exactly as CallActivity puts them on the
+ * wire, for every signaling codec
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SignalingMessageBenchmark {
+
+    private static final int ICE_BATCH_SIZE = 8;
+
+    @Param({"json", "compact", "compact-deflate"})
+    public String codecName;
+
+    private SignalingCodec mCodec;
+    private SessionDescription mOffer;
+    private IceCandidate mCandidate;
+    private String mOfferWire;
+    private String mIceBatchWire;
+
+    @Setup
+    public void setup() throws JSONException {
+        switch (codecName) {
+            case "json":
+                mCodec = new JsonSignalingCodec();
+                break;
+            case "compact":
+                mCodec = new CompactSignalingCodec(false);
+                break;
+            default:
+                mCodec = new CompactSignalingCodec(true);
+                break;
+        }
+        mOffer = new SessionDescription(SessionDescription.Type.OFFER, SampleSdp.OFFER);
+        mCandidate = new IceCandidate("audio", 0, SampleSdp.CANDIDATE);
+
+        mOfferWire = encodeOffer().toString();
+        mIceBatchWire = encodeIceBatch().toString();
+    }
+
+    @Benchmark
+    public JSONObject encodeOffer() throws JSONException {
+        JSONObject message = new JSONObject();
+        message.put("from_id", "1234");
+        message.put("to_id", "5678");
+        mCodec.putSdp(message, mOffer);
+        return message;
+    }
+
+    @Benchmark
+    public String encodeOfferToWire() throws JSONException {
+        return encodeOffer().toString();
+    }
+
+    /**
+     * Deflated payloads travel as binary attachments and are not part of the JSON text,
+     * so this decodes from the in-memory message
+     */
+    @Benchmark
+    public SessionDescription decodeOffer() throws JSONException {
+        JSONObject message = encodeOffer();
+        return SignalingCodecs.forMessage(message).getSdp(message, SessionDescription.Type.OFFER);
+    }
+
+    @Benchmark
+    public JSONObject parseOfferWire() throws JSONException {
+        return new JSONObject(mOfferWire);
+    }
+
+    @Benchmark
+    public JSONObject encodeIceBatch() throws JSONException {
+        JSONArray batch = new JSONArray();
+        for (int i = 0; i < ICE_BATCH_SIZE; i++) {
+            JSONObject candidate = new JSONObject();
+            mCodec.putIceCandidate(candidate, mCandidate);
+            batch.put(candidate);
+        }
+
+        JSONObject message = new JSONObject();
+        message.put("to_id", "5678");
+        message.put("candidates", batch);
+        return message;
+    }
+
+    @Benchmark
+    public IceCandidate decodeIceBatchWire() throws JSONException {
+        JSONArray candidates = new JSONObject(mIceBatchWire).getJSONArray("candidates");
+        IceCandidate last = null;
+        for (int i = 0; i < candidates.length(); i++) {
+            JSONObject candidate = candidates.getJSONObject(i);
+            last = SignalingCodecs.forMessage(candidate).getIceCandidate(candidate);
+        }
+        return last;
+    }
+}
@@ -0,0 +1,16 @@
+package org.webrtc;
+
+/**
+ * Plain java stand-in for the native backed class, same public shape as google-webrtc
+ */
+public class IceCandidate {
+    public final String sdpMid;
+    public final int sdpMLineIndex;
+    public final String sdp;
+
+    public IceCandidate(String sdpMid, int sdpMLineIndex, String sdp) {
+        this.sdpMid = sdpMid;
+        this.sdpMLineIndex = sdpMLineIndex;
+        this.sdp = sdp;
+    }
+}
@@ -0,0 +1,14 @@
+package org.webrtc;
+
+/**
+ * Plain java stand-in, same interface as google-webrtc
+ */
+public interface SdpObserver {
+    void onCreateSuccess(SessionDescription sdp);
+
+    void onSetSuccess();
+
+    void onCreateFailure(String error);
+
+    void onSetFailure(String error);
+}
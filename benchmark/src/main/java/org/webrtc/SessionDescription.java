@@ -0,0 +1,23 @@
+package org.webrtc;
+
+/**
+ * Plain java stand-in for the native backed class, same public shape as google-webrtc
+ */
+public class SessionDescription {
+
+    public enum Type {
+        OFFER, PRANSWER, ANSWER;
+
+        public String canonicalForm() {
+            return name().toLowerCase();
+        }
+    }
+
+    public final Type type;
+    public final String description;
+
+    public SessionDescription(Type type, String description) {
+        this.type = type;
+        this.description = description;
+    }
+}